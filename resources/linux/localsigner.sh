@@ -11,14 +11,16 @@ else
 fi
 
 # Home Path to installation directory
-LS_HOME="$(dirname "$0")"
+LS_HOME="$(cd "$(dirname "$0")" && pwd)"
 
 libs="$LS_HOME/lib/localsigner.jar:\
 $LS_HOME/lib/bcprov-jdk15on-1.59.jar:\
 $LS_HOME/lib/bcmail-jdk15on-1.59.jar:\
 $LS_HOME/lib/bcpkix-jdk15on-1.59.jar"
 
-if [ "$(java -version 2>&1 | grep 64-Bit)" ]; then
+java_version="$(java -version 2>&1)"
+
+if [ "$(echo "$java_version" | grep 64-Bit)" ]; then
   # 64bit JVM
   echo "LocalSigner 64bit mode"
   libs="$libs:$LS_HOME/lib/swt.jar"
@@ -27,5 +29,28 @@ else
 fi
 
 echo $libs
+
+# Class data sharing: an archive of the classes loaded by a recorded start is
+# created once for this Java runtime and makes the following starts faster.
+# Runtimes without support ignore it. LOCALSIGNER_CDS=off disables it, options
+# in LOCALSIGNER_CDS_OPTS are added (e.g. "-XX:+UnlockCommercialFeatures
+# -XX:+UseAppCDS" to include the application classes on a licensed Oracle JRE 8).
+cds=""
+cds_list="$LS_HOME/lib/localsigner.classlist"
+cds_runtime="$(echo "$java_version" | head -n 1 | tr -cd '0-9._')"
+cds_archive="$HOME/.localsigner/localsigner-@LOCALSIGNER_VERSION@-java$cds_runtime.jsa"
+cds_opts="-XX:+IgnoreUnrecognizedVMOptions -XX:+UnlockDiagnosticVMOptions $LOCALSIGNER_CDS_OPTS"
+if [ "$LOCALSIGNER_CDS" != "off" ] && [ -f "$cds_list" ]; then
+  if [ ! -f "$cds_archive" ]; then
+    echo "Creating class data sharing archive $cds_archive"
+    mkdir -p "$HOME/.localsigner"
+    java $cds_opts -Xshare:dump -XX:SharedClassListFile="$cds_list" -XX:SharedArchiveFile="$cds_archive" \
+      -classpath $libs > /dev/null 2>&1 || rm -f "$cds_archive"
+  fi
+  if [ -f "$cds_archive" ]; then
+    cds="$cds_opts -Xshare:auto -XX:SharedArchiveFile=$cds_archive"
+  fi
+fi
+
 export SWT_GTK3=0
-java -Xmx512m -Dbase=$LS_HOME -classpath $libs ch.admin.localsigner.main.LocalSigner "$@"
+java -Xmx512m $cds -Dbase=$LS_HOME -classpath $libs ch.admin.localsigner.main.LocalSigner "$@"
@@ -3,4 +3,21 @@ cd /D %~dp0
 
 set libs=lib\localsigner.jar;lib\bcprov-jdk15on-1.59.jar;lib\bcmail-jdk15on-1.59.jar;lib\bcpkix-jdk15on-1.59.jar;lib\swt.jar
 set nativeDllDir=%~dp0\native
-START javaw -Dswt.library.path="%nativeDllDir%" -Xmx512m -classpath %libs% -Djna.boot.library.path="%nativeDllDir%" -Djna.nounpack=true -Djna.noclasspath=true ch.admin.localsigner.main.LocalSigner %*
+
+rem Class data sharing: an archive of the classes loaded by a recorded start is created once
+rem for this Java runtime and makes the following starts faster. Runtimes without support ignore it.
+rem LOCALSIGNER_CDS=off disables it, options in LOCALSIGNER_CDS_OPTS are added.
+set cds=
+if "%LOCALSIGNER_CDS%"=="off" goto start
+if not exist lib\localsigner.classlist goto start
+for /f "tokens=3" %%v in ('java -version 2^>^&1 ^| findstr /i "version"') do set cdsRuntime=%%~v
+set cdsArchive=%USERPROFILE%\.localsigner\localsigner-@LOCALSIGNER_VERSION@-java%cdsRuntime%.jsa
+set cdsOpts=-XX:+IgnoreUnrecognizedVMOptions -XX:+UnlockDiagnosticVMOptions %LOCALSIGNER_CDS_OPTS%
+if not exist "%cdsArchive%" (
+  if not exist "%USERPROFILE%\.localsigner" mkdir "%USERPROFILE%\.localsigner"
+  java %cdsOpts% -Xshare:dump -XX:SharedClassListFile=lib\localsigner.classlist -XX:SharedArchiveFile="%cdsArchive%" -classpath %libs% > NUL 2>&1
+)
+if exist "%cdsArchive%" set cds=%cdsOpts% -Xshare:auto -XX:SharedArchiveFile="%cdsArchive%"
+
+:start
+START javaw %cds% -Dswt.library.path="%nativeDllDir%" -Xmx512m -classpath %libs% -Djna.boot.library.path="%nativeDllDir%" -Djna.nounpack=true -Djna.noclasspath=true ch.admin.localsigner.main.LocalSigner %*
@@ -377,6 +377,28 @@ public class ApplicationConfiguration
     return Boolean.parseBoolean(value);
   }
 
+  /**
+   * An unchanged localsigner.jar does not need to be checked again after a
+   * successful integrity check. Can only be set in the system configuration.
+   *
+   * @return true if the last successful check may be reused
+   */
+  public boolean isIntegrityCheckCache()
+  {
+    return systemConfiguration.getBoolean(Config.INTEGRITY_CHECK_CACHE, false);
+  }
+
+  /**
+   * Only read from the system configuration, the validators are created once.
+   *
+   * @return number of failed checks after which the PDF/A validation stops, 0
+   *         to run all checks
+   */
+  public int getPdfAValidationMaxFailures()
+  {
+    return systemConfiguration.getInt(Config.PDFA_VALIDATION_MAX_FAILURES, 20);
+  }
+
   /**
    * Return the configured property if it is possible to sign a document that is
    * not PDF/A conformant
@@ -464,6 +486,18 @@ public class ApplicationConfiguration
     return gvm;
   }
 
+  /**
+   * A further interactive launch opens its document in the running LocalSigner
+   * instead of starting a new one.
+   *
+   * @return true if only one interactive instance should run (default)
+   */
+  public boolean isSingleInstance()
+  {
+    return userConfiguration.getBoolean(Config.SINGLE_INSTANCE,
+        systemConfiguration.getBoolean(Config.SINGLE_INSTANCE, true));
+  }
+
   private boolean getSystemOrUserConfiguredBoolean(String propName)
   {
     boolean systemConfig = systemConfiguration.getBoolean(propName, false);
@@ -670,6 +704,23 @@ public class ApplicationConfiguration
     return getSystemOrUserConfiguredValue(Config.VALIDATOR_PASSWORD);
   }
 
+  /**
+   * @return seconds after which an online validation is cancelled
+   */
+  public int getValidatorTimeout()
+  {
+    return systemConfiguration.getInt(Config.VALIDATOR_TIMEOUT, 60);
+  }
+
+  /**
+   * @return seconds an online validation is shown again without asking the
+   *         validator, 0 to always ask
+   */
+  public int getValidatorCacheTtl()
+  {
+    return systemConfiguration.getInt(Config.VALIDATOR_CACHE_TTL, 600);
+  }
+
   public String getFunktionsnachweisUrl()
   {
     return getSystemOrUserConfiguredValue(Config.FUNKTIONSNACHWEIS);
@@ -106,6 +106,12 @@ public final class Config
 
   public static final String INTEGRITY_CHECK_EDIT = "showIntegrityCheckEditable";
 
+  // skip the integrity check of an unchanged localsigner.jar (system configuration only)
+  public static final String INTEGRITY_CHECK_CACHE = "integrityCheckCache";
+
+  // number of failed checks after which the PDF/A validation stops, 0 for all (system configuration only)
+  public static final String PDFA_VALIDATION_MAX_FAILURES = "pdfaValidationMaxFailures";
+
   // Sign non-PDF/A conformant documents
   public static final String SIGN_NON_PDF_A = "signNonPdfA";
 
@@ -128,6 +134,9 @@ public final class Config
 
   public static final String LTV_OCSP_ACTIVE_EDIT = "ocspActiveEditable";
 
+  // hand over documents opened again to the running instance
+  public static final String SINGLE_INSTANCE = "singleInstance";
+
   // input path
   public static final String INPUT_PATH = "inputpath";
 
@@ -195,6 +204,10 @@ public final class Config
   public static final String VALIDATOR_DEFAULT_MANDANT = "validatorMandant";
   public static final String VALIDATOR_USER = "validatorUser";
   public static final String VALIDATOR_PASSWORD = "validatorPassword";
+  // seconds to wait for the signature validator (system configuration only)
+  public static final String VALIDATOR_TIMEOUT = "validatorTimeout";
+  // seconds an online validation is shown again without asking the validator (system configuration only)
+  public static final String VALIDATOR_CACHE_TTL = "validatorCacheTtl";
 
   // Funktionsnachweis
   public static final String FUNKTIONSNACHWEIS = "funknachweisUrl";
@@ -54,7 +54,7 @@ public class SecurityResources
 
   private static SSLSocketFactory sslSocketFactory = null;
 
-  public static SSLSocketFactory createSSLFactory()
+  public static synchronized SSLSocketFactory createSSLFactory()
       throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, KeyManagementException
   {
     if (sslSocketFactory == null)
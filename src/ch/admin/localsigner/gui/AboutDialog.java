@@ -18,6 +18,8 @@ package ch.admin.localsigner.gui;
 import ch.admin.localsigner.config.TsaConfiguration;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.utils.OnlineServices;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
+import ch.admin.localsigner.utils.ServiceHealthMonitor.State;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Font;
@@ -231,37 +233,72 @@ public class AboutDialog
 
   private void asynchronouslyValidateService(final Label tsaStateLabel, final TsaConfiguration tsaConfig)
   {
-    mainGUI.getMainshell().getDisplay().asyncExec(
-      new Thread()
+    final String service = ServiceHealthMonitor.tsa(tsaConfig.getUrl());
+    final ServiceHealthMonitor monitor = ServiceHealthMonitor.getInstance();
+    final Display display = tsaStateLabel.getDisplay();
+
+    final ServiceHealthMonitor.Listener listener = new ServiceHealthMonitor.Listener()
+    {
+      @Override
+      public void stateChanged(final String changed, final State state)
+      {
+        if (service.equals(changed))
+        {
+          showServiceState(display, tsaStateLabel, state == State.UP);
+        }
+      }
+    };
+    monitor.addListener(listener);
+    tsaStateLabel.addListener(SWT.Dispose, new Listener()
+    {
+      @Override
+      public void handleEvent(final Event event)
+      {
+        monitor.removeListener(listener);
+      }
+    });
+
+    State state = monitor.getState(service);
+    if (state != State.UNKNOWN)
+    {
+      showServiceState(display, tsaStateLabel, state == State.UP);
+      return;
+    }
+
+    // not probed yet, or not monitored if the configuration has changed
+    new Thread(new Runnable()
+    {
+      @Override
+      public void run()
       {
+        if (monitor.check(service) == State.UNKNOWN)
+        {
+          showServiceState(display, tsaStateLabel, OnlineServices.isTSAReady(tsaConfig.getUrl()));
+        }
+      }
+    }, "LocalSigner TSA check").start();
+  }
 
-        @Override
-        public void run()
+  private static void showServiceState(final Display display, final Label tsaStateLabel, final boolean ready)
+  {
+    if (display.isDisposed())
+    {
+      return;
+    }
+    display.asyncExec(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if (tsaStateLabel.isDisposed())
         {
-          if (OnlineServices.isTSAReady(tsaConfig.getUrl()))
-          {
-            if (tsaStateLabel.isDisposed())
-            {
-              // dialog already closed
-            } else
-            {
-              tsaStateLabel.setText(LocalSigner.i18n("about.tsa.ok"));
-              tsaStateLabel.pack();
-            }
-          }
-          else
-          {
-            if (tsaStateLabel.isDisposed())
-            {
-              // dialog already closed
-            } else
-            {
-              tsaStateLabel.setText(LocalSigner.i18n("about.tsa.nok"));
-              tsaStateLabel.pack();
-            }
-          }
+          // dialog already closed
+          return;
         }
-      });
+        tsaStateLabel.setText(LocalSigner.i18n(ready ? "about.tsa.ok" : "about.tsa.nok"));
+        tsaStateLabel.pack();
+      }
+    });
   }
 
   private List<TsaConfiguration> getPreconfiguredTSAs()
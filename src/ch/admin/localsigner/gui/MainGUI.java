@@ -20,6 +20,8 @@ import java.awt.Frame;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Properties;
 import javax.swing.SwingUtilities;
@@ -60,6 +62,7 @@ import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 import com.lowagie.text.exceptions.BadPasswordException;
+import com.lowagie.text.pdf.PdfReader;
 import ch.admin.localsigner.config.ApplicationConfiguration.PdfViewer;
 import ch.admin.localsigner.config.Config;
 import ch.admin.localsigner.config.util.BasePath;
@@ -80,6 +83,7 @@ import ch.admin.localsigner.listener.LoadProfileListener;
 import ch.admin.localsigner.listener.NotarySignatureListener;
 import ch.admin.localsigner.listener.SaveModificationListener;
 import ch.admin.localsigner.listener.SignListener;
+import ch.admin.localsigner.main.DocumentStore;
 import ch.admin.localsigner.main.InputFile;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.main.LocalSignerCommandLine;
@@ -88,6 +92,8 @@ import ch.admin.localsigner.main.exception.FileOpenException;
 import ch.admin.localsigner.notary.update.CantonAndDomainListUpdater;
 import ch.admin.localsigner.update.UpdateQuery;
 import ch.admin.localsigner.utils.Constants;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
+import ch.admin.localsigner.validation.AnalysisCache;
 import ch.admin.localsigner.validation.PdfAnalyzer;
 
 /**
@@ -117,6 +123,13 @@ public class MainGUI
 
   private static final Logger LOGGER = Logger.getLogger(MainGUI.class);
 
+  /**
+   * Closes the main window the given milliseconds after the start files are
+   * loaded, for the recorded training run of the class data sharing archive
+   * and for startup measurements (see build.xml)
+   */
+  public static final String EXIT_AFTER_PROPERTY = "localsigner.exitAfter";
+
   // main shell and property GUI
   private Shell mainshell;
 
@@ -286,6 +299,10 @@ public class MainGUI
       return;
     }
 
+    // probes the online services in the background, the side bar shows the
+    // state of the validator as soon as it is known
+    ServiceHealthMonitor.getInstance().start(LocalSigner.appConfig);
+
     // finally open the shell
     this.guessPosition();
     mainshell.open();
@@ -323,6 +340,8 @@ public class MainGUI
     // list and canton update check (Zulassungsbestätigung from UPReg/ZulaB)
     this.updateCantonAndDomainList(display);
 
+    exitAfterTrainingRun(display);
+
     // force active again
     mainshell.forceActive();
 
@@ -353,6 +372,26 @@ public class MainGUI
     System.exit(0);
   }
 
+  private void exitAfterTrainingRun(final Display display)
+  {
+    final Integer exitAfter = Integer.getInteger(EXIT_AFTER_PROPERTY);
+    if (exitAfter == null)
+    {
+      return;
+    }
+    display.timerExec(exitAfter, new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        // time since the JVM was launched, without the waiting time
+        LOGGER.info("Main window ready after "
+            + (ManagementFactory.getRuntimeMXBean().getUptime() - exitAfter) + " ms, exiting");
+        mainshell.close();
+      }
+    });
+  }
+
   /**
    * Builds up all components of the main GUI.
    *
@@ -794,7 +833,7 @@ public class MainGUI
       {
         try
         {
-          getPdfViewerPane().updateStatus(new PdfAnalyzer(getOutputFileData()));
+          getPdfViewerPane().updateStatus(AnalysisCache.getInstance().get(getDocument().getOutputDocument()));
         } catch (IOException e)
         {
           LOGGER.error(e);
@@ -895,6 +934,39 @@ public class MainGUI
     });
   }
 
+  /**
+   * Opens a document handed over by a further launch of LocalSigner and brings
+   * the window to front.
+   *
+   * @param input
+   *          file to open, null to only bring the window to front
+   * @param output
+   *          file to save to, may be null
+   */
+  public void openForwardedFile(final String input, final String output)
+  {
+    if (mainshell == null || mainshell.isDisposed())
+    {
+      return;
+    }
+    if (input != null)
+    {
+      try
+      {
+        setInputFileAndCheck(input, true);
+      } catch (FileOpenException e)
+      {
+        FileExceptionHandler.showAppropriateErrorMessage(e, input);
+      }
+    }
+    if (output != null)
+    {
+      setOutputFile(output, false);
+    }
+    mainshell.setMinimized(false);
+    mainshell.forceActive();
+  }
+
   private void documentDropped(DropTargetEvent event)
   {
     FileTransfer ft = FileTransfer.getInstance();
@@ -1037,9 +1109,9 @@ public class MainGUI
 
   private PdfAnalyzer getPDFAnalyzer(String fileName) throws IOException {
     if (isInputFile(fileName)) {
-      return new PdfAnalyzer(getDocument().getInputFile().getFileToDisplay(false));
+      return AnalysisCache.getInstance().get(getDocument().getInputFile().getDocumentToSign());
     } else {
-      return new PdfAnalyzer(fileName);
+      return AnalysisCache.getInstance().get(DocumentStore.forFile(new File(fileName)));
     }
   }
 
@@ -1636,6 +1708,41 @@ private void showFileThread(final String fileName, final byte[] fileData)  {
     return this.getDocument().getInputFile().getFileToSign();
   }
 
+  /**
+   * Opens a reader of the current input file without copying it.
+   *
+   * @return reader of the file to sign, closed by the caller
+   * @throws IOException
+   *           if there is no input file or it cannot be read
+   */
+  public PdfReader openInputReader() throws IOException
+  {
+    return getInputDocument().openReader();
+  }
+
+  /**
+   * Opens a stream of the current input file without copying it.
+   *
+   * @return stream of the file to sign, closed by the caller
+   * @throws IOException
+   *           if there is no input file or it cannot be read
+   */
+  public InputStream openInputStream() throws IOException
+  {
+    return getInputDocument().openStream();
+  }
+
+  private DocumentStore getInputDocument() throws IOException
+  {
+    DocumentStore document = this.getDocument().getInputFile() == null ? null
+        : this.getDocument().getInputFile().getDocumentToSign();
+    if (document == null)
+    {
+      throw new IOException("No input file loaded");
+    }
+    return document;
+  }
+
 
   /**
    * Helper method to get input file
@@ -1760,13 +1867,6 @@ private void showFileThread(final String fileName, final byte[] fileData)  {
   {
     return this.getDocument().getOutputFile();
   }
-   /**
-   * Helper method to get output file
-   */
-  private byte[] getOutputFileData() throws IOException {
-    return this.getDocument().getOutputFileData();
-  }
-
   /**
    * Helper method to set output file
    *
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.io.FileUtils;
 import com.lowagie.text.exceptions.BadPasswordException;
+import ch.admin.localsigner.main.DocumentStore;
 import ch.admin.localsigner.main.InputFile;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.utils.BoxPosition;
@@ -108,6 +109,28 @@ public class PdfDoc
     return FileUtils.readFileToByteArray(new File(this.outputFile));
   }
 
+  /**
+   * The output file as document store. The file on disk is read on demand, the
+   * locked input file is taken with its preview.
+   *
+   * @return the output document, null if there is none
+   * @throws IOException
+   *           if the output cannot be read
+   */
+  public DocumentStore getOutputDocument() throws IOException
+  {
+    if (outputFile == null || inputFile == null)
+    {
+      return null;
+    }
+    if (inputFile.isInputFile(outputFile))
+    {
+      byte[] data = getOutputFileData();
+      return data == null ? null : DocumentStore.wrap(data);
+    }
+    return DocumentStore.forFile(new File(this.outputFile));
+  }
+
   /**
    * Proposed name for final file
    *
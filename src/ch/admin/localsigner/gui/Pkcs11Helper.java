@@ -55,8 +55,82 @@ public class Pkcs11Helper
     this.parent = parent;
   }
 
-  public PKCS11Token findCertPkcs11() throws KeyStoreException, PINWrongException,
-    PINInvalidException, UserCanceledException
+  /**
+   * Lets the user choose the token to sign with, if more than one is present.
+   *
+   * @return the chosen token, null if there is no usable token
+   * @throws UserCanceledException
+   *           if the user cancelled the choice
+   */
+  public Token selectToken() throws UserCanceledException
+  {
+    List<Token> uniqueTokens = findActiveTokens();
+
+    int selection = 0;
+    if (uniqueTokens.size() > 1)
+    {
+      List<String> names = new ArrayList<String>();
+      for (Token t : uniqueTokens)
+      {
+        names.add(getTokenDisplayName(t));
+      }
+      // more than 1; ask user which one to use
+      ButtonsDialog dialog = new ButtonsDialog(parent, LocalSigner.i18n("pkcs11TokenTitle"), names,
+        LocalSigner.i18n("pkcs11TokenText"));
+
+      selection = dialog.getUserDecision();
+      if (selection < 0)
+      {
+        // cancel button; abort
+        throw new UserCanceledException();
+      }
+    }
+
+    if (uniqueTokens.isEmpty())
+    {
+      return null;
+    }
+
+    Token tk = uniqueTokens.get(selection);
+    if (tk.getSlot() == -1)
+    {
+      LOGGER.debug("Invalid slot number");
+      return null;
+    }
+    return tk;
+  }
+
+  /**
+   * Opens the given token. The user is asked for the PIN.
+   *
+   * @param tk
+   *          the token to open
+   * @return the logged in token
+   */
+  public PKCS11Token openToken(Token tk) throws KeyStoreException, PINWrongException,
+    PINInvalidException
+  {
+    String name = getTokenPinName(tk);
+
+    writePkcs11Lib(tk.getLibrary());
+
+    LOGGER.debug("Loading PKCS11 token for library: " + tk.getLibrary() +
+        " in slot: " + tk.getSlot() + " with for name: " + name);
+
+    PKCS11Token token = new PKCS11Token(tk.getLibrary(), tk.getSlot(),
+      PKCS11Token.getSwtPinCallback(LocalSigner.getLocale(), name, parent));
+
+    return token;
+  }
+
+  /**
+   * Searches all configured and detected PKCS11 libraries for active tokens.
+   * Empty slots, the duplicated default slot and readers not matching the
+   * configured reader pattern are removed.
+   *
+   * @return the usable tokens, each token only once
+   */
+  public List<Token> findActiveTokens()
   {
     // check if multiple PKCS11 tokens can be used
     List<String> libs = new ArrayList<String>();
@@ -79,7 +153,7 @@ public class Pkcs11Helper
 
     if (tokens.isEmpty())
     {
-      return null;
+      return new ArrayList<Token>();
     }
 
     if (tokens.size() == 2)
@@ -134,40 +208,23 @@ public class Pkcs11Helper
     }
 
     // the order of a set is not guaranteed
-    List<String> uniqueTokenKeys = new LinkedList<String>(uniqueTokens.keySet());
-
-    int selection = 0;
-    if (uniqueTokens.size() > 1)
-    {
-      List<String> names = new ArrayList<String>();
-      for (String key : uniqueTokenKeys)
-      {
-        names.add(getTokenDisplayName(uniqueTokens.get(key)));
-      }
-      // more than 1; ask user which one to use
-      ButtonsDialog dialog = new ButtonsDialog(parent, LocalSigner.i18n("pkcs11TokenTitle"), names,
-        LocalSigner.i18n("pkcs11TokenText"));
-
-      selection = dialog.getUserDecision();
-      if (selection < 0)
-      {
-        // cancel button; abort
-        throw new UserCanceledException();
-      }
-    }
-
-    if (uniqueTokens.values().isEmpty())
-    {
-      return null;
-    }
-
-    Token tk = uniqueTokens.get(uniqueTokenKeys.get(selection));
-    if (tk.getSlot() == -1)
+    List<Token> result = new ArrayList<Token>();
+    for (String key : new LinkedList<String>(uniqueTokens.keySet()))
     {
-      LOGGER.debug("Invalid slot number");
-      return null;
+      result.add(uniqueTokens.get(key));
     }
+    return result;
+  }
 
+  /**
+   * Name of the token shown in the PIN dialog.
+   *
+   * @param tk
+   *          the token
+   * @return name and reader name of the token
+   */
+  public static String getTokenPinName(Token tk)
+  {
     String name = "";
     if (StringUtils.isNotBlank(tk.getName()))
     {
@@ -181,16 +238,7 @@ public class Pkcs11Helper
     {
       name += tk.getReaderName();
     }
-
-    writePkcs11Lib(tk.getLibrary());
-
-    LOGGER.debug("Loading PKCS11 token for library: " + tk.getLibrary() +
-        " in slot: " + tk.getSlot() + " with for name: " + name);
-
-    PKCS11Token token = new PKCS11Token(tk.getLibrary(), tk.getSlot(),
-      PKCS11Token.getSwtPinCallback(LocalSigner.getLocale(), name, parent));
-
-    return token;
+    return name;
   }
 
   private void writePkcs11Lib(String lib)
@@ -204,11 +252,23 @@ public class Pkcs11Helper
     }
   }
 
-  private String getTokenUniqueName(Token t)
+  private static String getTokenUniqueName(Token t)
   {
     return t.getName() + " - " + t.getReaderName() + " - " + t.getSlot();
   }
 
+  /**
+   * Identifies a token over several searches: library, slot, name and reader.
+   *
+   * @param t
+   *          the token
+   * @return key of the token
+   */
+  public static String getTokenKey(Token t)
+  {
+    return t.getLibrary() + " - " + getTokenUniqueName(t);
+  }
+
   private String getTokenDisplayName(Token t)
   {
     return t.getName() + " - " + t.getReaderName();
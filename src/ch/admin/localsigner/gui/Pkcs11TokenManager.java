@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.gui;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.ProviderException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.apache.log4j.Logger;
+import org.eclipse.swt.widgets.Shell;
+import ch.admin.localsigner.gui.model.CertDetail;
+import ch.admin.localsigner.main.LocalSigner;
+import ch.glue.securitytools.keystore.PINInvalidException;
+import ch.glue.securitytools.keystore.PINWrongException;
+import ch.glue.securitytools.pkcs11.PKCS11Token;
+import ch.glue.securitytools.pkcs11.PKCS11TokenSearch.Token;
+
+/**
+ * Keeps the opened PKCS11 token and the certificates found on it, so the PIN
+ * has to be entered and the certificates have to be read only once, and
+ * consecutive signatures reuse the same logged in session.
+ * <p>
+ * The tokens are searched for every signature, so the user can still choose
+ * if more than one is present. The opened session is reused if the chosen
+ * token is the opened one and its provider still reports it as present. It is
+ * dropped if another token is chosen, the card was removed or after an error.
+ */
+public final class Pkcs11TokenManager
+{
+  private static final Logger LOGGER = Logger.getLogger(Pkcs11TokenManager.class);
+
+  private static final Pkcs11TokenManager INSTANCE = new Pkcs11TokenManager();
+
+  private PKCS11Token token;
+
+  private String tokenKey;
+
+  private List<CertDetail> certificates;
+
+  private Locale certificatesLocale;
+
+  private Pkcs11TokenManager()
+  {
+    // singleton
+  }
+
+  public static Pkcs11TokenManager getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the logged in token chosen by the user. If it is the token already
+   * opened, it is reused without asking for the PIN again, as long as it is
+   * present.
+   *
+   * @param parent
+   *          shell for the token choice and the PIN dialog
+   * @return the token, null if there is no usable token
+   */
+  public synchronized PKCS11Token getToken(Shell parent) throws KeyStoreException, PINWrongException,
+    PINInvalidException, Pkcs11Helper.UserCanceledException
+  {
+    Pkcs11Helper helper = new Pkcs11Helper(parent);
+    Token tk = helper.selectToken();
+    if (tk == null)
+    {
+      // no token present any more
+      invalidate();
+      return null;
+    }
+
+    String key = Pkcs11Helper.getTokenKey(tk);
+    if (token != null)
+    {
+      if (key.equals(tokenKey) && isPresent(token))
+      {
+        LOGGER.debug("Reusing opened PKCS11 token " + tokenKey);
+        return token;
+      }
+      // other token chosen or card removed
+      invalidate();
+    }
+
+    token = helper.openToken(tk);
+    tokenKey = key;
+    return token;
+  }
+
+  /**
+   * Asks the key store of the token for its size. The provider only checks the
+   * slot of the token, the slots of all libraries are not searched.
+   *
+   * @param tk
+   *          the opened token
+   * @return true if the token is still present
+   */
+  private static boolean isPresent(PKCS11Token tk)
+  {
+    try
+    {
+      KeyStore keyStore = tk.getKeystore();
+      return keyStore != null && keyStore.size() >= 0;
+    } catch (KeyStoreException e)
+    {
+      LOGGER.debug("PKCS11 token no longer usable", e);
+    } catch (ProviderException e)
+    {
+      LOGGER.debug("PKCS11 token removed", e);
+    }
+    return false;
+  }
+
+  /**
+   * @param forToken
+   *          token the certificates were read from
+   * @return copy of the certificates read before from the token, null if they
+   *         have to be read again
+   */
+  public synchronized List<CertDetail> getCertificates(PKCS11Token forToken)
+  {
+    if (forToken == null || forToken != token || certificates == null
+        || !LocalSigner.getLocale().equals(certificatesLocale))
+    {
+      return null;
+    }
+    return new ArrayList<CertDetail>(certificates);
+  }
+
+  /**
+   * Remembers the certificates read from the token.
+   *
+   * @param forToken
+   *          token the certificates were read from
+   * @param certs
+   *          the certificates
+   */
+  public synchronized void putCertificates(PKCS11Token forToken, List<CertDetail> certs)
+  {
+    if (forToken != null && forToken == token)
+    {
+      certificates = new ArrayList<CertDetail>(certs);
+      certificatesLocale = LocalSigner.getLocale();
+    }
+  }
+
+  /**
+   * Closes the session of the opened token, e.g. after a signing error. The
+   * next request opens the token again and asks for the PIN.
+   */
+  public synchronized void invalidate()
+  {
+    certificates = null;
+    certificatesLocale = null;
+    tokenKey = null;
+    if (token != null)
+    {
+      LOGGER.debug("Closing PKCS11 token");
+      try
+      {
+        token.teardown();
+      } catch (RuntimeException e)
+      {
+        LOGGER.debug("Cannot close PKCS11 token", e);
+      }
+      token = null;
+    }
+  }
+}
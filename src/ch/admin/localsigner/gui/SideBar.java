@@ -20,6 +20,7 @@ import static ch.admin.localsigner.validation.OnlineValidator.UPREG_FORMULAR_MAN
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -28,17 +29,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Tree;
@@ -49,9 +56,11 @@ import ch.admin.localsigner.config.resources.ImageResources;
 import ch.admin.localsigner.listener.OpenFileListener;
 import ch.admin.localsigner.listener.OpenFileListener.OpenableFile.FileType;
 import ch.admin.localsigner.main.LocalSigner;
-import ch.admin.localsigner.utils.OnlineServices;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
+import ch.admin.localsigner.utils.ServiceHealthMonitor.State;
 import ch.admin.localsigner.utils.SignatureInfo;
 import ch.admin.localsigner.validation.OnlineValidator;
+import ch.admin.localsigner.validation.PdfAValidationResults;
 import ch.admin.localsigner.validation.PdfAnalyzer;
 import ch.admin.suis.client.core.service.to.CertificateQualification;
 import ch.admin.suis.client.core.service.to.ReportCertificate;
@@ -111,6 +120,37 @@ public class SideBar extends Composite
 
   private Composite commonComposite;
 
+  // incremented with every update, late results of an older document are dropped
+  private int signatureUpdate;
+
+  // online validation of the shown document, cancelled when another is shown
+  private OnlineValidator onlineValidator;
+
+  private final Display display = getDisplay();
+
+  // shows the state of the validator as soon as it changes
+  private final ServiceHealthMonitor.Listener validatorListener = new ServiceHealthMonitor.Listener()
+  {
+    @Override
+    public void stateChanged(final String service, final State state)
+    {
+      if (!ServiceHealthMonitor.VALIDATOR.equals(service) || display.isDisposed())
+      {
+        return;
+      }
+      display.asyncExec(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          if (!isDisposed())
+          {
+            setStatusOnline(state == State.UP);
+          }
+        }
+      });
+    }
+  };
 
   public SideBar(Composite parent, MainGUI maingui)
   {
@@ -131,6 +171,16 @@ public class SideBar extends Composite
     {
         70, 30
     });
+
+    ServiceHealthMonitor.getInstance().addListener(validatorListener);
+    addDisposeListener(new DisposeListener()
+    {
+      @Override
+      public void widgetDisposed(final DisposeEvent e)
+      {
+        ServiceHealthMonitor.getInstance().removeListener(validatorListener);
+      }
+    });
   }
 
   private void createSplitPanel()
@@ -198,6 +248,12 @@ public class SideBar extends Composite
   public void update(PdfAnalyzer analyzer)
   {
     // remove old tree
+    signatureUpdate++;
+    if (onlineValidator != null)
+    {
+      onlineValidator.cancel();
+      onlineValidator = null;
+    }
     signatureBox.removeAll();
     attachmentsBox.removeAll();
     conlusionStrict.clear();
@@ -257,96 +313,193 @@ public class SideBar extends Composite
 
   private void updatePdfAStatus(final PdfAnalyzer analyzer)
   {
-    if (analyzer.getValidationResults().isSupportedPdfA() && !analyzer.getValidationResults().isError()
-        && analyzer.getValidationResults().isCompliant())
+    // the validation runs in the background, the item shows the result when
+    // it is ready
+    final TreeItem status = GuiHelper.treeItem(signatureBox, LocalSigner.i18n("format.validating"), font);
+    final int update = signatureUpdate;
+    analyzer.validatePdfAInBackground().whenComplete(new BiConsumer<PdfAValidationResults, Throwable>()
     {
-      String compliantStandard = analyzer.getValidationResults().getValidatedFlavourAsString();
-      String i18n = LocalSigner.i18n("format.isPDFA");
+      @Override
+      public void accept(final PdfAValidationResults results, final Throwable failure)
+      {
+        getDisplay().asyncExec(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            if (update == signatureUpdate && !status.isDisposed())
+            {
+              status.setText(getPdfAStatus(results));
+            }
+          }
+        });
+      }
+    });
+  }
 
-      GuiHelper.treeItem(signatureBox, String.format(i18n, compliantStandard), font);
-    }
-    else
+  private static String getPdfAStatus(final PdfAValidationResults results)
+  {
+    if (results != null && results.isSupportedPdfA() && !results.isError() && results.isCompliant())
     {
-      GuiHelper.treeItem(signatureBox, LocalSigner.i18n("format.noPDFA"), font);
+      String compliantStandard = results.getValidatedFlavourAsString();
+      String i18n = LocalSigner.i18n("format.isPDFA");
+
+      return String.format(i18n, compliantStandard);
     }
+    return LocalSigner.i18n("format.noPDFA");
   }
 
   private void updateSignature(final PdfAnalyzer analyzer)
   {
-    Map<Integer, SignatureInfo> signatures = analyzer.getSignatures();
+    final Map<Integer, String> names = analyzer.getSignatureNames();
 
-    boolean onlineValidatorUp = new OnlineServices(LocalSigner.appConfig).isOnlineValidatorUp();
-    setStatusOnline(onlineValidatorUp);
+    final State validatorState = ServiceHealthMonitor.getInstance().getState(ServiceHealthMonitor.VALIDATOR);
+    setStatusOnline(validatorState == State.UP);
 
-    List<TreeItem> signatureItems = new LinkedList<TreeItem>();
-    List<String> mandants = new LinkedList<String>();
+    if (names.isEmpty())
+    {
+      return;
+    }
 
-    try
+    // one item per signature in the order of the revisions, filled in as soon
+    // as the signature is verified
+    final Map<Integer, TreeItem> signatureItems = new TreeMap<Integer, TreeItem>();
+    for (Entry<Integer, String> name : names.entrySet())
+    {
+      signatureItems.put(name.getKey(), GuiHelper.treeItem(signatureBox, name.getValue(), font));
+    }
+
+    final int update = signatureUpdate;
+    analyzer.verifySignatures(new PdfAnalyzer.SignatureListener()
     {
-      String issuerDN = null;
-      String signerCertCN = null;
-      for (final SignatureInfo sig : signatures.values())
+      @Override
+      public void verified(final SignatureInfo signature)
       {
-        PdfPKCS7 pk = sig.getPkcs7();
-        String name = sig.getName();
+        getDisplay().asyncExec(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            TreeItem sigItem = signatureItems.get(signature.getRevision());
+            if (update == signatureUpdate && sigItem != null && !sigItem.isDisposed())
+            {
+              showSignature(analyzer, sigItem, signature);
+            }
+          }
+        });
+      }
 
-        Certificate[] chain = pk.getSignCertificateChain();
-        X509Certificate signerCert = (X509Certificate) chain[0];
-        X509Certificate issuerCert = null;
-        if (chain.length > 1)
+      @Override
+      public void finished(final Map<Integer, SignatureInfo> signatures)
+      {
+        // one tenant per item, computed here and not on the UI thread
+        final List<String> tenants = getTenants(names.keySet(), signatures);
+        getDisplay().asyncExec(new Runnable()
         {
-          issuerCert = (X509Certificate) chain[1];
-        }
+          @Override
+          public void run()
+          {
+            // tried unless the validator is known to be down, the first probe
+            // may not have returned yet
+            if (update == signatureUpdate && !isDisposed() && validatorState != State.DOWN)
+            {
+              startOnlineValidationInThread(analyzer, new LinkedList<TreeItem>(signatureItems.values()), tenants);
+            }
+          }
+        });
+      }
+    });
+  }
 
-        signerCertCN = CertificateInfo.extractSubject(signerCert, BCStyle.CN);
-        String issuerCertCN = CertificateInfo.extractSubject(signerCert.getIssuerX500Principal().getName(), BCStyle.CN);
+  private void showSignature(final PdfAnalyzer analyzer, final TreeItem sigItem, final SignatureInfo sig)
+  {
+    try
+    {
+      PdfPKCS7 pk = sig.getPkcs7();
+      String name = sig.getName();
 
-        issuerDN = signerCert.getIssuerDN().getName();
+      Certificate[] chain = pk.getSignCertificateChain();
+      X509Certificate signerCert = (X509Certificate) chain[0];
+      X509Certificate issuerCert = null;
+      if (chain.length > 1)
+      {
+        issuerCert = (X509Certificate) chain[1];
+      }
 
-        final TreeItem sigItem = GuiHelper.treeItem(signatureBox, signerCertCN, font);
-        signerCerts.put(sigItem, signerCert);
+      String signerCertCN = CertificateInfo.extractSubject(signerCert, BCStyle.CN);
+      String issuerCertCN = CertificateInfo.extractSubject(signerCert.getIssuerX500Principal().getName(), BCStyle.CN);
 
-        TreeItem revItem = GuiHelper.treeItem(sigItem,
-            LocalSigner.i18n("validationRevision") + " " + sig.getRevision(), font);
-        revItem.setImage(GuiHelper.loadImage(ImageResources.IMG_ACROBAT));
-        this.sideBarListener.register(revItem, "rev" + sig.getRevision(), FileType.PDF, sig.getRevisionData());
+      sigItem.setText(signerCertCN);
+      signerCerts.put(sigItem, signerCert);
 
-        TreeItem sigName = GuiHelper.treeItem(sigItem,
-            LocalSigner.i18n("validationSignatureLabel") + " " + signerCertCN, font);
-        sigName.setImage(GuiHelper.loadImage(ImageResources.IMG_KEY));
-        this.sideBarListener.register(sigName, name, FileType.CERT, signerCert.getEncoded());
+      TreeItem revItem = GuiHelper.treeItem(sigItem,
+          LocalSigner.i18n("validationRevision") + " " + sig.getRevision(), font);
+      revItem.setImage(GuiHelper.loadImage(ImageResources.IMG_ACROBAT));
+      this.sideBarListener.register(revItem, "rev" + sig.getRevision(), FileType.PDF,
+          analyzer.getRevision(name));
 
-        if (chain.length <= 1 && signerCertCN.equals(issuerCertCN))
-        {
-          LOGGER.debug("Self signed certificate");
-          sigName.setText(sigName.getText() + " (" + LocalSigner.i18n("validationSelfSigned") + ")");
-        }
-        else
-        {
-          TreeItem sigIssuer = GuiHelper.treeItem(sigItem,
-              LocalSigner.i18n("validationIssuerLabel") + " " + issuerCertCN, font);
-          sigIssuer.setImage(GuiHelper.loadImage(ImageResources.IMG_KEY));
-          if (issuerCert != null)
-          {
-            this.sideBarListener.register(sigIssuer, issuerCertCN, FileType.CERT, issuerCert.getEncoded());
-          }
-        }
+      TreeItem sigName = GuiHelper.treeItem(sigItem,
+          LocalSigner.i18n("validationSignatureLabel") + " " + signerCertCN, font);
+      sigName.setImage(GuiHelper.loadImage(ImageResources.IMG_KEY));
+      this.sideBarListener.register(sigName, name, FileType.CERT, signerCert.getEncoded());
 
-        signatureItems.add(sigItem);
-        mandants.add(getActualTenantForIssuerDNOrSubjectCN(issuerDN, signerCertCN, mandants));
+      if (chain.length <= 1 && signerCertCN.equals(issuerCertCN))
+      {
+        LOGGER.debug("Self signed certificate");
+        sigName.setText(sigName.getText() + " (" + LocalSigner.i18n("validationSelfSigned") + ")");
       }
-
-      if (!signatureItems.isEmpty() && onlineValidatorUp)
+      else
       {
-        startOnlineValidationInThread(analyzer, signatureItems, mandants);
+        TreeItem sigIssuer = GuiHelper.treeItem(sigItem,
+            LocalSigner.i18n("validationIssuerLabel") + " " + issuerCertCN, font);
+        sigIssuer.setImage(GuiHelper.loadImage(ImageResources.IMG_KEY));
+        if (issuerCert != null)
+        {
+          this.sideBarListener.register(sigIssuer, issuerCertCN, FileType.CERT, issuerCert.getEncoded());
+        }
       }
 
+      sigItem.setExpanded(true);
     } catch (Exception ex)
     {
       LOGGER.error("Cannot read signature", ex);
     }
   }
 
+  /**
+   * @param revisions
+   *          revisions of all signatures, in order
+   * @param signatures
+   *          the verified signatures by revision
+   * @return the tenant of every signature; a signature which could not be
+   *         verified gets the tenant of the signatures before it
+   */
+  private static List<String> getTenants(final Collection<Integer> revisions,
+      final Map<Integer, SignatureInfo> signatures)
+  {
+    List<String> mandants = new LinkedList<String>();
+    for (Integer revision : revisions)
+    {
+      String issuerDN = StringUtils.EMPTY;
+      String signerCertCN = StringUtils.EMPTY;
+      SignatureInfo sig = signatures.get(revision);
+      if (sig != null)
+      {
+        try
+        {
+          X509Certificate signerCert = (X509Certificate) sig.getPkcs7().getSignCertificateChain()[0];
+          signerCertCN = StringUtils.defaultString(CertificateInfo.extractSubject(signerCert, BCStyle.CN));
+          issuerDN = signerCert.getIssuerDN().getName();
+        } catch (RuntimeException e)
+        {
+          LOGGER.error("Cannot read signature of revision " + revision, e);
+        }
+      }
+      mandants.add(getActualTenantForIssuerDNOrSubjectCN(issuerDN, signerCertCN, mandants));
+    }
+    return mandants;
+  }
+
   private void setStatusOnline(boolean onlineValidatorUp)
   {
     if (onlineValidatorUp)
@@ -365,8 +518,8 @@ public class SideBar extends Composite
   private void startOnlineValidationInThread(final PdfAnalyzer analyzer,
       final List<TreeItem> sigItems, final List<String> mandants)
   {
-    OnlineValidator validator = new OnlineValidator(maingui, sigItems, analyzer, mandants);
-    maingui.getMainshell().getDisplay().asyncExec(validator);
+    onlineValidator = new OnlineValidator(maingui, sigItems, analyzer, mandants);
+    onlineValidator.start();
   }
 
   /**
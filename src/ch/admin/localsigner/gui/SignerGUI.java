@@ -38,7 +38,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.x500.style.BCStyle;
@@ -82,14 +81,14 @@ import ch.admin.localsigner.listener.ExitListener;
 import ch.admin.localsigner.listener.SaveProfileListener;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.main.LocalSignerCommandLine;
+import ch.admin.localsigner.main.PdfSignerFactory;
 import ch.admin.localsigner.main.SignatureParameters;
 import ch.admin.localsigner.main.exception.FileExceptionHandler;
 import ch.admin.localsigner.main.exception.FileWriteException;
 import ch.admin.localsigner.update.UpdateQuery;
+import ch.admin.localsigner.validation.AnalysisCache;
 import ch.admin.localsigner.validation.PdfAnalyzer;
-import ch.admin.localsigner.validation.SHAChecksum;
 import ch.glue.securitytools.SignatureHashType;
-import ch.glue.securitytools.SignatureType;
 import ch.glue.securitytools.keystore.PINInvalidException;
 import ch.glue.securitytools.keystore.PINWrongException;
 import ch.glue.securitytools.keystore.SignerKeystore;
@@ -97,7 +96,6 @@ import ch.glue.securitytools.keystore.SignerKeystorePKCS11;
 import ch.glue.securitytools.keystore.SignerKeystorePKCS12;
 import ch.glue.securitytools.pdf.PdfSigner;
 import ch.glue.securitytools.pkcs11.PKCS11Token;
-import ch.glue.securitytools.timestamp.TimestampConfiguration;
 import ch.glue.securitytools.timestamp.TimestampInfo;
 import ch.glue.securitytools.timestamp.TimestampVerification;
 import ch.glue.securitytools.util.CertificateInfo;
@@ -363,9 +361,16 @@ public class SignerGUI
     try
     {
       KeyStore ks = null;
-      token = new Pkcs11Helper(parent).findCertPkcs11();
+      token = Pkcs11TokenManager.getInstance().getToken(parent);
       if (token != null)
       {
+        List<CertDetail> cached = Pkcs11TokenManager.getInstance().getCertificates(token);
+        if (cached != null)
+        {
+          LOGGER.debug("Using certificates already read from token");
+          certificates.addAll(cached);
+          return certificates;
+        }
         ks = token.getKeystore();
       }
 
@@ -388,10 +393,12 @@ public class SignerGUI
           LOGGER.debug("Cannot access certificate", nep);
         }
       }
+      Pkcs11TokenManager.getInstance().putCertificates(token, certificates);
     } catch (java.security.ProviderException e)
     {
       LOGGER.debug("PKCS11 Exception happened", e);
       certificates.clear();
+      Pkcs11TokenManager.getInstance().invalidate();
     } catch (PINWrongException pex)
     {
       LOGGER.info("Attention: PIN was wrong");
@@ -536,7 +543,9 @@ public class SignerGUI
   {
     try
     {
-      PdfAnalyzer analyzer = new PdfAnalyzer(sigParams.getInputFile());
+      // the store of the document to sign, the cache must not keep the array
+      PdfAnalyzer analyzer = AnalysisCache.getInstance()
+          .get(maingui.getDocument().getInputFile().getDocumentToSign());
       return analyzer.isSigned();
     } catch (IOException e)
     {
@@ -625,36 +634,7 @@ public class SignerGUI
 
     try
     {
-      PropertiesConfiguration props = new PropertiesConfiguration();
-      props.setDelimiterParsingDisabled(true);
-      props
-          .load(new File(LanguageConfiguration.getLanguageFolder() + lang + ".properties")
-              .getAbsoluteFile());
-
-      // set labels for visible signature
-      if (StringUtils.isNotBlank(sigParams.getContact()))
-      {
-        sigParams.setContactLabel(props.getString("contact"));
-      }
-      if (StringUtils.isNotBlank(sigParams.getReason()))
-      {
-        sigParams.setReasonLabel(props.getString("reason"));
-      }
-
-      String signatureDigitallySigned = props.getString("signatureDigitallySigned");
-      if (StringUtils.isNotBlank(signatureDigitallySigned))
-      {
-        sigParams.setSignatureDigitallySigned(signatureDigitallySigned + " ");
-      }
-
-      sigParams.setSignatureLocalTime(isoDate.format(new Date()));
-
-      String signatureTsaTime = props.getString("signatureTsaTime");
-      if (StringUtils.isNotBlank(signatureTsaTime))
-      {
-        sigParams
-            .setSignatureTsaTime(isoDate.format(new Date()) + " " + signatureTsaTime);
-      }
+      PdfSignerFactory.loadSignatureTexts(sigParams, lang);
     } catch (ConfigurationException e)
     {
       LOGGER.error("Cannot load language file for " + lang, e);
@@ -828,18 +808,17 @@ public class SignerGUI
         Message.warning(parent, LocalSigner.i18n(I18N_SIGN_ERROR),
             LocalSigner.i18n("signErrorExtended"));
         LOGGER.error("Error signing file", e);
+        // the card may have been removed, log in again for the next try
+        Pkcs11TokenManager.getInstance().invalidate();
         return null;
       }
     }
     return signedFile;
   }
 
-  private void isFileToSignUnchanged() throws NoSuchAlgorithmException, IOException
+  private void isFileToSignUnchanged()
   {
-    String currentHash = SHAChecksum.getChecksum(sigParams.getInputFile());
-    String oldHash = maingui.getDocument().getInputFile().getChecksumOfOriginalFile();
-    String oldHashMerge = maingui.getDocument().getInputFile().getChecksumOfMergedFile();
-    if (currentHash.equals(oldHash) || currentHash.equals(oldHashMerge))
+    if (maingui.getDocument().getInputFile().isFileToSign(sigParams.getInputFile()))
     {
       LOGGER.debug("Hashes are ok before signing");
     } else
@@ -850,89 +829,7 @@ public class SignerGUI
 
   private PdfSigner createSigner()
   {
-    final PdfSigner signer = new PdfSigner(signerKeystore);
-
-    signer.setProducerText("; signed by LocalSigner " + GuiHelper.getVersion());
-
-    String tsaUrl = sigParams.getTsaUrl();
-    if (StringUtils.isNotEmpty(tsaUrl))
-    {
-      TimestampConfiguration tsaconf = new TimestampConfiguration(tsaUrl);
-      tsaconf.setTimeStampingAuthorityAccount(sigParams.getTsaUser());
-      tsaconf.setTimeStampingAuthorityPassword(sigParams.getTsaPassword());
-      signer.setTimestampingConfiguration(tsaconf);
-      signer.setRequireTsa(true);
-
-      LOGGER.info("Signing  with timestamp");
-    } else
-    {
-      LOGGER.info("Signing  without timestamp");
-    }
-
-    signer.setInputFile(sigParams.getInputFile());
-    signer.setSignatureVisible(sigParams.isVisibleSignature());
-    signer.setAllowMultipleSignatures(sigParams.isMultipleSignature());
-    if (sigParams.isCertification())
-    {
-      signer.setSignatureType(SignatureType.CERTIFICATION_FORM_FILLING_ALLOWED);
-    } else
-    {
-      signer.setSignatureType(SignatureType.SIGNATURE);
-    }
-
-    if (sigParams.getSignatureBox() == null)
-    {
-      signer.setSignatureLeftPositionInMM(sigParams.getLeftPos());
-      signer.setSignatureTopPositionInMM(sigParams.getTopPos());
-      signer.setSignatureWidthInMM(sigParams.getBoxWidth());
-      signer.setSignatureHeightInMM(sigParams.getBoxHeight());
-    } else
-    {
-      signer.setSignatureBox(sigParams.getSignatureBox());
-    }
-
-    String backgroundImage = sigParams.getBackgroundImage();
-
-    if (sigParams.isSignatureImageVisible() && StringUtils.isNotBlank(backgroundImage))
-    {
-      // image / text mixed
-      if (sigParams.isSignatureTextVisible())
-      {
-        signer.setJpgImage(new File(backgroundImage));
-      } else
-      {
-        // image only mode
-        signer.setJpgBackground(new File(backgroundImage));
-        signer.setHideSignatureText(true);
-      }
-    }
-
-    signer.setSignatureLocation(sigParams.getLocation());
-    signer.setSignatureContact(sigParams.getContact());
-    signer.setSignatureContactLabel(sigParams.getContactLabel());
-    signer.setSignatureContactLabelVisible(sigParams.isContactLabelShown());
-    signer.setSignatureReason(sigParams.getReason());
-    signer.setSignatureReasonLabel(sigParams.getReasonLabel());
-    signer.setSignatureReasonLabelVisible(sigParams.isReasonLabelShown());
-    signer.setTextDigitallySigned(sigParams.getSignatureDigitallySigned());
-    signer.setTextLocalTime(sigParams.getSignatureLocalTime());
-    signer.setTextTsaTime(sigParams.getSignatureTsaTime());
-
-    signer.setSignaturePage(sigParams.getSignaturePage());
-
-    if (sigParams.getSignatureField() != null)
-    {
-      signer.setSignatureFieldName(sigParams.getSignatureField());
-    }
-
-    if (sigParams.getHash() == null)
-    {
-      sigParams.setHash(SignatureHashType.SHA256);
-    }
-
-    signer.setSignatureHashType(sigParams.getHash());
-
-    return signer;
+    return PdfSignerFactory.createSigner(signerKeystore, sigParams);
   }
 
   private void askUserIfNoTsaToSign()
@@ -64,6 +64,7 @@ import ch.admin.localsigner.listener.ProfilePathListener;
 import ch.admin.localsigner.listener.ResetConfigListener;
 import ch.admin.localsigner.listener.ResetProfileListener;
 import ch.admin.localsigner.main.LocalSigner;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
 import ch.glue.proxylibrary.core.system.ProxySetting;
 import ch.glue.proxylibrary.swt.view.SWTProxyGUI;
 
@@ -840,6 +841,8 @@ public class ConfigurationGUI
       Message.warning(shell, LocalSigner.i18n("errorReloadingConfiguration"));
       return;
     }
+    // the service URLs may have changed
+    ServiceHealthMonitor.getInstance().start(LocalSigner.appConfig);
 
     ProxySetting.setupProxy();
 
@@ -110,6 +110,12 @@ public class PdfInfoPanel extends JPanel
     setBackground(LIGHT_BLUE);
   }
 
+  void showValidating()
+  {
+    setBackground(Color.LIGHT_GRAY);
+    statusLabel.setText("<html>" + LocalSigner.i18n("pdfInfoPanel.validating") + "</html>");
+  }
+
   void clear()
   {
     statusLabel.setText("");
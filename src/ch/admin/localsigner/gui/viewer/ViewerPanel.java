@@ -18,8 +18,11 @@ package ch.admin.localsigner.gui.viewer;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import javax.swing.JApplet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import javax.swing.SwingUtilities;
 import ch.admin.localsigner.gui.MainGUI;
+import ch.admin.localsigner.validation.PdfAValidationResults;
 import ch.admin.localsigner.validation.PdfAnalyzer;
 
 @SuppressWarnings("serial")
@@ -31,7 +34,8 @@ public class ViewerPanel extends JApplet
 
   private PdfInfoPanel infoPanel;
 
-  private PdfAnalyzer currentAnalyzer = null;
+  // set by the SWT thread, read by the Swing thread
+  private volatile PdfAnalyzer currentAnalyzer = null;
 
   ViewerPanel(final MainGUI mainGui)
   {
@@ -60,9 +64,17 @@ public class ViewerPanel extends JApplet
     return infoPanel;
   }
 
+  /**
+   * Shows the PDF/A status of the document. The validation runs in the
+   * background, the status is shown when it is ready.
+   *
+   * @param analyzer
+   *          the document shown
+   */
   public void updateStatus(final PdfAnalyzer analyzer)
   {
     currentAnalyzer = analyzer;
+    final boolean validated = analyzer.isPdfAValidated();
 
     SwingUtilities.invokeLater(new Runnable()
     {
@@ -71,17 +83,41 @@ public class ViewerPanel extends JApplet
       public void run()
       {
         getInfoPanel().clear();
-        analyzer.validatePdfA();
-
-        if (analyzer.getValidationResults().isSupportedPdfA() && !analyzer.getValidationResults().isError()
-            && analyzer.getValidationResults().isCompliant())
+        if (!validated)
         {
-          getInfoPanel().showBlueInfo(analyzer);
+          getInfoPanel().showValidating();
         }
-        else
+      }
+    });
+
+    CompletableFuture<PdfAValidationResults> validation = analyzer.validatePdfAInBackground();
+    validation.whenComplete(new BiConsumer<PdfAValidationResults, Throwable>()
+    {
+      @Override
+      public void accept(final PdfAValidationResults results, final Throwable failure)
+      {
+        SwingUtilities.invokeLater(new Runnable()
         {
-          getInfoPanel().showYellowInfo(analyzer);
-        }
+
+          @Override
+          public void run()
+          {
+            if (currentAnalyzer != analyzer)
+            {
+              // another document is shown meanwhile
+              return;
+            }
+            getInfoPanel().clear();
+            if (results != null && results.isSupportedPdfA() && !results.isError() && results.isCompliant())
+            {
+              getInfoPanel().showBlueInfo(analyzer);
+            }
+            else
+            {
+              getInfoPanel().showYellowInfo(analyzer);
+            }
+          }
+        });
       }
     });
   }
@@ -68,7 +68,7 @@ public class AddSigFieldListener implements Listener
 
     final PropertiesGUI propertiesGui = maingui.getPropertiesGui();
 
-    try (final PdfReader reader = new PdfReader(maingui.getInputFile()))
+    try (final PdfReader reader = maingui.openInputReader())
     {
       // check input file for certification level, if the file is certified
       // and changes are not allowed we inform the user and return
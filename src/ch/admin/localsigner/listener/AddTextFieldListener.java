@@ -15,8 +15,8 @@
  */
 package ch.admin.localsigner.listener;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.widgets.Event;
@@ -67,7 +67,7 @@ public class AddTextFieldListener implements Listener
   {
     final PropertiesGUI propertiesGui = maingui.getPropertiesGui();
 
-    try (PdfReader reader = new PdfReader(maingui.getInputFile()))
+    try (PdfReader reader = maingui.openInputReader())
     {
 
       // check input file for certification level, if the file is certified
@@ -136,10 +136,11 @@ public class AddTextFieldListener implements Listener
   {
     int page = position.getPage();
     LOGGER.info("create text field " + name + " on page " + page);
-    byte[] out = new FieldCreator().fillTextField(
-        new ByteArrayInputStream(maingui.getInputFile()), name, page, position.getX(),
-        position.getY(), position.getWidth(), position.getHeight(), text);
-    return out;
+    try (InputStream in = maingui.openInputStream())
+    {
+      return new FieldCreator().fillTextField(in, name, page, position.getX(),
+          position.getY(), position.getWidth(), position.getHeight(), text);
+    }
   }
 
 }
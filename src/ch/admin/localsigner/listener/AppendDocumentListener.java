@@ -80,7 +80,7 @@ public class AppendDocumentListener implements Listener
       }
 
       PdfAttacher attacher = new PdfAttacher();
-      byte[] output = attacher.attachDocument(new PdfReader(maingui.getInputFile()),
+      byte[] output = attacher.attachDocument(maingui.openInputReader(),
           attachmentReader, 0);
 
       maingui.getDocument().getInputFile().setTemporaryFile(output);
@@ -18,7 +18,6 @@ package ch.admin.localsigner.listener;
 import ch.admin.localsigner.gui.MainGUI;
 import ch.admin.localsigner.gui.MainGUI.GuiMode;
 import ch.glue.securitytools.pdf.PdfAttacher;
-import com.lowagie.text.pdf.PdfReader;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
@@ -68,7 +67,7 @@ public class AppendEmptyPageListener implements Listener
     try
     {
       PdfAttacher attacher = new PdfAttacher();
-      byte[] output = attacher.attachEmptyPage(new PdfReader(maingui.getInputFile()));
+      byte[] output = attacher.attachEmptyPage(maingui.openInputReader());
 
       maingui.getDocument().getInputFile().setTemporaryFile(output);
       maingui.reloadInputFile(true);
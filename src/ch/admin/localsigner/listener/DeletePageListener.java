@@ -73,7 +73,7 @@ public class DeletePageListener implements Listener
     maingui.switchMode(GuiMode.deletePage);
     try
     {
-      final PdfReader reader = new PdfReader(maingui.getInputFile());
+      final PdfReader reader = maingui.openInputReader();
 
       final Shell shell = new Shell(maingui.getMainshell(), SWT.TITLE
               | SWT.BORDER | SWT.APPLICATION_MODAL);
@@ -18,7 +18,6 @@ package ch.admin.localsigner.listener;
 import ch.admin.localsigner.gui.MainGUI;
 import ch.admin.localsigner.gui.MainGUI.GuiMode;
 import ch.glue.securitytools.pdf.PdfAttacher;
-import com.lowagie.text.pdf.PdfReader;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.SWT;
@@ -82,7 +81,7 @@ public class InsertAttachmentListener implements Listener
       }
 
       PdfAttacher attacher = new PdfAttacher();
-      byte[] output = attacher.insertAttachment(new PdfReader(maingui.getInputFile()),
+      byte[] output = attacher.insertAttachment(maingui.openInputReader(),
           data, filename, "");
 
       maingui.getDocument().getInputFile().setTemporaryFile(output);
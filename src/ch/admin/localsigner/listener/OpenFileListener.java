@@ -30,6 +30,7 @@ import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeItem;
 import com.lowagie.text.pdf.PRStream;
 import com.lowagie.text.pdf.PdfReader;
+import ch.admin.localsigner.main.DocumentRange;
 import ch.admin.localsigner.main.TempFilesCleanerUtil;
 
 /**
@@ -101,6 +102,13 @@ public class OpenFileListener implements Listener
 
     try
     {
+      if (data instanceof DocumentRange)
+      {
+        // transferred by the channels, not read into memory
+        ((DocumentRange) data).copyTo(tmp);
+        return;
+      }
+
       fos = new FileOutputStream(tmp);
 
       if (data instanceof byte[])
@@ -18,6 +18,7 @@ package ch.admin.localsigner.listener;
 import ch.admin.localsigner.config.ApplicationConfiguration;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.utils.Helper;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
 import java.io.File;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.SWT;
@@ -75,6 +76,7 @@ public class ResetConfigListener implements Listener
       try
       {
         LocalSigner.appConfig = new ApplicationConfiguration();
+        ServiceHealthMonitor.getInstance().start(LocalSigner.appConfig);
       } catch (Exception e)
       {
         LOGGER.error("Cannot init user configuration", e);
@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.TreeMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
@@ -51,7 +52,6 @@ import ch.admin.localsigner.main.SignatureParameters;
 import ch.admin.localsigner.main.exception.FileExceptionHandler;
 import ch.admin.localsigner.main.exception.FileWriteException;
 import ch.admin.localsigner.notary.validation.IsPdfACheck;
-import ch.admin.localsigner.validation.SHAChecksum;
 import ch.glue.securitytools.SignatureBox;
 
 /**
@@ -144,11 +144,23 @@ public class SignListener implements Listener
     if (!LocalSigner.appConfig.isSignNonPdfA())
     { // it shall not be possible to sign a document that is not PDF/A
       // conformant
-      IsPdfACheck pdfAValidator = new IsPdfACheck();
+      final IsPdfACheck pdfAValidator = new IsPdfACheck();
 
-      byte[] fileAsByteArr = maingui.getInputFile();
+      final byte[] fileAsByteArr = maingui.getInputFile();
 
-      if (!pdfAValidator.validate(fileAsByteArr))
+      // the validation started when the document was opened, wait for it
+      // only if it is not finished yet
+      final boolean[] pdfA = new boolean[1];
+      BusyIndicator.showWhile(shell.getDisplay(), new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          pdfA[0] = pdfAValidator.validate(fileAsByteArr);
+        }
+      });
+
+      if (!pdfA[0])
       { // not a PDF/A
         LOGGER.debug("pdf is not PDF/A but config does not allow to sign non-PDF/A");
         Message.warning(shell, LocalSigner.i18n("signNonPdfANotConfigured"));
@@ -410,9 +422,8 @@ public class SignListener implements Listener
 
     try
     {
-      byte[] file = maingui.getInputFile();
       LOGGER.debug("check input file ");
-      pdf = new PdfReader(file);
+      pdf = maingui.openInputReader();
     } catch (IOException e)
     {
       LOGGER.error("error opening source pdf", e);
@@ -590,28 +601,8 @@ public class SignListener implements Listener
   private boolean checkSumError()
   {
     InputFile input = maingui.getDocument().getInputFile();
-    final byte[] fileToSign = input.getFileToSign();
-    final String currentHash;
-    try
-    {
-      currentHash = SHAChecksum.getChecksum(fileToSign);
-    } catch (Exception e)
-    {
-      LOGGER.error("Cannot checksum document", e);
-      return true;
-    }
-
-    // it is ok if its the original file
-    if (currentHash.equals(input.getChecksumOfOriginalFile()))
-    {
-      LOGGER.debug("Hashes are ok (original file)");
-      return false;
-    }
-
-    // otherwise it should be the merged file
-    if (currentHash.equals(input.getChecksumOfMergedFile()))
+    if (input.isDocumentToSignUnchanged())
     {
-      LOGGER.debug("Hashes are ok (merged file)");
       return false;
     }
 
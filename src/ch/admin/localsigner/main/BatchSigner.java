@@ -0,0 +1,554 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.main.DocumentSigner.DocumentRejectedException;
+import ch.admin.localsigner.utils.Constants;
+
+/**
+ * Signs a whole directory (or a list of files) with one signature profile,
+ * without starting the GUI.
+ * <p>
+ * Reading and checking the documents as well as verifying and writing the
+ * signed result is done in parallel. The signing itself (the private key
+ * operation) is done one document after the other on the calling thread, as a
+ * PKCS11 token can only handle one session at a time.
+ * <p>
+ * The result of every document is written to a CSV report.
+ */
+class BatchSigner
+{
+  private static final Logger LOGGER = Logger.getLogger(BatchSigner.class);
+
+  static final String DEFAULT_REPORT_NAME = "localsigner-batch-report.csv";
+
+  private static final String REPORT_SEPARATOR = ";";
+
+  /**
+   * Status of a document after the batch run
+   */
+  enum Status
+  {
+    PENDING, SIGNED, FAILED
+  }
+
+  private final LocalSignerCommandLine cli;
+
+  private final int threads;
+
+  BatchSigner(final LocalSignerCommandLine cli)
+  {
+    this.cli = cli;
+    this.threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Signs all documents of the batch and writes the report.
+   *
+   * @return number of documents which could not be signed, or -1 if the batch
+   *         could not be started at all
+   */
+  int run()
+  {
+    final List<File> inputs;
+    final PropertiesConfiguration profile;
+    final DocumentSigner signer = new DocumentSigner(cli.getAlias());
+    try
+    {
+      inputs = collectInputFiles(new File(cli.getBatch()));
+      profile = DocumentSigner.loadProfile(cli.getSignatureProfile());
+      signer.open();
+    } catch (Exception e)
+    {
+      LOGGER.fatal("Cannot start batch signing", e);
+      return -1;
+    }
+
+    LOGGER.info("Batch signing " + inputs.size() + " documents with " + threads + " threads");
+
+    List<BatchResult> results = new ArrayList<BatchResult>();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try
+    {
+      results = signAll(inputs, profile, signer, pool);
+    } finally
+    {
+      pool.shutdownNow();
+      signer.close();
+    }
+
+    int failed = 0;
+    for (BatchResult result : results)
+    {
+      if (result.getStatus() != Status.SIGNED)
+      {
+        failed++;
+      }
+    }
+
+    File report = getReportFile();
+    try
+    {
+      writeReport(results, report);
+      LOGGER.info("Batch report written to " + report.getAbsolutePath());
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot write batch report " + report.getAbsolutePath(), e);
+    }
+
+    LOGGER.info("Batch signing done: " + (results.size() - failed) + " signed, " + failed + " failed");
+    return failed;
+  }
+
+  private List<BatchResult> signAll(final List<File> inputs, final PropertiesConfiguration profile,
+      final DocumentSigner signer, final ExecutorService pool)
+  {
+    // limit the number of documents held in memory, from reading until the
+    // signed document is written
+    final Semaphore window = new Semaphore(2 * threads);
+
+    // input of every output file, two inputs must not overwrite each other
+    Map<File, File> outputs = new HashMap<File, File>();
+
+    LinkedList<Future<BatchResult>> prepared = new LinkedList<Future<BatchResult>>();
+    List<Future<BatchResult>> written = new ArrayList<Future<BatchResult>>();
+    int next = 0;
+
+    while (next < inputs.size() || !prepared.isEmpty())
+    {
+      // only this thread takes permits: wait for one only if nothing is left
+      // to sign
+      while (next < inputs.size() && (prepared.isEmpty() || window.availablePermits() > 0))
+      {
+        acquire(window);
+        File input = inputs.get(next++);
+        File output = DocumentSigner.getOutputFile(input, cli.getOutput()).getAbsoluteFile();
+        File first = outputs.put(output, input);
+        if (first != null)
+        {
+          BatchResult duplicate = new BatchResult(input);
+          duplicate.fail("Same output file as " + first.getPath());
+          prepared.add(CompletableFuture.completedFuture(duplicate));
+        } else
+        {
+          prepared.add(pool.submit(new PrepareTask(input, output, profile, signer)));
+        }
+      }
+
+      final BatchResult result = getResult(prepared.removeFirst());
+      if (result.getStatus() == Status.FAILED)
+      {
+        written.add(pool.submit(new Finished(result, window)));
+        continue;
+      }
+
+      // single signing lane: private key operations one after the other
+      sign(result, signer);
+
+      if (result.getStatus() == Status.FAILED)
+      {
+        written.add(pool.submit(new Finished(result, window)));
+      } else
+      {
+        written.add(pool.submit(new VerifyAndWriteTask(result, window)));
+      }
+    }
+
+    List<BatchResult> results = new ArrayList<BatchResult>();
+    for (Future<BatchResult> future : written)
+    {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+  private static void acquire(final Semaphore window)
+  {
+    try
+    {
+      window.acquire();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Batch signing interrupted", e);
+    }
+  }
+
+  private static BatchResult getResult(final Future<BatchResult> future)
+  {
+    try
+    {
+      return future.get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Batch signing interrupted", e);
+    } catch (ExecutionException e)
+    {
+      // tasks catch their own exceptions
+      throw new IllegalStateException("Unexpected error in batch task", e.getCause());
+    }
+  }
+
+  private void sign(final BatchResult result, final DocumentSigner signer)
+  {
+    try
+    {
+      result.setSignedFile(signDocument(signer, result.getSigParams()));
+    } catch (Exception e)
+    {
+      LOGGER.error("Error signing " + result.getInput(), e);
+      result.fail("Signing failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Signs one prepared document, the only private key operation of the batch.
+   *
+   * @param signer
+   *          signer of the batch
+   * @param sigParams
+   *          prepared signature parameters
+   * @return the signed document
+   * @throws Exception
+   *           if signing fails
+   */
+  byte[] signDocument(final DocumentSigner signer, final SignatureParameters sigParams) throws Exception
+  {
+    return signer.sign(sigParams);
+  }
+
+  /**
+   * Reads and checks one document and prepares its signature parameters.
+   */
+  private final class PrepareTask implements Callable<BatchResult>
+  {
+    private final File input;
+
+    private final File output;
+
+    private final PropertiesConfiguration profile;
+
+    private final DocumentSigner signer;
+
+    PrepareTask(final File input, final File output, final PropertiesConfiguration profile,
+        final DocumentSigner signer)
+    {
+      this.input = input;
+      this.output = output;
+      this.profile = profile;
+      this.signer = signer;
+    }
+
+    @Override
+    public BatchResult call()
+    {
+      BatchResult result = new BatchResult(input);
+      try
+      {
+        byte[] bytes = FileUtils.readFileToByteArray(input);
+        result.setSigParams(signer.prepare(bytes, profile, cli.getSignatureProfile(), output.getPath()));
+      } catch (DocumentRejectedException e)
+      {
+        result.fail(e.getMessage());
+      } catch (Exception e)
+      {
+        LOGGER.error("Cannot prepare " + input, e);
+        result.fail("Cannot read document: " + e.getMessage());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Verifies the new signature and writes the signed document. Its place in
+   * the window is given back when the document is written.
+   */
+  private static final class VerifyAndWriteTask implements Callable<BatchResult>
+  {
+    private final BatchResult result;
+
+    private final Semaphore window;
+
+    VerifyAndWriteTask(final BatchResult result, final Semaphore window)
+    {
+      this.result = result;
+      this.window = window;
+    }
+
+    @Override
+    public BatchResult call()
+    {
+      try
+      {
+        if (!DocumentSigner.verify(result.getSignedFile()))
+        {
+          result.fail("Signature invalid");
+        } else
+        {
+          Files.write(new File(result.getSigParams().getOutPath()).toPath(), result.getSignedFile());
+          result.setStatus(Status.SIGNED);
+        }
+      } catch (Exception e)
+      {
+        LOGGER.error("Cannot verify or write " + result.getInput(), e);
+        result.fail("Cannot verify or write signed document: " + e.getMessage());
+      } finally
+      {
+        // the signed document is released by finish()
+        result.finish();
+        window.release();
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Only stops the clock of an already failed document, so the report keeps
+   * the order of the input, and gives back its place in the window.
+   */
+  private static final class Finished implements Callable<BatchResult>
+  {
+    private final BatchResult result;
+
+    private final Semaphore window;
+
+    Finished(final BatchResult result, final Semaphore window)
+    {
+      this.result = result;
+      this.window = window;
+    }
+
+    @Override
+    public BatchResult call()
+    {
+      result.finish();
+      window.release();
+      return result;
+    }
+  }
+
+  /**
+   * Collects the documents to sign. If the given file is a directory, all PDF
+   * files in it are taken (sorted by name), otherwise the file is read as a
+   * list with one path per line. Empty lines and lines starting with # are
+   * ignored.
+   *
+   * @param batch
+   *          directory or list file
+   * @return files to sign
+   * @throws IOException
+   *           if the list cannot be read
+   */
+  static List<File> collectInputFiles(final File batch) throws IOException
+  {
+    List<File> files = new ArrayList<File>();
+    if (batch.isDirectory())
+    {
+      File[] pdfs = batch.listFiles();
+      if (pdfs != null)
+      {
+        Arrays.sort(pdfs);
+        for (File pdf : pdfs)
+        {
+          if (pdf.isFile() && pdf.getName().toLowerCase().endsWith(Constants.PDF_FILE_SUFFIX))
+          {
+            files.add(pdf);
+          }
+        }
+      }
+      return files;
+    }
+
+    for (String line : FileUtils.readLines(batch, StandardCharsets.UTF_8))
+    {
+      String path = line.trim();
+      if (path.isEmpty() || path.startsWith("#"))
+      {
+        continue;
+      }
+      File file = new File(path);
+      if (!file.isAbsolute())
+      {
+        file = new File(batch.getAbsoluteFile().getParentFile(), path);
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  private File getReportFile()
+  {
+    if (cli.getReport() != null)
+    {
+      return new File(cli.getReport());
+    }
+    return new File(cli.getOutput() != null ? cli.getOutput() : ".", DEFAULT_REPORT_NAME);
+  }
+
+  /**
+   * Writes the report as CSV, one line per document.
+   *
+   * @param results
+   *          results in input order
+   * @param report
+   *          file to write
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  static void writeReport(final List<BatchResult> results, final File report) throws IOException
+  {
+    PrintWriter writer = new PrintWriter(report, StandardCharsets.UTF_8.name());
+    try
+    {
+      writer.println(StringUtils.join(
+          new String[] {"input", "output", "status", "duration_ms", "message"}, REPORT_SEPARATOR));
+      for (BatchResult result : results)
+      {
+        String output = result.getStatus() == Status.SIGNED ? result.getSigParams().getOutPath() : "";
+        writer.println(StringUtils.join(new Object[] {result.getInput().getPath(), output,
+          result.getStatus(), result.getDuration(), clean(result.getMessage())}, REPORT_SEPARATOR));
+      }
+    } finally
+    {
+      writer.close();
+    }
+  }
+
+  private static String clean(final String message)
+  {
+    if (message == null)
+    {
+      return "";
+    }
+    return message.replace(REPORT_SEPARATOR, ",").replace('\n', ' ').replace('\r', ' ');
+  }
+
+  /**
+   * State and result of one document of the batch
+   */
+  static final class BatchResult
+  {
+    private final File input;
+
+    private final long start = System.currentTimeMillis();
+
+    private long duration;
+
+    private Status status = Status.PENDING;
+
+    private String message;
+
+    private SignatureParameters sigParams;
+
+    private byte[] signedFile;
+
+    BatchResult(final File input)
+    {
+      this.input = input;
+    }
+
+    File getInput()
+    {
+      return input;
+    }
+
+    Status getStatus()
+    {
+      return status;
+    }
+
+    void setStatus(final Status status)
+    {
+      this.status = status;
+    }
+
+    String getMessage()
+    {
+      return message;
+    }
+
+    void fail(final String failure)
+    {
+      this.status = Status.FAILED;
+      this.message = failure;
+      // release the document
+      this.signedFile = null;
+      if (sigParams != null)
+      {
+        sigParams.setInputFile(null);
+      }
+    }
+
+    BatchResult finish()
+    {
+      duration = System.currentTimeMillis() - start;
+      signedFile = null;
+      if (sigParams != null)
+      {
+        sigParams.setInputFile(null);
+      }
+      return this;
+    }
+
+    long getDuration()
+    {
+      return duration;
+    }
+
+    SignatureParameters getSigParams()
+    {
+      return sigParams;
+    }
+
+    void setSigParams(final SignatureParameters sigParams)
+    {
+      this.sigParams = sigParams;
+    }
+
+    byte[] getSignedFile()
+    {
+      return signedFile;
+    }
+
+    void setSignedFile(final byte[] signedFile)
+    {
+      this.signedFile = signedFile;
+    }
+  }
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import ch.admin.localsigner.utils.Constants;
+import ch.admin.localsigner.validation.PdfAValidationResults;
+import ch.admin.localsigner.validation.PdfAnalyzer;
+
+/**
+ * Validates all PDF files of a directory tree for PDF/A, without starting the
+ * GUI, e.g. to pre-screen an archive of incoming documents.
+ * <p>
+ * The documents are validated on a pool of workers. The documents in memory
+ * are limited to a part of the heap: a document is only read once its size
+ * fits into what the documents being validated leave free.
+ * <p>
+ * The result of every document is written to a CSV report, or a JSON report
+ * if the name of the report ends with .json.
+ */
+class BatchValidator
+{
+  private static final Logger LOGGER = Logger.getLogger(BatchValidator.class);
+
+  static final String DEFAULT_REPORT_NAME = "localsigner-validation-report.csv";
+
+  private static final String JSON_SUFFIX = ".json";
+
+  private static final String REPORT_SEPARATOR = ";";
+
+  private static final String RULE_SEPARATOR = "|";
+
+  // heap share for the documents being validated, veraPDF needs the rest
+  private static final int MEMORY_SHARE = 4;
+
+  private static final int KB = 1024;
+
+  private final LocalSignerCommandLine cli;
+
+  private final int workers;
+
+  // kilobytes of documents which may be in memory at the same time
+  private final Semaphore memory;
+
+  private final int memoryLimit;
+
+  BatchValidator(final LocalSignerCommandLine cli)
+  {
+    this(cli, cli.getWorkers(), Runtime.getRuntime().maxMemory() / MEMORY_SHARE);
+  }
+
+  BatchValidator(final LocalSignerCommandLine cli, final int workers, final long memoryBytes)
+  {
+    this.cli = cli;
+    this.workers = Math.max(1, workers);
+    this.memoryLimit = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBytes / KB));
+    this.memory = new Semaphore(memoryLimit);
+  }
+
+  /**
+   * Validates all documents of the directory tree and writes the report.
+   *
+   * @return number of documents which could not be validated, or -1 if the
+   *         validation could not be started at all
+   */
+  int run()
+  {
+    final List<File> inputs;
+    try
+    {
+      inputs = collectInputFiles(new File(cli.getValidateDir()));
+    } catch (IOException e)
+    {
+      LOGGER.fatal("Cannot start validation", e);
+      return -1;
+    }
+
+    LOGGER.info("Validating " + inputs.size() + " documents with " + workers + " workers");
+    long start = System.currentTimeMillis();
+
+    List<ValidationResult> results;
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try
+    {
+      results = validateAll(inputs, pool);
+    } finally
+    {
+      pool.shutdownNow();
+    }
+
+    int failed = 0;
+    int compliant = 0;
+    for (ValidationResult result : results)
+    {
+      if (result.getMessage() != null)
+      {
+        failed++;
+      } else if (result.isCompliant())
+      {
+        compliant++;
+      }
+    }
+
+    File report = getReportFile();
+    try
+    {
+      writeReport(results, report);
+      LOGGER.info("Validation report written to " + report.getAbsolutePath());
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot write validation report " + report.getAbsolutePath(), e);
+      return -1;
+    }
+
+    LOGGER.info("Validation done in " + (System.currentTimeMillis() - start) + " ms: " + compliant
+        + " compliant, " + (results.size() - compliant - failed) + " not compliant, " + failed + " failed");
+    return failed;
+  }
+
+  private List<ValidationResult> validateAll(final List<File> inputs, final ExecutorService pool)
+  {
+    List<Future<ValidationResult>> running = new ArrayList<Future<ValidationResult>>();
+    for (File input : inputs)
+    {
+      // wait until the document fits into memory
+      int permits = getPermits(input);
+      try
+      {
+        memory.acquire(permits);
+      } catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Validation interrupted", e);
+      }
+      running.add(pool.submit(new ValidateTask(input, permits)));
+    }
+
+    List<ValidationResult> results = new ArrayList<ValidationResult>();
+    for (Future<ValidationResult> future : running)
+    {
+      try
+      {
+        results.add(future.get());
+      } catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Validation interrupted", e);
+      } catch (ExecutionException e)
+      {
+        // tasks catch their own exceptions
+        throw new IllegalStateException("Unexpected error in validation task", e.getCause());
+      }
+    }
+    return results;
+  }
+
+  private int getPermits(final File input)
+  {
+    // a document larger than the limit is validated alone
+    return (int) Math.max(1, Math.min(memoryLimit, input.length() / KB));
+  }
+
+  /**
+   * Validates one document.
+   */
+  private final class ValidateTask implements Callable<ValidationResult>
+  {
+    private final File input;
+
+    private final int permits;
+
+    ValidateTask(final File input, final int permits)
+    {
+      this.input = input;
+      this.permits = permits;
+    }
+
+    @Override
+    public ValidationResult call()
+    {
+      ValidationResult result = new ValidationResult(input);
+      try
+      {
+        long start = System.currentTimeMillis();
+        byte[] content = Files.readAllBytes(input.toPath());
+        result.readDuration = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        PdfAnalyzer analyzer = new PdfAnalyzer(DocumentStore.wrap(content));
+        result.signatures = analyzer.getSignatureNames().size();
+        PdfAValidationResults validation = analyzer.getValidationResults();
+        result.validationDuration = System.currentTimeMillis() - start;
+
+        result.setValidation(validation);
+      } catch (Exception e)
+      {
+        LOGGER.error("Cannot validate " + input, e);
+        result.message = "Cannot read document: " + e.getMessage();
+      } finally
+      {
+        memory.release(permits);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Collects all PDF files of the directory and its sub directories, sorted by
+   * path.
+   *
+   * @param directory
+   *          the directory
+   * @return files to validate
+   * @throws IOException
+   *           if the directory cannot be read
+   */
+  static List<File> collectInputFiles(final File directory) throws IOException
+  {
+    File[] children = directory.listFiles();
+    if (children == null)
+    {
+      throw new IOException("Cannot read directory " + directory);
+    }
+    Arrays.sort(children);
+
+    List<File> files = new ArrayList<File>();
+    for (File child : children)
+    {
+      if (child.isDirectory())
+      {
+        files.addAll(collectInputFiles(child));
+      } else if (child.isFile() && child.getName().toLowerCase().endsWith(Constants.PDF_FILE_SUFFIX))
+      {
+        files.add(child);
+      }
+    }
+    return files;
+  }
+
+  private File getReportFile()
+  {
+    if (cli.getReport() != null)
+    {
+      return new File(cli.getReport());
+    }
+    return new File(DEFAULT_REPORT_NAME);
+  }
+
+  /**
+   * Writes the report, as JSON if the file name ends with .json, otherwise as
+   * CSV with one line per document.
+   *
+   * @param results
+   *          results in input order
+   * @param report
+   *          file to write
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  static void writeReport(final List<ValidationResult> results, final File report) throws IOException
+  {
+    if (report.getName().toLowerCase().endsWith(JSON_SUFFIX))
+    {
+      writeJsonReport(results, report);
+    } else
+    {
+      writeCsvReport(results, report);
+    }
+  }
+
+  private static void writeCsvReport(final List<ValidationResult> results, final File report) throws IOException
+  {
+    PrintWriter writer = new PrintWriter(report, StandardCharsets.UTF_8.name());
+    try
+    {
+      writer.println(StringUtils.join(new String[] {"input", "size", "claimed_flavour", "validated_flavour",
+        "compliant", "failed_rules", "signatures", "read_ms", "validation_ms", "message"}, REPORT_SEPARATOR));
+      for (ValidationResult result : results)
+      {
+        writer.println(StringUtils.join(new Object[] {clean(result.getInput().getPath()), result.getSize(),
+          clean(result.getClaimedFlavour()), clean(result.getValidatedFlavour()), result.isCompliant(),
+          clean(StringUtils.join(result.getFailedRules(), RULE_SEPARATOR)), result.getSignatures(),
+          result.getReadDuration(), result.getValidationDuration(), clean(result.getMessage())}, REPORT_SEPARATOR));
+      }
+    } finally
+    {
+      writer.close();
+    }
+  }
+
+  private static void writeJsonReport(final List<ValidationResult> results, final File report) throws IOException
+  {
+    OutputStream out = new FileOutputStream(report);
+    try
+    {
+      JsonGenerator json = new JsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+      json.useDefaultPrettyPrinter();
+      json.writeStartArray();
+      for (ValidationResult result : results)
+      {
+        json.writeStartObject();
+        json.writeStringField("input", result.getInput().getPath());
+        json.writeNumberField("size", result.getSize());
+        writeField(json, "claimedFlavour", result.getClaimedFlavour());
+        writeField(json, "validatedFlavour", result.getValidatedFlavour());
+        json.writeBooleanField("compliant", result.isCompliant());
+        json.writeArrayFieldStart("failedRules");
+        for (String rule : result.getFailedRules())
+        {
+          json.writeString(rule);
+        }
+        json.writeEndArray();
+        json.writeNumberField("signatures", result.getSignatures());
+        json.writeNumberField("readMs", result.getReadDuration());
+        json.writeNumberField("validationMs", result.getValidationDuration());
+        writeField(json, "message", result.getMessage());
+        json.writeEndObject();
+      }
+      json.writeEndArray();
+      json.close();
+    } finally
+    {
+      out.close();
+    }
+  }
+
+  private static void writeField(final JsonGenerator json, final String name, final String value) throws IOException
+  {
+    if (value == null)
+    {
+      json.writeNullField(name);
+    } else
+    {
+      json.writeStringField(name, value);
+    }
+  }
+
+  private static String clean(final String value)
+  {
+    if (value == null)
+    {
+      return "";
+    }
+    return value.replace(REPORT_SEPARATOR, ",").replace('\n', ' ').replace('\r', ' ');
+  }
+
+  /**
+   * Result of one document
+   */
+  static final class ValidationResult
+  {
+    private final File input;
+
+    private final long size;
+
+    private String claimedFlavour;
+
+    private String validatedFlavour;
+
+    private boolean compliant;
+
+    private List<String> failedRules = Collections.emptyList();
+
+    private int signatures;
+
+    private long readDuration;
+
+    private long validationDuration;
+
+    private String message;
+
+    ValidationResult(final File input)
+    {
+      this.input = input;
+      this.size = input.length();
+    }
+
+    void setValidation(final PdfAValidationResults validation)
+    {
+      if (validation.isError())
+      {
+        message = "Not able to determine if the document is a PDF/A";
+        return;
+      }
+      claimedFlavour = validation.getParsedPdfAFlavourAsString();
+      if (validation.isSupportedPdfA())
+      {
+        validatedFlavour = validation.getValidatedFlavourAsString();
+        compliant = validation.isCompliant();
+        failedRules = validation.getAssertionMessages();
+      }
+    }
+
+    File getInput()
+    {
+      return input;
+    }
+
+    long getSize()
+    {
+      return size;
+    }
+
+    String getClaimedFlavour()
+    {
+      return claimedFlavour;
+    }
+
+    String getValidatedFlavour()
+    {
+      return validatedFlavour;
+    }
+
+    boolean isCompliant()
+    {
+      return compliant;
+    }
+
+    List<String> getFailedRules()
+    {
+      return failedRules;
+    }
+
+    int getSignatures()
+    {
+      return signatures;
+    }
+
+    long getReadDuration()
+    {
+      return readDuration;
+    }
+
+    long getValidationDuration()
+    {
+      return validationDuration;
+    }
+
+    String getMessage()
+    {
+      return message;
+    }
+  }
+}
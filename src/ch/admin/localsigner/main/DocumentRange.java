@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The first bytes of a document, e.g. the revision signed by a signature. Only
+ * the length is kept, the content is read from the store when it is used.
+ */
+public final class DocumentRange
+{
+  private final DocumentStore document;
+
+  private final long length;
+
+  DocumentRange(final DocumentStore document, final long length)
+  {
+    this.document = document;
+    this.length = length;
+  }
+
+  public long length()
+  {
+    return length;
+  }
+
+  /**
+   * @return a new stream of the range, closed by the caller
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public InputStream openStream() throws IOException
+  {
+    return document.openStream(length);
+  }
+
+  /**
+   * Writes the range to the given file, without copying it through the heap.
+   *
+   * @param target
+   *          the file, overwritten
+   * @throws IOException
+   *           if the document cannot be read or the file cannot be written
+   */
+  public void copyTo(final File target) throws IOException
+  {
+    FileOutputStream out = new FileOutputStream(target);
+    try
+    {
+      document.transferTo(length, out.getChannel());
+    } finally
+    {
+      out.close();
+    }
+  }
+}
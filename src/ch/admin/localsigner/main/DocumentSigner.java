@@ -0,0 +1,423 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.Console;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.util.Enumeration;
+import java.util.List;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import com.lowagie.text.pdf.AcroFields;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSignatureAppearance;
+import ch.admin.localsigner.config.ApplicationConfiguration;
+import ch.admin.localsigner.config.TsaConfiguration;
+import ch.admin.localsigner.gui.Pkcs11Helper;
+import ch.admin.localsigner.gui.profile.Profile;
+import ch.admin.localsigner.gui.profile.ProfileFileLoader;
+import ch.admin.localsigner.notary.validation.IsPdfACheck;
+import ch.admin.localsigner.utils.Constants;
+import ch.glue.securitytools.keystore.SignerKeystore;
+import ch.glue.securitytools.keystore.SignerKeystorePKCS11;
+import ch.glue.securitytools.keystore.SignerKeystorePKCS12;
+import ch.glue.securitytools.pdf.PdfSigner;
+import ch.glue.securitytools.pkcs11.PKCS11Token;
+import ch.glue.securitytools.pkcs11.PKCS11TokenSearch.Token;
+
+/**
+ * Signs single documents with a signature profile, without GUI. Used by the
+ * batch mode and the daemon mode.
+ * <p>
+ * The keystore is opened once and kept open until {@link #close()}, so the
+ * PIN is only asked once. Signing is serialized, as a PKCS11 token can only
+ * handle one operation at a time. Checking and preparing documents may be done
+ * from several threads.
+ */
+class DocumentSigner
+{
+  private static final Logger LOGGER = Logger.getLogger(DocumentSigner.class);
+
+  private static final String CERTIFICATION_SIGNATURE_TYPE = "certification";
+
+  /**
+   * Document cannot be signed, e.g. it is encrypted or not PDF/A.
+   */
+  static class DocumentRejectedException extends Exception
+  {
+    private static final long serialVersionUID = 1L;
+
+    DocumentRejectedException(final String message)
+    {
+      super(message);
+    }
+  }
+
+  private final String alias;
+
+  private SignerKeystore keystore;
+
+  private PKCS11Token token;
+
+  /**
+   * @param alias
+   *          alias of the certificate to sign with, null for the first one
+   */
+  DocumentSigner(final String alias)
+  {
+    this.alias = alias;
+  }
+
+  /**
+   * Loads a signature profile.
+   *
+   * @param path
+   *          path of the profile
+   * @return the profile
+   * @throws ConfigurationException
+   *           if the profile cannot be read
+   */
+  static PropertiesConfiguration loadProfile(final String path) throws ConfigurationException
+  {
+    if (path == null)
+    {
+      throw new ConfigurationException("signature profile not found");
+    }
+    PropertiesConfiguration config = new PropertiesConfiguration();
+    config.setDelimiterParsingDisabled(true);
+    config.load(path);
+    return config;
+  }
+
+  /**
+   * Checks the document (same checks as the GUI before signing) and creates
+   * the signature parameters from the profile.
+   *
+   * @param bytes
+   *          the document
+   * @param profile
+   *          loaded signature profile
+   * @param profilePath
+   *          path of the profile, used to find the signature image
+   * @param outPath
+   *          where the signed document will be written
+   * @return the parameters to sign the document with
+   * @throws DocumentRejectedException
+   *           if the document cannot be signed
+   * @throws IOException
+   *           if the document cannot be read
+   * @throws ConfigurationException
+   *           if the signature language cannot be read
+   */
+  SignatureParameters prepare(final byte[] bytes, final PropertiesConfiguration profile, final String profilePath,
+      final String outPath) throws DocumentRejectedException, IOException, ConfigurationException
+  {
+    PdfReader reader = new PdfReader(bytes);
+    int numberOfPages;
+    boolean alreadySigned;
+    try
+    {
+      if (reader.isEncrypted())
+      {
+        throw new DocumentRejectedException("Document is encrypted");
+      }
+      if (reader.getCertificationLevel() == PdfSignatureAppearance.CERTIFIED_NO_CHANGES_ALLOWED)
+      {
+        throw new DocumentRejectedException("Document is certified, no changes allowed");
+      }
+      numberOfPages = reader.getNumberOfPages();
+      if (numberOfPages <= 0)
+      {
+        throw new DocumentRejectedException("Document has no pages");
+      }
+      alreadySigned = !reader.getAcroFields().getSignatureNames().isEmpty();
+    } finally
+    {
+      reader.close();
+    }
+
+    if (!LocalSigner.appConfig.isSignNonPdfA() && !new IsPdfACheck().validate(bytes))
+    {
+      throw new DocumentRejectedException("Document is not PDF/A");
+    }
+
+    SignatureParameters sigParams = createSignatureParameters(profile, profilePath, numberOfPages);
+    sigParams.setInputFile(bytes);
+    sigParams.setMultipleSignature(alreadySigned);
+    sigParams.setOutPath(outPath);
+    return sigParams;
+  }
+
+  /**
+   * Opens the keystore, if not already done. The PIN or password is asked on
+   * the console if needed.
+   *
+   * @throws Exception
+   *           if no keystore is found or it cannot be opened
+   */
+  synchronized void open() throws Exception
+  {
+    if (keystore == null)
+    {
+      keystore = openKeystore();
+    }
+  }
+
+  /**
+   * Signs the document. Only one document is signed at a time.
+   *
+   * @param sigParams
+   *          prepared signature parameters
+   * @return the signed document
+   * @throws Exception
+   *           if the keystore cannot be opened or signing fails
+   */
+  synchronized byte[] sign(final SignatureParameters sigParams) throws Exception
+  {
+    open();
+    PdfSigner signer = PdfSignerFactory.createSigner(keystore, sigParams);
+    return signer.sign(sigParams.isLtv(), sigParams.isEnableOcsp());
+  }
+
+  /**
+   * Checks the signature added last.
+   *
+   * @param signedFile
+   *          the signed document
+   * @return true if the signature is valid
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  static boolean verify(final byte[] signedFile) throws IOException
+  {
+    PdfReader reader = new PdfReader(signedFile);
+    try
+    {
+      AcroFields af = reader.getAcroFields();
+      List<?> names = af.getSignatureNames();
+      if (names.isEmpty())
+      {
+        return false;
+      }
+      return af.verifySignature((String) names.get(names.size() - 1)).verify();
+    } catch (Exception e)
+    {
+      LOGGER.error("Cannot validate signature", e);
+      return false;
+    } finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * Proposes the name of the signed document.
+   *
+   * @param input
+   *          document to sign
+   * @param outputDir
+   *          directory to write to, null for the directory of the input
+   * @return the signed document
+   */
+  static File getOutputFile(final File input, final String outputDir)
+  {
+    File dir = outputDir != null ? new File(outputDir) : input.getAbsoluteFile().getParentFile();
+    return new File(dir, FilenameUtils.getBaseName(input.getName())
+        + LocalSigner.appConfig.getSignedDocExtension() + Constants.PDF_FILE_SUFFIX);
+  }
+
+  /**
+   * Logs out of the PKCS11 token.
+   */
+  synchronized void close()
+  {
+    if (token != null)
+    {
+      token.teardown();
+      token = null;
+    }
+    keystore = null;
+  }
+
+  /**
+   * Creates the signature parameters from the profile, same as the GUI does
+   * after loading a profile.
+   */
+  private static SignatureParameters createSignatureParameters(final PropertiesConfiguration profile,
+      final String profilePath, final int numberOfPages) throws ConfigurationException
+  {
+    SignatureParameters sigParams = new SignatureParameters();
+
+    sigParams.setCertification(CERTIFICATION_SIGNATURE_TYPE.equals(profile.getString(Profile.TYPE_OF_SIGNATURE)));
+    sigParams.setVisibleSignature(profile.getBoolean(Profile.VISIBLE_SIGNATURE, false));
+    sigParams.setBackgroundImage(StringUtils.EMPTY);
+    sigParams.setSignaturePage(1);
+
+    if (sigParams.isVisibleSignature())
+    {
+      sigParams.setLeftPos(profile.getInt(Profile.LEFT_POS));
+      sigParams.setTopPos(profile.getInt(Profile.TOP_POS));
+      sigParams.setBoxWidth(profile.getInt(Profile.BOXWIDTH));
+      sigParams.setBoxHeight(profile.getInt(Profile.BOXHEIGHT));
+      sigParams.setSignaturePage(getSignaturePage(profile.getInt(Profile.SIGN_ON, 0), numberOfPages));
+
+      String imageFile = profile.getString(Profile.BACKGROUND_IMAGE);
+      sigParams.setSignatureTextVisible(profile.getBoolean(Profile.SHOW_TEXT_IN_SIGNATURE, true));
+      sigParams.setSignatureImageVisible(profile.getBoolean(Profile.SHOW_IMAGE_IN_SIGNATURE,
+          StringUtils.isNotEmpty(imageFile)));
+
+      if (StringUtils.isNotEmpty(imageFile))
+      {
+        File image = ProfileFileLoader.loadFileFromPath(imageFile, profilePath);
+        String extension = FilenameUtils.getExtension(imageFile).toLowerCase();
+        if (image != null && image.exists() && ("jpg".equals(extension) || "jpeg".equals(extension)))
+        {
+          sigParams.setBackgroundImage(image.getAbsolutePath());
+        } else
+        {
+          LOGGER.warn("Signature image " + imageFile + " not found or no JPEG, signing without image");
+        }
+      }
+    }
+
+    sigParams.setLocation(profile.getString(Profile.LOCATION));
+    sigParams.setContact(profile.getString(Profile.CONTACT));
+    sigParams.setContactLabelShown(profile.getBoolean(Profile.CONTACT_SHOW_LABEL, true));
+    sigParams.setReason(profile.getString(Profile.REASON));
+    sigParams.setReasonLabelShown(profile.getBoolean(Profile.REASON_SHOW_LABEL, true));
+
+    // LOCALSIG-279: Signatur muss immer mit Zeitstempel erfolgen
+    TsaConfiguration tsa = ApplicationConfiguration.getSwissGovernmentTSA();
+    String tsaUrl = profile.getString(Profile.TSAURL);
+    if (profile.getBoolean(Profile.ENABLE_TIMESTAMPING, false) && StringUtils.isNotBlank(tsaUrl))
+    {
+      tsa = new TsaConfiguration(tsaUrl, tsaUrl, profile.getString(Profile.TSAUSER),
+          profile.getString(Profile.TSAPASSWORD), tsaUrl);
+    }
+    sigParams.setTsaUrl(tsa.getUrl());
+    sigParams.setTsaUser(tsa.getUsername());
+    sigParams.setTsaPassword(tsa.getPassword());
+
+    sigParams.setLtv(LocalSigner.appConfig.isLtvActive());
+    sigParams.setEnableOcsp(LocalSigner.appConfig.isOcspActive());
+
+    String lang = LocalSigner.appConfig.getSignatureLanguage();
+    PdfSignerFactory.loadSignatureTexts(sigParams, StringUtils.isEmpty(lang) ? "de" : lang);
+
+    return sigParams;
+  }
+
+  /**
+   * @param signOn
+   *          page of the profile: 0 for first page, 1 for last page, 2 for
+   *          penultimate page
+   * @param numberOfPages
+   *          pages of the document
+   * @return page number to sign on
+   */
+  static int getSignaturePage(final int signOn, final int numberOfPages)
+  {
+    switch (signOn)
+    {
+      case 1:
+        return numberOfPages;
+      case 2:
+        return Math.max(1, numberOfPages - 1);
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Opens the keystore. A configured PKCS12 file is used if its password is
+   * known, otherwise the first active PKCS11 token.
+   */
+  private SignerKeystore openKeystore() throws Exception
+  {
+    String pkcs12File = LocalSigner.appConfig.getPkcs12File();
+    if (StringUtils.isNotEmpty(pkcs12File) && new File(pkcs12File).exists())
+    {
+      String password = LocalSigner.appConfig.getPkcs12Password();
+      Console console = System.console();
+      if (password == null && console != null)
+      {
+        char[] input = console.readPassword("Password for %s: ", pkcs12File);
+        password = input != null ? new String(input) : null;
+      }
+      if (password != null)
+      {
+        LOGGER.debug("signing with PKCS12 " + pkcs12File);
+        KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        InputStream is = new FileInputStream(pkcs12File);
+        try
+        {
+          ks.load(is, password.toCharArray());
+        } finally
+        {
+          is.close();
+        }
+        is = new FileInputStream(pkcs12File);
+        try
+        {
+          return new SignerKeystorePKCS12(is, password, getAlias(ks, alias));
+        } finally
+        {
+          is.close();
+        }
+      }
+    }
+
+    List<Token> tokens = new Pkcs11Helper(null).findActiveTokens();
+    if (tokens.isEmpty())
+    {
+      throw new KeyStoreException("No certificate found (PKCS11 token or PKCS12 file)");
+    }
+    Token tk = tokens.get(0);
+    LOGGER.debug("signing with PKCS11 token " + tk.getLibrary() + " in slot " + tk.getSlot());
+    token = new PKCS11Token(tk.getLibrary(), tk.getSlot(),
+        PKCS11Token.getTextPinCallback(Pkcs11Helper.getTokenPinName(tk)));
+    return new SignerKeystorePKCS11(token, getAlias(token.getKeystore(), alias));
+  }
+
+  private static String getAlias(final KeyStore ks, final String alias) throws KeyStoreException
+  {
+    if (alias != null)
+    {
+      if (!ks.isKeyEntry(alias))
+      {
+        throw new KeyStoreException("No private key with alias " + alias);
+      }
+      return alias;
+    }
+    for (Enumeration<String> aliases = ks.aliases(); aliases.hasMoreElements();)
+    {
+      String candidate = aliases.nextElement();
+      if (ks.isKeyEntry(candidate))
+      {
+        return candidate;
+      }
+    }
+    throw new KeyStoreException("No private key found");
+  }
+}
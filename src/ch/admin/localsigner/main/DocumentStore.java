@@ -0,0 +1,636 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.log4j.Logger;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
+import ch.admin.localsigner.validation.SHAChecksum;
+
+/**
+ * Holds the content of one version of a document (original, merged,
+ * modified). Small documents are kept in memory, large ones are written to a
+ * temporary file and read from there (memory mapped), so only one copy of
+ * every version exists and it is not on the heap.
+ * <p>
+ * A store created by {@link #of(byte[])} or {@link #read(InputStream, long)}
+ * owns its temporary file; the owner calls {@link #release()} when the version
+ * is no longer needed. Stores of an existing file or a wrapped array do not own
+ * anything.
+ * <p>
+ * The SHA-256 checksum of the version is computed once, while the content is
+ * read or written, and kept with the store. Content read back from the
+ * temporary file is checked against it.
+ */
+public final class DocumentStore
+{
+  private static final Logger LOGGER = Logger.getLogger(DocumentStore.class);
+
+  /**
+   * Documents up to this size are kept in memory
+   */
+  static final int MEMORY_LIMIT = 16 * 1024 * 1024;
+
+  private final long size;
+
+  private final boolean owner;
+
+  private byte[] data;
+
+  private File file;
+
+  private final long modified;
+
+  private String checksum;
+
+  // last copy read from the file, already checked against the checksum
+  private WeakReference<byte[]> verifiedCopy;
+
+  private Future<Boolean> verification;
+
+  private DocumentStore(final byte[] data, final File file, final long size, final boolean owner,
+      final String checksum)
+  {
+    this.data = data;
+    this.file = file;
+    this.size = size;
+    this.owner = owner;
+    this.checksum = checksum;
+    this.modified = file == null ? 0 : file.lastModified();
+  }
+
+  /**
+   * Takes over the given content. Large content is written to a temporary
+   * file, the caller must not keep a reference to the array in this case.
+   *
+   * @param content
+   *          document content
+   * @return the store
+   * @throws IOException
+   *           if the temporary file cannot be written
+   */
+  public static DocumentStore of(final byte[] content) throws IOException
+  {
+    if (content.length <= MEMORY_LIMIT)
+    {
+      // checksum computed when needed
+      return new DocumentStore(content, null, content.length, false, null);
+    }
+    File tmp = createTempFile();
+    MessageDigest digest = SHAChecksum.newDigest();
+    OutputStream out = new DigestOutputStream(new FileOutputStream(tmp), digest);
+    try
+    {
+      out.write(content);
+    } finally
+    {
+      out.close();
+    }
+    LOGGER.debug("Document of " + content.length + " bytes stored in " + tmp);
+    return new DocumentStore(null, tmp, content.length, true, SHAChecksum.toHex(digest));
+  }
+
+  /**
+   * Reads the document from the given stream. The stream is not closed.
+   *
+   * @param in
+   *          document content
+   * @param length
+   *          number of bytes in the stream
+   * @return the store
+   * @throws IOException
+   *           if the stream cannot be read
+   */
+  public static DocumentStore read(final InputStream in, final long length) throws IOException
+  {
+    MessageDigest digest = SHAChecksum.newDigest();
+    InputStream digestIn = new DigestInputStream(in, digest);
+    if (length <= MEMORY_LIMIT)
+    {
+      byte[] content = IOUtils.toByteArray(digestIn, length);
+      return new DocumentStore(content, null, length, false, SHAChecksum.toHex(digest));
+    }
+    File tmp = createTempFile();
+    Files.copy(digestIn, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    LOGGER.debug("Document of " + length + " bytes stored in " + tmp);
+    return new DocumentStore(null, tmp, tmp.length(), true, SHAChecksum.toHex(digest));
+  }
+
+  /**
+   * Reads directly from an existing file, the file must not change while the
+   * store is used.
+   *
+   * @param existing
+   *          the file
+   * @return the store
+   */
+  public static DocumentStore forFile(final File existing)
+  {
+    return new DocumentStore(null, existing, existing.length(), false, null);
+  }
+
+  /**
+   * Wraps an array which stays in memory, e.g. a short living preview.
+   *
+   * @param content
+   *          document content
+   * @return the store
+   */
+  public static DocumentStore wrap(final byte[] content)
+  {
+    return new DocumentStore(content, null, content.length, false, null);
+  }
+
+  private static File createTempFile() throws IOException
+  {
+    // removed by the next start if a crash leaves it behind
+    File tmp = File.createTempFile(TempFilesCleanerUtil.TEMP_FILE_PREFIX + "document", ".pdf");
+    tmp.deleteOnExit();
+    // documents may be confidential
+    tmp.setReadable(false, false);
+    tmp.setReadable(true, true);
+    return tmp;
+  }
+
+  public long size()
+  {
+    return size;
+  }
+
+  /**
+   * @return true if the document is kept in memory
+   */
+  public boolean isInMemory()
+  {
+    return data != null;
+  }
+
+  /**
+   * Opens a PDF reader. Documents in a file are read on demand and not loaded
+   * completely. The caller closes the reader.
+   *
+   * @return reader of the document
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public synchronized PdfReader openReader() throws IOException
+  {
+    if (data != null)
+    {
+      return new PdfReader(data);
+    }
+    return new PdfReader(new RandomAccessFileOrArray(getFile().getPath(), false, false), null);
+  }
+
+  /**
+   * Opens a partial PDF reader, which only reads the cross reference table
+   * when it is opened and every other object when it is used. Meant for
+   * checks which look at a few objects, e.g. the catalog and the fields,
+   * which takes the same short time for a document of any number of pages.
+   * Documents in a file are mapped, not read. The caller closes the reader.
+   *
+   * @return partial reader of the document
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public synchronized PdfReader openPartialReader() throws IOException
+  {
+    if (data != null)
+    {
+      return new PdfReader(new RandomAccessFileOrArray(data), null);
+    }
+    return openReader();
+  }
+
+  /**
+   * @return a new stream of the content, closed by the caller
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public synchronized InputStream openStream() throws IOException
+  {
+    if (data != null)
+    {
+      return new ByteArrayInputStream(data);
+    }
+    return Files.newInputStream(getFile().toPath());
+  }
+
+  /**
+   * @param length
+   *          number of bytes from the start of the document
+   * @return a view of the first bytes of the document, nothing is read yet
+   * @throws IOException
+   *           if the range is larger than the document
+   */
+  public DocumentRange range(final long length) throws IOException
+  {
+    checkRange(length);
+    return new DocumentRange(this, length);
+  }
+
+  /**
+   * @param length
+   *          number of bytes from the start of the document
+   * @return a new stream of the first bytes, closed by the caller
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public synchronized InputStream openStream(final long length) throws IOException
+  {
+    checkRange(length);
+    if (data != null)
+    {
+      return new ByteArrayInputStream(data, 0, (int) length);
+    }
+    checkUnchanged();
+    return new BoundedInputStream(Files.newInputStream(getFile().toPath()), length);
+  }
+
+  /**
+   * Writes the first bytes of the document to the given channel. Content in a
+   * file is transferred by the channels, it is not copied through the heap.
+   *
+   * @param length
+   *          number of bytes from the start of the document
+   * @param target
+   *          target, not closed
+   * @throws IOException
+   *           if the document cannot be read or written
+   */
+  public void transferTo(final long length, final WritableByteChannel target) throws IOException
+  {
+    checkRange(length);
+    byte[] content;
+    File source;
+    synchronized (this)
+    {
+      content = data;
+      source = content == null ? getFile() : null;
+      if (source != null)
+      {
+        checkUnchanged();
+      }
+    }
+
+    if (content != null)
+    {
+      ByteBuffer buffer = ByteBuffer.wrap(content, 0, (int) length);
+      while (buffer.hasRemaining())
+      {
+        target.write(buffer);
+      }
+      return;
+    }
+
+    FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+    try
+    {
+      long position = 0;
+      while (position < length)
+      {
+        long transferred = in.transferTo(position, length - position, target);
+        if (transferred <= 0)
+        {
+          throw new EOFException("Document " + source + " ends before " + length + " bytes");
+        }
+        position += transferred;
+      }
+    } finally
+    {
+      in.close();
+    }
+  }
+
+  private void checkRange(final long length) throws IOException
+  {
+    if (length < 0 || length > size)
+    {
+      throw new IOException("Range of " + length + " bytes outside of document of " + size + " bytes");
+    }
+  }
+
+  private void checkUnchanged() throws IOException
+  {
+    if (!isUnchanged())
+    {
+      throw new IOException("Document " + file + " has been changed since it was loaded");
+    }
+  }
+
+  /**
+   * Writes the content to the given stream.
+   *
+   * @param out
+   *          target, not closed
+   * @throws IOException
+   *           if the document cannot be read or written
+   */
+  public void copyTo(final OutputStream out) throws IOException
+  {
+    InputStream in = openStream();
+    try
+    {
+      IOUtils.copy(in, out);
+    } finally
+    {
+      in.close();
+    }
+  }
+
+  /**
+   * Content as array, for libraries which only accept arrays. For documents in
+   * a file this is a copy which should not be kept longer than needed.
+   *
+   * @return the content
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public synchronized byte[] getBytes() throws IOException
+  {
+    if (data != null)
+    {
+      return data;
+    }
+
+    MessageDigest digest = SHAChecksum.newDigest();
+    InputStream in = new DigestInputStream(Files.newInputStream(getFile().toPath()), digest);
+    byte[] content;
+    try
+    {
+      content = IOUtils.toByteArray(in, size);
+    } finally
+    {
+      in.close();
+    }
+
+    String read = SHAChecksum.toHex(digest);
+    if (checksum == null)
+    {
+      checksum = read;
+    } else if (!checksum.equals(read))
+    {
+      throw new IOException("Document " + getFile() + " has been changed since it was loaded");
+    }
+    verifiedCopy = new WeakReference<byte[]>(content);
+    return content;
+  }
+
+  /**
+   * The SHA-256 checksum of this version as hex string, computed only once.
+   *
+   * @return the checksum
+   * @throws IOException
+   *           if the document cannot be read
+   */
+  public String getChecksum() throws IOException
+  {
+    synchronized (this)
+    {
+      if (checksum != null)
+      {
+        return checksum;
+      }
+    }
+    return publishChecksum(computeChecksum());
+  }
+
+  /**
+   * Keeps the checksum computed outside the lock, unless another thread was
+   * faster.
+   *
+   * @return the kept checksum
+   */
+  private synchronized String publishChecksum(final String computed)
+  {
+    if (checksum == null)
+    {
+      checksum = computed;
+    }
+    return checksum;
+  }
+
+  /**
+   * Hashes the current content. Must be called without holding the lock, the
+   * lock is only taken to get the content.
+   */
+  private String computeChecksum() throws IOException
+  {
+    byte[] content;
+    File source;
+    synchronized (this)
+    {
+      content = data;
+      source = content == null ? getFile() : null;
+    }
+    if (content != null)
+    {
+      return SHAChecksum.getChecksum(content);
+    }
+    InputStream in = Files.newInputStream(source.toPath());
+    try
+    {
+      return SHAChecksum.getChecksum(in);
+    } finally
+    {
+      in.close();
+    }
+  }
+
+  /**
+   * Cheap check that the file of this store has not been replaced since it
+   * was written (same size and modification time). Documents in memory are
+   * always unchanged.
+   *
+   * @return true if the document seems unchanged
+   */
+  public synchronized boolean isUnchanged()
+  {
+    if (data != null)
+    {
+      return true;
+    }
+    return file != null && file.length() == size && file.lastModified() == modified;
+  }
+
+  /**
+   * Hashes the whole document again and compares it with the checksum of this
+   * version. The result is also used by {@link #matches(byte[])}.
+   *
+   * @return true if the content is still this version
+   */
+  public boolean verify()
+  {
+    Future<Boolean> check;
+    synchronized (this)
+    {
+      if (verification != null && verification.isDone())
+      {
+        // hash the current content, not the content of an earlier check
+        verification = null;
+      }
+      verifyInBackground();
+      check = verification;
+    }
+    return isVerified(check);
+  }
+
+  /**
+   * Starts hashing the whole document again in the background, unless this is
+   * already running. The result is used by {@link #matches(byte[])}.
+   */
+  private synchronized void verifyInBackground()
+  {
+    if (verification != null)
+    {
+      return;
+    }
+    verification = FingerprintService.submit(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call() throws IOException
+      {
+        String expected;
+        synchronized (DocumentStore.this)
+        {
+          expected = checksum;
+        }
+        String actual = computeChecksum();
+        if (expected == null)
+        {
+          // not hashed before, this hash is the checksum of the version
+          expected = publishChecksum(actual);
+        }
+        boolean ok = isUnchanged() && expected.equals(actual);
+        LOGGER.debug("Background check of document: " + (ok ? "unchanged" : "changed"));
+        return ok;
+      }
+    });
+  }
+
+  /**
+   * Checks that the given content, which is about to be signed, is this
+   * version of the document. Content of this store or read from it has been
+   * checked before and is not hashed again.
+   *
+   * @param content
+   *          content to check
+   * @return true if the content is this version
+   */
+  public boolean matches(final byte[] content)
+  {
+    if (content == null)
+    {
+      return false;
+    }
+
+    Future<Boolean> check = null;
+    synchronized (this)
+    {
+      if (content == data)
+      {
+        verifyInBackground();
+        check = verification;
+      } else if (verifiedCopy != null && content == verifiedCopy.get())
+      {
+        return isUnchanged();
+      }
+    }
+
+    if (check != null)
+    {
+      return isVerified(check);
+    }
+    try
+    {
+      return SHAChecksum.getChecksum(content).equals(getChecksum());
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot check document", e);
+      return false;
+    }
+  }
+
+  private static boolean isVerified(final Future<Boolean> check)
+  {
+    try
+    {
+      return check.get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("Cannot check document", e);
+      return false;
+    }
+  }
+
+  private File getFile() throws IOException
+  {
+    if (file == null)
+    {
+      throw new IOException("Document already released");
+    }
+    return file;
+  }
+
+  /**
+   * @return true if {@link #release()} has been called
+   */
+  public synchronized boolean isReleased()
+  {
+    return data == null && file == null;
+  }
+
+  /**
+   * Frees the memory or deletes the temporary file of this store.
+   */
+  public synchronized void release()
+  {
+    data = null;
+    verifiedCopy = null;
+    if (file != null && owner && !file.delete())
+    {
+      // still mapped by an open reader, removed on exit
+      LOGGER.debug("Cannot delete " + file + " yet");
+    }
+    file = null;
+  }
+}
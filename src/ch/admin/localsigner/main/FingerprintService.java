@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the full re-checks of a {@link DocumentStore} in the background. The
+ * fingerprints themselves are computed with
+ * {@link ch.admin.localsigner.validation.SHAChecksum}.
+ */
+final class FingerprintService
+{
+  private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory()
+  {
+    @Override
+    public Thread newThread(final Runnable r)
+    {
+      Thread thread = new Thread(r, "LocalSigner fingerprint");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    }
+  });
+
+  private FingerprintService()
+  {
+    // hide constructor for utility class
+  }
+
+  /**
+   * Runs a re-check on the background thread.
+   *
+   * @param check
+   *          the check
+   * @return its result
+   */
+  static Future<Boolean> submit(final Callable<Boolean> check)
+  {
+    return EXECUTOR.submit(check);
+  }
+}
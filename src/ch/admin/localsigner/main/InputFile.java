@@ -17,9 +17,11 @@ package ch.admin.localsigner.main;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.Future;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import com.lowagie.text.exceptions.BadPasswordException;
@@ -32,8 +34,9 @@ import ch.admin.localsigner.main.exception.FileOpenException;
 import ch.admin.localsigner.main.exception.FileWriteException;
 import ch.admin.localsigner.utils.ColorToConvert;
 import ch.admin.localsigner.utils.SignaturePreview;
+import ch.admin.localsigner.validation.AnalysisCache;
+import ch.admin.localsigner.validation.PdfAValidationResults;
 import ch.admin.localsigner.validation.PdfAnalyzer;
-import ch.admin.localsigner.validation.SHAChecksum;
 import ch.glue.securitytools.pdf.PdfAttacher;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileSystemException;
@@ -51,13 +54,17 @@ public class InputFile
   // files
   private String inputFileName;
 
-  private byte[] tempFileBytes = null;
+  // one store per document version, owned and released by this class
+  private DocumentStore tempFile = null;
 
   private String attachment = StringUtils.EMPTY;
 
-  private byte[] inputFileBytes = null;
+  private DocumentStore inputFile = null;
 
-  private byte[] mergedFileBytes = null;
+  private DocumentStore mergedFile = null;
+
+  // version read by the analyzer, if the input has been overwritten since
+  private DocumentStore analyzedFile = null;
 
   // checksums
   private String originalChecksum;
@@ -83,6 +90,9 @@ public class InputFile
 
   private PdfAnalyzer analyzer;
 
+  // PDF/A validation of the original document, started when it is loaded
+  private Future<PdfAValidationResults> pdfAValidation;
+
   private boolean attachments;
 
   private InputFileLocking fileLocking = new InputFileLocking();
@@ -114,7 +124,7 @@ public class InputFile
   public void updateAttachment(final String attach) {
     // we can not merge anything if this InputFile instance has not
     // been initialized with an original File
-    if (inputFileBytes == null) {
+    if (inputFile == null) {
       return;
     }
 
@@ -136,14 +146,14 @@ public class InputFile
       LOGGER.debug("updateAttachment: attachment is empty");
       // there is no attachment for this file
       this.attachment = StringUtils.EMPTY;
-      this.mergedFileBytes = null;
+      setMergedFile(null);
       return;
     }
 
     // merge is needed
     LOGGER.debug("updateAttachment: merge needed");
-    this.mergedFileBytes = merge(attach);
-    if (mergedFileBytes == null)
+    setMergedFile(merge(attach));
+    if (mergedFile == null)
     {
       LOGGER.error("Error merging attachment to inputdocument");
       return;
@@ -154,7 +164,7 @@ public class InputFile
     // finally calculate and store checksum of merged file
     try
     {
-      this.mergedChecksum = SHAChecksum.getChecksum(mergedFileBytes);
+      this.mergedChecksum = mergedFile.getChecksum();
     } catch (Exception e)
     {
       this.mergedChecksum = null;
@@ -168,28 +178,51 @@ public class InputFile
    * Returns the file to be signed depending on whether the original file has been merged with an attachment or not.
    *
    * @return The original file if it has not been merged with an attachment or the merged file otherwise.
-   *         <code>null</code> is returned if this InputFile instance contains no file.
+   *         <code>null</code> is returned if this InputFile instance contains no file or it cannot be read.
    */
   public byte[] getFileToSign()
   {
-    if (inputFileBytes == null)
+    DocumentStore document = getDocumentToSign();
+    if (document == null)
     {
       // if not initialized -> return null (should never happen)
       return null;
     }
 
-    if (tempFileBytes != null)
+    try
+    {
+      return document.getBytes();
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot read document to sign", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the current version of the document: the modified (temporary) file, the merged file or the original file.
+   *
+   * @return the document to sign, <code>null</code> if this InputFile instance contains no file
+   */
+  public DocumentStore getDocumentToSign()
+  {
+    if (inputFile == null)
+    {
+      return null;
+    }
+
+    if (tempFile != null)
     {
       LOGGER.debug("return temp file");
-      return this.tempFileBytes;
-    } else if (this.mergedFileBytes != null)
+      return this.tempFile;
+    } else if (this.mergedFile != null)
     {
       LOGGER.debug("return merged file");
-      return this.mergedFileBytes;
+      return this.mergedFile;
     } else
     {
       LOGGER.debug("return original file");
-      return this.inputFileBytes;
+      return this.inputFile;
     }
   }
 
@@ -213,35 +246,28 @@ public class InputFile
    */
   public byte[] getFileToDisplay(final boolean preview) throws BadPasswordException
   {
-    byte[] toDisplay;
-
-    if (this.inputFileBytes == null)
+    DocumentStore toDisplay = getDocumentToSign();
+    if (toDisplay == null)
     {
       return null;
     }
 
-    if (tempFileBytes != null)
-    {
-      LOGGER.debug("display temp file");
-      toDisplay = tempFileBytes;
-    }
-    else if (mergedFileBytes != null)
+    byte[] data;
+    try
     {
-      LOGGER.debug("display merged file");
-      toDisplay = this.mergedFileBytes;
-    }
-    else
+      data = toDisplay.getBytes();
+    } catch (IOException e)
     {
-      LOGGER.debug("display original file");
-      toDisplay = this.inputFileBytes;
+      LOGGER.error("Cannot read document to display", e);
+      return null;
     }
 
     LOGGER.debug("display is" + (preview ? " " : " not ") + "previewed");
     if (preview)
     {
-      return addPreview(toDisplay, mainGui);
+      return addPreview(data, mainGui);
     }
-    return toDisplay;
+    return data;
   }
 
   private byte[] addPreview(final byte[] input, final MainGUI maingui) throws BadPasswordException
@@ -249,12 +275,12 @@ public class InputFile
     return SignaturePreview.getInstance().createPreview(input, maingui);
   }
 
-  private byte[] merge(final String attach)
+  private DocumentStore merge(final String attach)
   {
     PdfReader originalPdf;
     try
     {
-      originalPdf = new PdfReader(inputFileBytes);
+      originalPdf = inputFile.openReader();
     } catch (IOException ioe)
     {
       LOGGER.error("error opening original input file", ioe);
@@ -280,7 +306,7 @@ public class InputFile
     try
     {
       PdfAttacher attacher = new PdfAttacher();
-      return attacher.attachDocument(originalPdf, attachmentPdf, 0);
+      return DocumentStore.of(attacher.attachDocument(originalPdf, attachmentPdf, 0));
     } catch (Exception e)
     {
       // ugly but helpful
@@ -298,16 +324,49 @@ public class InputFile
    */
   public byte[] getOriginalFile()
   {
-    return inputFileBytes;
+    if (inputFile == null)
+    {
+      return null;
+    }
+    try
+    {
+      return inputFile.getBytes();
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot read original document", e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the currently selected 'original' file without copying it.
+   *
+   * @return the original selected file, <code>null</code> if no file is loaded
+   */
+  public DocumentStore getOriginalDocument()
+  {
+    return inputFile;
   }
 
   private void reset()
   {
+    if (pdfAValidation != null)
+    {
+      // another document is opened, its status is no longer needed; only
+      // this wait is cancelled, the viewer and the side bar have their own
+      pdfAValidation.cancel(true);
+      pdfAValidation = null;
+    }
     inputFileName = null;
-    tempFileBytes = null;
+    setTemporaryStore(null);
     attachment = StringUtils.EMPTY;
-    inputFileBytes = null;
-    mergedFileBytes = null;
+    setInputStore(null);
+    setMergedFile(null);
+    if (analyzedFile != null)
+    {
+      analyzedFile.release();
+      analyzedFile = null;
+    }
     originalChecksum = null;
     mergedChecksum = null;
     certified = false;
@@ -387,8 +446,9 @@ public class InputFile
 
     try
     {
-      inputFileBytes = getFileContents();
+      setInputStore(getFileContents());
       LOGGER.debug("input file loaded and locked");
+      startPdfAValidation();
 
     } catch (AccessDeniedException e)
     {
@@ -409,7 +469,7 @@ public class InputFile
     }
     if (check)
     {
-      boolean valid = this.checkDocument(inputFileBytes);
+      boolean valid = this.checkDocument(inputFile);
       if (!valid)
       {
         fileLocking.unlockFile(inputFileName);
@@ -417,10 +477,10 @@ public class InputFile
       }
     }
 
-    // calculate checksum
+    // checksum has been calculated while reading
     try
     {
-      this.originalChecksum = SHAChecksum.getChecksum(inputFileBytes);
+      this.originalChecksum = inputFile.getChecksum();
     } catch (Exception e)
     {
       this.originalChecksum = null;
@@ -430,7 +490,7 @@ public class InputFile
     try
     {
       // delete any old merged files
-      this.mergedFileBytes = null;
+      setMergedFile(null);
 
       // merge new file with already chosen attachment. only add attachment if
       // not yet signed
@@ -446,16 +506,35 @@ public class InputFile
     }
   }
 
+  /**
+   * Validates the loaded document in the background while the user looks at
+   * it, the viewer and the side bar show the status when it is ready.
+   */
+  private void startPdfAValidation()
+  {
+    if (mainGui == null)
+    {
+      return;
+    }
+    try
+    {
+      pdfAValidation = AnalysisCache.getInstance().get(inputFile).validatePdfAInBackground();
+    } catch (IOException e)
+    {
+      LOGGER.warn("Cannot start PDF/A validation", e);
+    }
+  }
+
   private boolean isInputEqualToOutputFileName(final String originalFileName)
   {
     return getInputFileName() != null && inputFileNameAsFile().equals(Paths.get(originalFileName));
   }
 
-  private boolean checkDocument(byte[] fileBytes)
+  private boolean checkDocument(DocumentStore document)
   {
     try
     {
-      analyzer = new PdfAnalyzer(fileBytes);
+      analyzer = AnalysisCache.getInstance().get(document);
 
       this.certified = analyzer.hasCertification();
       LOGGER.debug("Check certification: " + this.certified);
@@ -463,7 +542,7 @@ public class InputFile
       this.blankSignatures = !analyzer.getBlankSignatures().isEmpty();
       LOGGER.debug("Check blank signatures: " + this.blankSignatures);
 
-      this.signed = !analyzer.getSignatures().isEmpty();
+      this.signed = analyzer.isSigned();
       LOGGER.debug("Check signatures: " + this.signed);
 
       boolean fieldsNotSig = !analyzer.getAcroFieldsNotSignature().isEmpty();
@@ -567,6 +646,54 @@ public class InputFile
     return this.mergedChecksum;
   }
 
+  /**
+   * Check before signing: the document to sign is the original or merged version as loaded. Its current content is
+   * hashed again, {@link #isFileToSign(byte[])} reuses this check.
+   *
+   * @return true if the document to sign is unchanged
+   */
+  public boolean isDocumentToSignUnchanged()
+  {
+    DocumentStore document = getDocumentToSign();
+    return document != null && isOriginalOrMerged(document) && document.verify();
+  }
+
+  /**
+   * Checks that the given content is the original or merged version as loaded. Used right before the private key
+   * operation.
+   *
+   * @param content
+   *          the content to sign
+   * @return true if the content is unchanged
+   */
+  public boolean isFileToSign(final byte[] content)
+  {
+    DocumentStore document = getDocumentToSign();
+    return document != null && isOriginalOrMerged(document) && document.matches(content);
+  }
+
+  private boolean isOriginalOrMerged(final DocumentStore document)
+  {
+    try
+    {
+      String checksum = document.getChecksum();
+      if (checksum.equals(originalChecksum))
+      {
+        LOGGER.debug("Hashes are ok (original file)");
+        return true;
+      }
+      if (checksum.equals(mergedChecksum))
+      {
+        LOGGER.debug("Hashes are ok (merged file)");
+        return true;
+      }
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot checksum document", e);
+    }
+    return false;
+  }
+
   public boolean isSigned()
   {
     return certified || signed;
@@ -589,7 +716,7 @@ public class InputFile
 
   public boolean isTemporaryFile()
   {
-    return tempFileBytes != null;
+    return tempFile != null;
   }
 
   /**
@@ -603,15 +730,15 @@ public class InputFile
     if (data == null)
     {
       LOGGER.debug("throw away tmp file");
-      tempFileBytes = null;
+      setTemporaryStore(null);
       mainGui.getMenu().canSign(true);
       return;
     }
     try
     {
-      tempFileBytes = data;
+      setTemporaryStore(DocumentStore.of(data));
       mainGui.getMenu().canSign(false);
-      PdfReader pdfReader = new PdfReader(data);
+      PdfReader pdfReader = tempFile.openReader();
       mainGui.getMenu().canDelete(pdfReader.getNumberOfPages() > 1);
       pdfReader.close();
     } catch (IOException e)
@@ -620,6 +747,33 @@ public class InputFile
     }
   }
 
+  private void setTemporaryStore(final DocumentStore store)
+  {
+    if (tempFile != null && tempFile != store)
+    {
+      tempFile.release();
+    }
+    tempFile = store;
+  }
+
+  private void setInputStore(final DocumentStore store)
+  {
+    if (inputFile != null && inputFile != store)
+    {
+      inputFile.release();
+    }
+    inputFile = store;
+  }
+
+  private void setMergedFile(final DocumentStore store)
+  {
+    if (mergedFile != null && mergedFile != store)
+    {
+      mergedFile.release();
+    }
+    mergedFile = store;
+  }
+
   public int getPages()
   {
     return pages;
@@ -639,18 +793,32 @@ public class InputFile
     return analyzer;
   }
 
-  protected void processFile(String outputFileName, boolean lock, ColorToConvert colorModel, String dpi)
+  /**
+   * Converts the input file to PDF/A.
+   *
+   * @return true if the output file has been written
+   */
+  protected boolean processFile(String outputFileName, boolean lock, ColorToConvert colorModel, String dpi)
   {
     try
     {
-      convertToPDFA(getFileContents(), outputFileName, colorModel, dpi);
+      DocumentStore document = getFileContents();
+      try
+      {
+        convertToPDFA(document.getBytes(), outputFileName, colorModel, dpi);
+      } finally
+      {
+        document.release();
+      }
 
       if(fileLocking.isLocked()) {
         fileLocking.unlockFile(inputFileName);
       }
+      return true;
     } catch(IOException | InterruptedException | OverlappingFileLockException e)
     {
       LOGGER.error("Exception: ", e);
+      return false;
     }
   }
 
@@ -687,14 +855,18 @@ public class InputFile
     new ConvertToPDFACommandLine().buildPDFA(inputFileBytes, outputName);
   }
 
-  private byte[] getFileContents() throws IOException
+  private DocumentStore getFileContents() throws IOException
   {
     if (!needsLock())
     {
-      return Files.readAllBytes(Paths.get(getInputFileName()));
+      Path path = Paths.get(getInputFileName());
+      try (InputStream in = Files.newInputStream(path))
+      {
+        return DocumentStore.read(in, Files.size(path));
+      }
     }
 
-    return fileLocking.getDataFromLockedFile();
+    return fileLocking.readLockedFile();
 
   }
 
@@ -752,7 +924,22 @@ public class InputFile
         throw new FileWriteException(ex, FileWriteException.Reason.UNSPECIFIED);
       }
     }
-    inputFileBytes = fileData;
+    try
+    {
+      DocumentStore written = DocumentStore.of(fileData);
+      if (analyzer != null && analyzedFile == null)
+      {
+        // the analyzer still reads the previous version, release it on reset
+        analyzedFile = inputFile;
+        inputFile = written;
+      } else
+      {
+        setInputStore(written);
+      }
+    } catch (IOException e)
+    {
+      throw new FileWriteException(e, FileWriteException.Reason.UNSPECIFIED);
+    }
   }
 
   private Path inputFileNameAsFile()
@@ -15,9 +15,9 @@
  */
 package ch.admin.localsigner.main;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import org.apache.log4j.Logger;
@@ -122,26 +122,18 @@ class InputFileLocking
     }
   }
 
-  byte[] getDataFromLockedFile() throws IOException
+  DocumentStore readLockedFile() throws IOException
   {
     inputFileChannel.position(0);
-    ByteArrayOutputStream ous = new ByteArrayOutputStream();
-
-    final ByteBuffer buffer = ByteBuffer.allocate(4096);
     try
     {
-      int read;
-      while ((read = inputFileChannel.read(buffer)) != -1)
-      {
-        ous.write(buffer.array(), 0, read);
-        buffer.rewind();
-      }
+      // the stream is not closed, it would close the locked channel
+      return DocumentStore.read(Channels.newInputStream(inputFileChannel), inputFileChannel.size());
     } catch (IOException e)
     {
       LOGGER.error("getFileContents: ", e);
       throw e;
     }
-    return ous.toByteArray();
   }
 
   /**
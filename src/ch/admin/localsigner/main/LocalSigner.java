@@ -23,6 +23,7 @@ import java.net.URL;
 import java.security.Security;
 import java.util.InputMismatchException;
 import java.util.Locale;
+import java.util.concurrent.Future;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -41,9 +42,12 @@ import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
 import ch.admin.localsigner.config.ApplicationConfiguration;
 import ch.admin.localsigner.config.LanguageConfiguration;
+import ch.admin.localsigner.config.resources.SecurityResources;
 import ch.admin.localsigner.config.util.ProxyConfiguratorInitializer;
 import ch.admin.localsigner.gui.MainGUI;
+import ch.admin.localsigner.gui.Pkcs11TokenManager;
 import ch.admin.localsigner.utils.Constants;
+import ch.admin.localsigner.validation.OfflinePdfValidator;
 import ch.glue.proxylibrary.core.system.ProxySetting;
 
 /**
@@ -86,8 +90,10 @@ public final class LocalSigner
   public static void main(String[] args)
   {
 
+    final StartupTasks startup = new StartupTasks();
     initLogging();
     Security.addProvider(new BouncyCastleProvider());
+    startup.phaseDone("logging");
 
     LocalSignerCommandLine cli = handleCommandLineOptions(args);
     sigtype = cli.getSigtype();
@@ -110,12 +116,70 @@ public final class LocalSigner
     }
 
     loadCorrectLanguageConfiguration();
+    startup.phaseDone("configuration");
 
-    new ProxyConfiguratorInitializer();
-    ProxySetting.setupProxy();
+    SingleInstance singleInstance = caseForwardToRunningInstance(cli);
+
+    // proxy discovery (PAC) and the trust store do not need the display
+    final Future<?> proxy = startup.start("proxy", new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        new ProxyConfiguratorInitializer();
+        ProxySetting.setupProxy();
+      }
+    });
+    final Future<?> trustStore = startup.start("trust store", new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          SecurityResources.createSSLFactory();
+        } catch (Exception e)
+        {
+          LOGGER.warn("unable to load truststore", e);
+        }
+      }
+    });
+
+    if (cli.isConversion() || cli.isBatch() || cli.isDaemon())
+    {
+      startup.await(proxy);
+    }
 
     caseConversion(cli);
 
+    // the signing modes without display open a key, check the installation first
+    checkIntegrityWithoutDisplay(cli);
+
+    caseBatch(cli);
+
+    caseValidateDir(cli);
+
+    caseDaemon(cli);
+
+    // clean up temporary files of older instance
+    startup.start("temporary files", new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        TempFilesCleanerUtil.cleanOldTemporaryFiles();
+      }
+    });
+    // the first PDF/A validation does not wait for veraPDF
+    startup.start("veraPDF", new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        OfflinePdfValidator.initialiseFoundry();
+      }
+    });
+
     Display display = null;
     try
     {
@@ -153,9 +217,8 @@ public final class LocalSigner
     }
 
     failOnUnsupportedJavaVersion();
+    startup.phaseDone("display");
 
-    // clean up temporary files of older instance
-    TempFilesCleanerUtil.cleanOldTemporaryFiles();
     // open splash screen with integrity check if not disabled
     if (appConfig.isShowIntegrityCheck())
     {
@@ -196,10 +259,32 @@ public final class LocalSigner
       }
     }
 
+    startup.phaseDone("integrity check");
+
+    // the main window may use the network right away
+    startup.await(proxy);
+    startup.await(trustStore);
+
+    if (singleInstance != null)
+    {
+      listenForFurtherLaunches(singleInstance, display);
+    }
+
+    // log out of the token kept open between signatures
+    Runtime.getRuntime().addShutdownHook(new Thread()
+    {
+      @Override
+      public void run()
+      {
+        Pkcs11TokenManager.getInstance().invalidate();
+      }
+    });
+
     // start the GUI
     try
     {
       LOGGER.debug("start main window");
+      startup.finished();
       mainGui = new MainGUI();
       // apply command line parameters to GUI
       mainGui.showGui(display, cli);
@@ -229,6 +314,72 @@ public final class LocalSigner
     return System.getProperty("java.version");
   }
 
+  /**
+   * An interactive launch hands its files to an already running LocalSigner
+   * and exits. A launch with other options (profile, viewer, sigtype, ...)
+   * starts on its own, the running instance cannot apply them.
+   *
+   * @return the single instance to listen with, null if not used
+   */
+  private static SingleInstance caseForwardToRunningInstance(LocalSignerCommandLine cli)
+  {
+    if (!APPMODE_INTERACTIVE.equalsIgnoreCase(cli.getAppmode()) || cli.isConversion() || cli.isBatch()
+        || cli.isValidateDir() || cli.isDaemon() || !appConfig.isSingleInstance())
+    {
+      return null;
+    }
+    if (!cli.isOnlyFiles())
+    {
+      LOGGER.debug("Launch with options not handed over to a running LocalSigner");
+      return null;
+    }
+
+    SingleInstance singleInstance = new SingleInstance(
+        new File(appConfig.getUserConfigFolder(), SingleInstance.PORT_FILE));
+    if (singleInstance.forward(cli.getInput(), cli.getOutput()))
+    {
+      LOGGER.info("Document handed over to running LocalSigner");
+      System.exit(0);
+    }
+    return singleInstance;
+  }
+
+  private static void listenForFurtherLaunches(final SingleInstance singleInstance, final Display display)
+  {
+    try
+    {
+      singleInstance.listen(new SingleInstance.Receiver()
+      {
+        @Override
+        public void open(final String input, final String output)
+        {
+          display.asyncExec(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              if (mainGui != null)
+              {
+                mainGui.openForwardedFile(input, output);
+              }
+            }
+          });
+        }
+      });
+      Runtime.getRuntime().addShutdownHook(new Thread()
+      {
+        @Override
+        public void run()
+        {
+          singleInstance.close();
+        }
+      });
+    } catch (IOException e)
+    {
+      LOGGER.warn("Cannot listen for further launches", e);
+    }
+  }
+
   private static void caseConversion(LocalSignerCommandLine cli)
   {
     if (cli.isConversion())
@@ -239,6 +390,90 @@ public final class LocalSigner
     }
   }
 
+  /**
+   * Runs the integrity check of the installation for batch signing and the
+   * service mode, which have no splash screen, and exits if it failed. Done
+   * only if the check is enabled, like the check of the GUI.
+   */
+  private static void checkIntegrityWithoutDisplay(LocalSignerCommandLine cli)
+  {
+    if (!(cli.isBatch() || cli.isDaemon()) || !appConfig.isShowIntegrityCheck())
+    {
+      return;
+    }
+    if (cli.isSkipCheck())
+    {
+      LOGGER.debug("Skip integrity check from command line option");
+      return;
+    }
+
+    SecurityCheck check = new SecurityCheck();
+    check.check(null);
+    if (check.getProblem())
+    {
+      LOGGER.fatal("This LocalSigner installation has been altered. Please download the application again. Exit");
+      System.exit(ERROR_VALUE);
+    }
+  }
+
+  private static void caseBatch(LocalSignerCommandLine cli)
+  {
+    if (cli.isBatch())
+    {
+      // sign all documents without GUI and exit
+      int failed = new BatchSigner(cli).run();
+      System.exit(failed == 0 ? 0 : ERROR_VALUE);
+    }
+  }
+
+  private static void caseValidateDir(LocalSignerCommandLine cli)
+  {
+    if (cli.isValidateDir())
+    {
+      // validate all documents of the directory tree without GUI and exit
+      int failed = new BatchValidator(cli).run();
+      System.exit(failed == 0 ? 0 : ERROR_VALUE);
+    }
+  }
+
+  private static void caseDaemon(LocalSignerCommandLine cli)
+  {
+    if (cli.isDaemon())
+    {
+      // keep trust store, token and configuration loaded for all jobs
+      final DocumentSigner signer = new DocumentSigner(cli.getAlias());
+      final LocalSignerDaemon daemon = new LocalSignerDaemon(signer, cli.getSignatureProfile(),
+          new File(appConfig.getUserConfigFolder(), LocalSignerDaemon.PORT_FILE));
+      try
+      {
+        SecurityResources.createSSLFactory();
+        try
+        {
+          signer.open();
+        } catch (Exception e)
+        {
+          LOGGER.warn("No certificate loaded, will try again with the first sign job", e);
+        }
+        daemon.start(cli.getDaemonPort());
+        Runtime.getRuntime().addShutdownHook(new Thread("LocalSigner service shutdown")
+        {
+          @Override
+          public void run()
+          {
+            daemon.stop();
+          }
+        });
+        daemon.awaitStop();
+        System.exit(0);
+      } catch (Exception e)
+      {
+        LOGGER.fatal("Cannot run LocalSigner service", e);
+        daemon.stop();
+        System.exit(ERROR_VALUE);
+      }
+    }
+  }
+
   private static LocalSignerCommandLine handleCommandLineOptions(String[] args) throws InputMismatchException
   {
     // handle command line parameters
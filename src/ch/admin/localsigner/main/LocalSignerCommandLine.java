@@ -23,6 +23,7 @@ import java.util.InputMismatchException;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
@@ -45,17 +46,23 @@ import ch.admin.localsigner.utils.ColorToConvert;
  * <pre>
  * usage: LocalSigner.cmd
  * -a,--appmode &lt;arg&gt;            Run Localsigner in interactive or subprocess mode
+ * -b,--batch &lt;arg&gt;              Sign all PDF files of a directory or list file without GUI (needs -s)
  * -c --conv                           Convert an ordinary PDF to format PDF/A-1b
  * -d,--debug                          Write to debug.log
+ * -e,--report &lt;arg&gt;             File to write the batch or validation report to (CSV, JSON if it ends with .json)
  * -i,--input &lt;arg&gt;              File to load as input document
+ * -j,--workers &lt;arg&gt;            Number of documents validated in parallel with validate-dir
+ * -k,--alias &lt;arg&gt;              Alias of the certificate to sign with in batch mode
  * -n,--nocheck                        Skip the integity check
  * -m,--colormodel                     Set colormodel to bw, color or grey
- * -o,--output &lt;arg&gt;             File to save signed document
+ * -o,--output &lt;arg&gt;             File to save signed document (directory in batch mode)
+ * -p,--validate-dir &lt;arg&gt;       Validate all PDF files of a directory tree for PDF/A without GUI
  * -q,--quit                           Exit LocalSigner after signing
  * -r,--resolution                     Set resolution to xxx dpi (200 for grey/color, 300 for bw recommended)
  * -s,--signatureProfile &lt;arg&gt;   Path of signature profile to load
  * -t,--sigtype &lt;arg&gt;            Fix sigtype to sign or lock or choice
  * -v,--viewer &lt;arg&gt;             Start LocalSigner with selected PDF viewer(adobe or builtin)
+ * -w,--daemon &lt;arg&gt;             Run as local service on the given loopback port
  * </pre>
  *
  * @author $Author$
@@ -91,6 +98,20 @@ public class LocalSignerCommandLine
 
   private String dpi;
 
+  private String batch;
+
+  private String report;
+
+  private String alias;
+
+  private Integer daemonPort;
+
+  private String validateDir;
+
+  private int workers;
+
+  private boolean onlyFiles;
+
   public static final String VIEWER_ADOBE = "adobe";
 
   public static final String VIEWER_BUILTIN = "builtin";
@@ -144,6 +165,14 @@ public class LocalSignerCommandLine
     options.addOption("m", "colormodel", true,
         "Convert the PDF file  to colormodel bw, color or grey");
     options.addOption("r", "resolution", true, "Set Resolution to dpi");
+    options.addOption("b", "batch", true,
+        "Sign all PDF files of a directory or list file without GUI (needs signatureProfile)");
+    options.addOption("e", "report", true,
+        "File to write the batch or validation report to (CSV, JSON if it ends with .json)");
+    options.addOption("k", "alias", true, "Alias of the certificate to sign with in batch or daemon mode");
+    options.addOption("w", "daemon", true, "Run as local service on the given loopback port");
+    options.addOption("p", "validate-dir", true, "Validate all PDF files of a directory tree for PDF/A without GUI");
+    options.addOption("j", "workers", true, "Number of documents validated in parallel with validate-dir");
   }
 
   /**
@@ -164,6 +193,13 @@ public class LocalSignerCommandLine
     quit = line.hasOption("q");
     conversion = line.hasOption("c");
     dpi = line.getOptionValue("r");
+    batch = line.getOptionValue("b");
+    report = line.getOptionValue("e");
+    alias = line.getOptionValue("k");
+    String port = line.getOptionValue("w");
+    validateDir = line.getOptionValue("p");
+    String workerCount = line.getOptionValue("j");
+    onlyFiles = hasOnlyFileOptions(line);
     setColorModel(line);
 
     if (line.hasOption("v"))
@@ -210,10 +246,32 @@ public class LocalSignerCommandLine
 
     validateSigtype();
 
+    validateBatch();
+
+    validateDaemon(port);
+
+    validateValidateDir(workerCount);
+
     // non-recognized arguments
     return line.getArgs();
   }
 
+  /**
+   * A running LocalSigner can only open another input and output file. The
+   * integrity check has been done by the running one.
+   */
+  private static boolean hasOnlyFileOptions(CommandLine line)
+  {
+    for (Option option : line.getOptions())
+    {
+      if (!"i".equals(option.getOpt()) && !"o".equals(option.getOpt()) && !"n".equals(option.getOpt()))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * This method validates the Appmode
    *
@@ -264,6 +322,115 @@ public class LocalSignerCommandLine
     }
   }
 
+  /**
+   * This method validates the batch options
+   *
+   * @throws ParseException
+   */
+  private void validateBatch() throws ParseException
+  {
+    if (batch == null)
+    {
+      if (report != null && validateDir == null)
+      {
+        showHelp("report can only be used with batch or validate-dir");
+        throw new ParseException("report can only be used with batch or validate-dir");
+      }
+      return;
+    }
+
+    if (!new File(batch).exists())
+    {
+      showHelp("batch directory or list " + new File(batch).getAbsolutePath() + " not found");
+      throw new ParseException("batch not found: " + batch);
+    }
+    if (getSignatureProfile() == null)
+    {
+      showHelp("signature profile needs to be set in batch mode");
+      throw new ParseException("signature profile needs to be set in batch mode");
+    }
+    if (input != null || isConversion())
+    {
+      showHelp("batch cannot be combined with input or conversion");
+      throw new ParseException("batch cannot be combined with input or conversion");
+    }
+    if (output != null && !new File(output).isDirectory())
+    {
+      showHelp("output needs to be an existing directory in batch mode");
+      throw new ParseException("output is no directory: " + output);
+    }
+  }
+
+  /**
+   * This method validates the daemon option
+   *
+   * @throws ParseException
+   */
+  private void validateDaemon(final String port) throws ParseException
+  {
+    if (port == null)
+    {
+      if (alias != null && batch == null)
+      {
+        showHelp("alias can only be used with batch or daemon");
+        throw new ParseException("alias can only be used with batch or daemon");
+      }
+      return;
+    }
+
+    if (!StringUtils.isNumeric(port) || Integer.parseInt(port) > 65535)
+    {
+      showHelp("daemon port needs to be a number");
+      throw new ParseException("invalid daemon port: " + port);
+    }
+    if (batch != null || input != null || isConversion())
+    {
+      showHelp("daemon cannot be combined with batch, input or conversion");
+      throw new ParseException("daemon cannot be combined with batch, input or conversion");
+    }
+    daemonPort = Integer.valueOf(port);
+  }
+
+  /**
+   * This method validates the validate-dir options
+   *
+   * @throws ParseException
+   */
+  private void validateValidateDir(final String workerCount) throws ParseException
+  {
+    if (validateDir == null)
+    {
+      if (workerCount != null)
+      {
+        showHelp("workers can only be used with validate-dir");
+        throw new ParseException("workers can only be used with validate-dir");
+      }
+      return;
+    }
+
+    if (!new File(validateDir).isDirectory())
+    {
+      showHelp("validate-dir " + new File(validateDir).getAbsolutePath() + " is no directory");
+      throw new ParseException("validate-dir is no directory: " + validateDir);
+    }
+    if (batch != null || daemonPort != null || input != null || isConversion())
+    {
+      showHelp("validate-dir cannot be combined with batch, daemon, input or conversion");
+      throw new ParseException("validate-dir cannot be combined with batch, daemon, input or conversion");
+    }
+
+    workers = Runtime.getRuntime().availableProcessors();
+    if (workerCount != null)
+    {
+      if (!StringUtils.isNumeric(workerCount) || workerCount.isEmpty() || Integer.parseInt(workerCount) < 1)
+      {
+        showHelp("workers needs to be a positive number");
+        throw new ParseException("invalid number of workers: " + workerCount);
+      }
+      workers = Integer.parseInt(workerCount);
+    }
+  }
+
   private void logWrongUsage(String wrongUsage)
   {
     Console console;
@@ -447,6 +614,73 @@ public class LocalSignerCommandLine
     this.conversion = conversion;
   }
 
+  /**
+   * Directory or list file of the documents to sign in batch mode
+   *
+   * @return path or null if not in batch mode
+   */
+  public String getBatch()
+  {
+    return batch;
+  }
+
+  public boolean isBatch()
+  {
+    return batch != null;
+  }
+
+  public String getReport()
+  {
+    return report;
+  }
+
+  public String getAlias()
+  {
+    return alias;
+  }
+
+  public boolean isDaemon()
+  {
+    return daemonPort != null;
+  }
+
+  public String getValidateDir()
+  {
+    return validateDir;
+  }
+
+  public boolean isValidateDir()
+  {
+    return validateDir != null;
+  }
+
+  /**
+   * @return true if no option other than the input and output file is given,
+   *         so the launch can be handed over to a running LocalSigner
+   */
+  public boolean isOnlyFiles()
+  {
+    return onlyFiles;
+  }
+
+  /**
+   * @return number of documents validated in parallel with validate-dir
+   */
+  public int getWorkers()
+  {
+    return workers;
+  }
+
+  /**
+   * Port of the local service in daemon mode
+   *
+   * @return port or null if not in daemon mode
+   */
+  public Integer getDaemonPort()
+  {
+    return daemonPort;
+  }
+
   public void doConversion(final boolean lock)
   {
     InputFile inputFile = new InputFile()
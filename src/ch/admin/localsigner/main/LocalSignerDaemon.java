@@ -0,0 +1,476 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import ch.admin.localsigner.main.DocumentSigner.DocumentRejectedException;
+import ch.admin.localsigner.utils.ColorToConvert;
+import ch.admin.localsigner.utils.SignatureInfo;
+import ch.admin.localsigner.validation.AnalysisCache;
+import ch.admin.localsigner.validation.PdfAnalyzer;
+
+/**
+ * Runs LocalSigner as a local service, so a document management system does
+ * not pay the start of the JVM, the integrity check and the PKCS11 login for
+ * every document. They are done once, when the service starts.
+ * <p>
+ * The service only listens on the loopback interface. Jobs are HTTP requests,
+ * the parameters are given in the query string, the documents are referenced
+ * by their path:
+ *
+ * <pre>
+ * POST /sign?input=&lt;file&gt;[&amp;output=&lt;file&gt;][&amp;profile=&lt;file&gt;]
+ * POST /validate?input=&lt;file&gt;
+ * POST /convert?input=&lt;file&gt;&amp;output=&lt;file&gt;
+ * GET  /status
+ * </pre>
+ *
+ * The answer is plain text with one <i>key=value</i> per line. The HTTP status
+ * is 200 if the job was done, 400 for wrong parameters, 422 if the document
+ * was rejected and 500 for errors.
+ * <p>
+ * Every start creates a random secret. It is written with the port to the
+ * port file, which only the owner may read, and has to be sent in the
+ * {@value #SECRET_HEADER} header of every request, so other local processes
+ * and users cannot sign with the logged in token. Requests with an
+ * <i>Origin</i> header or a <i>Host</i> other than the loopback interface
+ * come from a web page and are refused, status 403.
+ */
+class LocalSignerDaemon
+{
+  private static final Logger LOGGER = Logger.getLogger(LocalSignerDaemon.class);
+
+  static final String PORT_FILE = "daemon.port";
+
+  static final String SECRET_HEADER = "X-LocalSigner-Secret";
+
+  static final int HTTP_OK = 200;
+
+  static final int HTTP_BAD_REQUEST = 400;
+
+  static final int HTTP_FORBIDDEN = 403;
+
+  static final int HTTP_NOT_FOUND = 404;
+
+  static final int HTTP_METHOD_NOT_ALLOWED = 405;
+
+  static final int HTTP_REJECTED = 422;
+
+  static final int HTTP_ERROR = 500;
+
+  private static final String GET = "GET";
+
+  private static final String POST = "POST";
+
+  private static final List<String> LOOPBACK_HOSTS = Arrays.asList("127.0.0.1", "localhost", "[::1]");
+
+  private final DocumentSigner signer;
+
+  private final String defaultProfile;
+
+  private final File portFile;
+
+  private final String secret = SingleInstance.createSecret();
+
+  private final Map<String, CachedProfile> profiles = new ConcurrentHashMap<String, CachedProfile>();
+
+  // started and stopped on different threads
+  private volatile HttpServer server;
+
+  private ExecutorService executor;
+
+  private final CountDownLatch stopped = new CountDownLatch(1);
+
+  /**
+   * @param signer
+   *          signer kept open while the service runs
+   * @param defaultProfile
+   *          profile used if a sign job has no profile, may be null
+   * @param portFile
+   *          file to write the port and the secret to
+   */
+  LocalSignerDaemon(final DocumentSigner signer, final String defaultProfile, final File portFile)
+  {
+    this.signer = signer;
+    this.defaultProfile = defaultProfile;
+    this.portFile = portFile;
+  }
+
+  /**
+   * Starts listening on the loopback interface.
+   *
+   * @param port
+   *          port to listen on, 0 for any free port
+   * @throws IOException
+   *           if the port or the port file cannot be opened
+   */
+  void start(final int port) throws IOException
+  {
+    HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    created.createContext("/status", new JobHandler(GET)
+    {
+      @Override
+      int handle(final Map<String, String> params, final Map<String, Object> answer)
+      {
+        answer.put("status", "RUNNING");
+        return HTTP_OK;
+      }
+    });
+    created.createContext("/sign", new JobHandler(POST)
+    {
+      @Override
+      int handle(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+      {
+        return sign(params, answer);
+      }
+    });
+    created.createContext("/validate", new JobHandler(POST)
+    {
+      @Override
+      int handle(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+      {
+        return validate(params, answer);
+      }
+    });
+    created.createContext("/convert", new JobHandler(POST)
+    {
+      @Override
+      int handle(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+      {
+        return convert(params, answer);
+      }
+    });
+
+    executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    created.setExecutor(executor);
+    created.start();
+    // published last, stop() also uses the executor
+    server = created;
+    SingleInstance.writePortFile(portFile, getPort(), secret);
+    LOGGER.info("LocalSigner service listening on " + server.getAddress() + ", secret in " + portFile);
+  }
+
+  /**
+   * @return the port the service listens on
+   */
+  int getPort()
+  {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * @return the secret the clients have to send
+   */
+  String getSecret()
+  {
+    return secret;
+  }
+
+  /**
+   * Stops the service and logs out of the token.
+   */
+  void stop()
+  {
+    FileUtils.deleteQuietly(portFile);
+    HttpServer running = server;
+    if (running != null)
+    {
+      running.stop(0);
+      executor.shutdown();
+      try
+      {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      server = null;
+    }
+    signer.close();
+    LOGGER.info("LocalSigner service stopped");
+    stopped.countDown();
+  }
+
+  /**
+   * Blocks until the service is stopped.
+   *
+   * @throws InterruptedException
+   *           if the waiting thread is interrupted
+   */
+  void awaitStop() throws InterruptedException
+  {
+    stopped.await();
+  }
+
+  private int sign(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+  {
+    File input = getInput(params);
+    String profilePath = StringUtils.defaultIfEmpty(params.get("profile"), defaultProfile);
+    if (input == null || profilePath == null || !new File(profilePath).isFile())
+    {
+      answer.put("message", "input and profile needed");
+      return HTTP_BAD_REQUEST;
+    }
+    String output = params.containsKey("output") ? params.get("output")
+        : DocumentSigner.getOutputFile(input, null).getAbsolutePath();
+
+    SignatureParameters sigParams;
+    try
+    {
+      sigParams = signer.prepare(FileUtils.readFileToByteArray(input), getProfile(profilePath), profilePath, output);
+    } catch (DocumentRejectedException e)
+    {
+      answer.put("message", e.getMessage());
+      return HTTP_REJECTED;
+    }
+
+    byte[] signedFile = signer.sign(sigParams);
+    if (!DocumentSigner.verify(signedFile))
+    {
+      answer.put("message", "Signature invalid");
+      return HTTP_ERROR;
+    }
+    Files.write(new File(output).toPath(), signedFile);
+    answer.put("output", output);
+    return HTTP_OK;
+  }
+
+  private int validate(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+  {
+    File input = getInput(params);
+    if (input == null)
+    {
+      answer.put("message", "input needed");
+      return HTTP_BAD_REQUEST;
+    }
+
+    // read from the file, only the objects needed are loaded
+    PdfAnalyzer analyzer = AnalysisCache.getInstance().get(DocumentStore.forFile(input));
+    answer.put("pages", analyzer.getNumberOfPages());
+    Map<Integer, SignatureInfo> signatures = analyzer.getSignatures();
+    answer.put("signatures", signatures.size());
+    for (SignatureInfo info : signatures.values())
+    {
+      answer.put("signature." + info.getRevision(), info.getName() + ";valid=" + info.getPkcs7().verify()
+          + ";coversWholeDocument=" + info.isCoveringWholeDocument());
+    }
+    answer.put("modification", analyzer.isSignedAndModified());
+    answer.put("certified", analyzer.hasCertification());
+    analyzer.validatePdfA();
+    answer.put("pdfa", analyzer.getValidationResults().isSupportedPdfA()
+        && !analyzer.getValidationResults().isError());
+    return HTTP_OK;
+  }
+
+  private int convert(final Map<String, String> params, final Map<String, Object> answer) throws Exception
+  {
+    File input = getInput(params);
+    String output = params.get("output");
+    if (input == null || StringUtils.isEmpty(output))
+    {
+      answer.put("message", "input and output needed");
+      return HTTP_BAD_REQUEST;
+    }
+
+    InputFile inputFile = new InputFile()
+    {
+      @Override
+      public boolean needsLock()
+      {
+        return false;
+      }
+    };
+    inputFile.setOriginalFile(input.getAbsolutePath(), false);
+    if (!inputFile.processFile(output, false, ColorToConvert.COLOR, null) || !new File(output).isFile())
+    {
+      answer.put("message", "Conversion failed");
+      return HTTP_ERROR;
+    }
+    answer.put("output", output);
+    return HTTP_OK;
+  }
+
+  private static File getInput(final Map<String, String> params)
+  {
+    String input = params.get("input");
+    if (StringUtils.isEmpty(input) || !new File(input).isFile())
+    {
+      return null;
+    }
+    return new File(input);
+  }
+
+  /**
+   * Profiles are kept in memory and only read again if the file changed.
+   */
+  private PropertiesConfiguration getProfile(final String path) throws ConfigurationException
+  {
+    long lastModified = new File(path).lastModified();
+    CachedProfile cached = profiles.get(path);
+    if (cached == null || cached.lastModified != lastModified)
+    {
+      cached = new CachedProfile(DocumentSigner.loadProfile(path), lastModified);
+      profiles.put(path, cached);
+    }
+    return cached.profile;
+  }
+
+  private static final class CachedProfile
+  {
+    private final PropertiesConfiguration profile;
+
+    private final long lastModified;
+
+    CachedProfile(final PropertiesConfiguration profile, final long lastModified)
+    {
+      this.profile = profile;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * @return true if the request comes from a local client that knows the
+   *         secret, and not from a web page
+   */
+  private boolean isAllowed(final HttpExchange exchange)
+  {
+    Headers headers = exchange.getRequestHeaders();
+    if (headers.containsKey("Origin"))
+    {
+      return false;
+    }
+    String host = headers.getFirst("Host");
+    if (host == null || !LOOPBACK_HOSTS.contains(StringUtils.substringBeforeLast(host, ":").toLowerCase()))
+    {
+      return false;
+    }
+    String sent = headers.getFirst(SECRET_HEADER);
+    return sent != null && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+        sent.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parses the parameters, runs the job and writes the answer.
+   */
+  private abstract class JobHandler implements HttpHandler
+  {
+    private final String method;
+
+    JobHandler(final String method)
+    {
+      this.method = method;
+    }
+
+    abstract int handle(Map<String, String> params, Map<String, Object> answer) throws Exception;
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException
+    {
+      long start = System.currentTimeMillis();
+      Map<String, Object> answer = new LinkedHashMap<String, Object>();
+      int status;
+      try
+      {
+        if (!isAllowed(exchange))
+        {
+          LOGGER.warn("Request refused, no secret or not from a local client: " + exchange.getRequestURI());
+          status = HTTP_FORBIDDEN;
+        } else if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath()))
+        {
+          status = HTTP_NOT_FOUND;
+        } else if (!method.equals(exchange.getRequestMethod()))
+        {
+          status = HTTP_METHOD_NOT_ALLOWED;
+        } else
+        {
+          status = handle(parseQuery(exchange.getRequestURI().getRawQuery()), answer);
+        }
+      } catch (Exception e)
+      {
+        LOGGER.error("Error in job " + exchange.getRequestURI(), e);
+        answer.put("message", e.getMessage());
+        status = HTTP_ERROR;
+      }
+      answer.put("duration_ms", System.currentTimeMillis() - start);
+      LOGGER.info(exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + status);
+
+      StringBuilder text = new StringBuilder();
+      for (Map.Entry<String, Object> entry : answer.entrySet())
+      {
+        text.append(entry.getKey()).append('=')
+            .append(String.valueOf(entry.getValue()).replace('\n', ' ')).append('\n');
+      }
+      byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+      exchange.sendResponseHeaders(status, body.length);
+      OutputStream os = exchange.getResponseBody();
+      try
+      {
+        os.write(body);
+      } finally
+      {
+        os.close();
+      }
+    }
+  }
+
+  static Map<String, String> parseQuery(final String query) throws UnsupportedEncodingException
+  {
+    Map<String, String> params = new HashMap<String, String>();
+    if (StringUtils.isEmpty(query))
+    {
+      return params;
+    }
+    for (String pair : query.split("&"))
+    {
+      int index = pair.indexOf('=');
+      if (index > 0)
+      {
+        params.put(URLDecoder.decode(pair.substring(0, index), StandardCharsets.UTF_8.name()),
+            URLDecoder.decode(pair.substring(index + 1), StandardCharsets.UTF_8.name()));
+      }
+    }
+    return params;
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.config.LanguageConfiguration;
+import ch.admin.localsigner.gui.GuiHelper;
+import ch.glue.securitytools.SignatureHashType;
+import ch.glue.securitytools.SignatureType;
+import ch.glue.securitytools.keystore.SignerKeystore;
+import ch.glue.securitytools.pdf.PdfSigner;
+import ch.glue.securitytools.timestamp.TimestampConfiguration;
+
+/**
+ * Creates the {@link PdfSigner} of the security tools for the given
+ * {@link SignatureParameters}. Used by the signing dialog as well as by the
+ * headless batch mode, so both sign with exactly the same settings.
+ */
+public final class PdfSignerFactory
+{
+  private static final Logger LOGGER = Logger.getLogger(PdfSignerFactory.class);
+
+  private PdfSignerFactory()
+  {
+    // hide constructor for utility class
+  }
+
+  /**
+   * Creates a signer for the given parameters. If no hash algorithm is set in
+   * the parameters, SHA-256 is used and written back to the parameters.
+   *
+   * @param signerKeystore
+   *          Keystore holding the private key to sign with
+   * @param sigParams
+   *          The signature parameters
+   * @return the configured signer
+   */
+  public static PdfSigner createSigner(final SignerKeystore signerKeystore, final SignatureParameters sigParams)
+  {
+    final PdfSigner signer = new PdfSigner(signerKeystore);
+
+    signer.setProducerText("; signed by LocalSigner " + GuiHelper.getVersion());
+
+    String tsaUrl = sigParams.getTsaUrl();
+    if (StringUtils.isNotEmpty(tsaUrl))
+    {
+      TimestampConfiguration tsaconf = new TimestampConfiguration(tsaUrl);
+      tsaconf.setTimeStampingAuthorityAccount(sigParams.getTsaUser());
+      tsaconf.setTimeStampingAuthorityPassword(sigParams.getTsaPassword());
+      signer.setTimestampingConfiguration(tsaconf);
+      signer.setRequireTsa(true);
+
+      LOGGER.info("Signing  with timestamp");
+    } else
+    {
+      LOGGER.info("Signing  without timestamp");
+    }
+
+    signer.setInputFile(sigParams.getInputFile());
+    signer.setSignatureVisible(sigParams.isVisibleSignature());
+    signer.setAllowMultipleSignatures(sigParams.isMultipleSignature());
+    if (sigParams.isCertification())
+    {
+      signer.setSignatureType(SignatureType.CERTIFICATION_FORM_FILLING_ALLOWED);
+    } else
+    {
+      signer.setSignatureType(SignatureType.SIGNATURE);
+    }
+
+    if (sigParams.getSignatureBox() == null)
+    {
+      signer.setSignatureLeftPositionInMM(sigParams.getLeftPos());
+      signer.setSignatureTopPositionInMM(sigParams.getTopPos());
+      signer.setSignatureWidthInMM(sigParams.getBoxWidth());
+      signer.setSignatureHeightInMM(sigParams.getBoxHeight());
+    } else
+    {
+      signer.setSignatureBox(sigParams.getSignatureBox());
+    }
+
+    String backgroundImage = sigParams.getBackgroundImage();
+
+    if (sigParams.isSignatureImageVisible() && StringUtils.isNotBlank(backgroundImage))
+    {
+      // image / text mixed
+      if (sigParams.isSignatureTextVisible())
+      {
+        signer.setJpgImage(new File(backgroundImage));
+      } else
+      {
+        // image only mode
+        signer.setJpgBackground(new File(backgroundImage));
+        signer.setHideSignatureText(true);
+      }
+    }
+
+    signer.setSignatureLocation(sigParams.getLocation());
+    signer.setSignatureContact(sigParams.getContact());
+    signer.setSignatureContactLabel(sigParams.getContactLabel());
+    signer.setSignatureContactLabelVisible(sigParams.isContactLabelShown());
+    signer.setSignatureReason(sigParams.getReason());
+    signer.setSignatureReasonLabel(sigParams.getReasonLabel());
+    signer.setSignatureReasonLabelVisible(sigParams.isReasonLabelShown());
+    signer.setTextDigitallySigned(sigParams.getSignatureDigitallySigned());
+    signer.setTextLocalTime(sigParams.getSignatureLocalTime());
+    signer.setTextTsaTime(sigParams.getSignatureTsaTime());
+
+    signer.setSignaturePage(sigParams.getSignaturePage());
+
+    if (sigParams.getSignatureField() != null)
+    {
+      signer.setSignatureFieldName(sigParams.getSignatureField());
+    }
+
+    if (sigParams.getHash() == null)
+    {
+      sigParams.setHash(SignatureHashType.SHA256);
+    }
+
+    signer.setSignatureHashType(sigParams.getHash());
+
+    return signer;
+  }
+
+  /**
+   * Sets the texts of the visible signature (labels, "digitally signed" and
+   * the dates) in the language of the signature.
+   *
+   * @param sigParams
+   *          The signature parameters to complete
+   * @param lang
+   *          Language of the signature text, e.g. "de"
+   * @throws ConfigurationException
+   *           if the language file cannot be read
+   */
+  public static void loadSignatureTexts(final SignatureParameters sigParams, final String lang)
+      throws ConfigurationException
+  {
+    final DateFormat isoDate = new SimpleDateFormat("yyyy-MM-dd");
+
+    PropertiesConfiguration props = new PropertiesConfiguration();
+    props.setDelimiterParsingDisabled(true);
+    props.load(new File(LanguageConfiguration.getLanguageFolder() + lang + ".properties").getAbsoluteFile());
+
+    // set labels for visible signature
+    if (StringUtils.isNotBlank(sigParams.getContact()))
+    {
+      sigParams.setContactLabel(props.getString("contact"));
+    }
+    if (StringUtils.isNotBlank(sigParams.getReason()))
+    {
+      sigParams.setReasonLabel(props.getString("reason"));
+    }
+
+    String signatureDigitallySigned = props.getString("signatureDigitallySigned");
+    if (StringUtils.isNotBlank(signatureDigitallySigned))
+    {
+      sigParams.setSignatureDigitallySigned(signatureDigitallySigned + " ");
+    }
+
+    sigParams.setSignatureLocalTime(isoDate.format(new Date()));
+
+    String signatureTsaTime = props.getString("signatureTsaTime");
+    if (StringUtils.isNotBlank(signatureTsaTime))
+    {
+      sigParams.setSignatureTsaTime(isoDate.format(new Date()) + " " + signatureTsaTime);
+    }
+  }
+}
@@ -24,8 +24,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -191,15 +199,22 @@ class SecurityCheck
     -127, 52, 24, -126, -23, 120, -97, -40, 49, 71, 97, 83
   };
 
+  // entries of localsigner.jar are verified by this many threads at most
+  private static final int MAX_JAR_WORKERS = 4;
+
+  private static final int BUFFER_SIZE = 8192;
+
   private SWTSplash splash;
 
-  private boolean problem;
+  // set by the parallel checks
+  private volatile boolean problem;
 
   /**
    * Constructor
    *
    * @param splashScreen
-   *          Splash screen to draw check progress
+   *          Splash screen to draw check progress, null if there is no
+   *          display (batch and service mode)
    */
   protected void check(final SWTSplash splashScreen)
   {
@@ -217,15 +232,54 @@ class SecurityCheck
       return;
     }
 
-    // check all expected classpath entries
-    checkLocalsignerJar(classpathentries[0]);
-    checkLibraryJar(classpathentries[1], BasePath.getBasePath()+"/lib/bcprov-jdk15on-1.59.jar",
-      "1c31e44e331d25e46d293b3e8ee2d07028a67db011e74cb2443285aed1d59c85");
-    checkLibraryJar(classpathentries[2], BasePath.getBasePath()+"/lib/bcmail-jdk15on-1.59.jar",
-      "404cd478ba2bf456db7b8a29cc4a47b00b6cbbd024b83845c8092d3fea2460cb");
-    checkLibraryJar(classpathentries[3], BasePath.getBasePath()+"/lib/bcpkix-jdk15on-1.59.jar",
-      "601d85cfbcef76a1cb77cbf755a6234a4ba1d4c02a98d9a81028d471f388694f");
-    // cannot check SWT lib, different on every platform
+    // check all expected classpath entries. The library jars are hashed in
+    // parallel to the signature check of localsigner.jar
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try
+    {
+      List<Future<?>> libraryChecks = new ArrayList<Future<?>>();
+      libraryChecks.add(submitLibraryCheck(pool, classpathentries[1],
+        BasePath.getBasePath()+"/lib/bcprov-jdk15on-1.59.jar",
+        "1c31e44e331d25e46d293b3e8ee2d07028a67db011e74cb2443285aed1d59c85"));
+      libraryChecks.add(submitLibraryCheck(pool, classpathentries[2],
+        BasePath.getBasePath()+"/lib/bcmail-jdk15on-1.59.jar",
+        "404cd478ba2bf456db7b8a29cc4a47b00b6cbbd024b83845c8092d3fea2460cb"));
+      libraryChecks.add(submitLibraryCheck(pool, classpathentries[3],
+        BasePath.getBasePath()+"/lib/bcpkix-jdk15on-1.59.jar",
+        "601d85cfbcef76a1cb77cbf755a6234a4ba1d4c02a98d9a81028d471f388694f"));
+      // cannot check SWT lib, different on every platform
+
+      checkLocalsignerJar(classpathentries[0]);
+
+      for (Future<?> libraryCheck : libraryChecks)
+      {
+        libraryCheck.get();
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      generalErrorDuringSecurityChecking("Check interrupted");
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("Cannot check library", e.getCause());
+      generalErrorDuringSecurityChecking("Error while checking libraries");
+    } finally
+    {
+      pool.shutdownNow();
+    }
+  }
+
+  private Future<?> submitLibraryCheck(final ExecutorService pool, final String pathEntry,
+    final String filename, final String expectedHash)
+  {
+    return pool.submit(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        checkLibraryJar(pathEntry, filename, expectedHash);
+      }
+    });
   }
 
   /**
@@ -264,7 +318,7 @@ class SecurityCheck
    */
   private void checkLocalsignerJar(final String pathEntry)
   {
-    if (splash.skipSplash())
+    if (isSkipped())
     {
       return;
     }
@@ -296,6 +350,19 @@ class SecurityCheck
       return;
     }
 
+    File jar = new File(localsignerGivenPath);
+    VerifiedJarCache cache = null;
+    if (LocalSigner.appConfig != null && LocalSigner.appConfig.isIntegrityCheckCache())
+    {
+      cache = new VerifiedJarCache(new File(LocalSigner.appConfig.getUserConfigFolder()));
+      if (cache.isVerified(jar))
+      {
+        LOGGER.debug("localsigner.jar unchanged since last check");
+        setProgress(100);
+        return;
+      }
+    }
+
     // and check, that all signatures are correct and all files (w/o
     // directories)
     // have the code signing certificate attached.
@@ -304,22 +371,14 @@ class SecurityCheck
     try
     {
       jarfile = openJarFile(localsignerGivenPath);
-      if (jarfile != null)
+      if (jarfile != null && processJarFileEntries(localsignerGivenPath, jarfile) && !problem
+          && cache != null)
       {
-        processJarFileEntries(localsignerGivenPath, jarfile);
+        cache.store(jar);
       }
     } finally
     {
-      if (jarfile != null)
-      {
-        try
-        {
-          jarfile.close();
-        } catch (IOException e)
-        {
-          // ignore
-        }
-      }
+      closeJarFile(jarfile);
     }
   }
 
@@ -336,22 +395,111 @@ class SecurityCheck
     }
   }
 
-  private void processJarFileEntries(final String localsignerGivenPath, JarFile jarfile)
+  private static void closeJarFile(final JarFile jarfile)
   {
+    if (jarfile != null)
+    {
+      try
+      {
+        jarfile.close();
+      } catch (IOException e)
+      {
+        // ignore
+      }
+    }
+  }
 
-    int jarCount = jarfile.size();
-    int count = 0;
-    // iterate over all entries in the jar file
-    for (Enumeration<JarEntry> entries = jarfile.entries(); entries.hasMoreElements();)
+  /**
+   * Reads all entries of the jar. The entries are split between several
+   * threads, each reading its share from its own {@link JarFile}; the calling
+   * thread uses the given one.
+   *
+   * @return true if every entry has been read without error
+   */
+  private boolean processJarFileEntries(final String localsignerGivenPath, final JarFile jarfile)
+  {
+    final List<JarEntry> entries = new ArrayList<JarEntry>(jarfile.size());
+    for (Enumeration<JarEntry> e = jarfile.entries(); e.hasMoreElements();)
     {
-      if (splash.skipSplash())
+      entries.add(e.nextElement());
+    }
+
+    final int workers = Math.max(1, Math.min(MAX_JAR_WORKERS, Runtime.getRuntime().availableProcessors()));
+    final AtomicInteger count = new AtomicInteger();
+    ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers - 1) : null;
+    try
+    {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int i = 1; i < workers; i++)
       {
-        return;
+        final int worker = i;
+        results.add(pool.submit(new Callable<Boolean>()
+        {
+          @Override
+          public Boolean call()
+          {
+            JarFile own = openJarFile(localsignerGivenPath);
+            try
+            {
+              return own != null && readEntries(own, entries, worker, workers, count);
+            } finally
+            {
+              closeJarFile(own);
+            }
+          }
+        }));
       }
-      count++;
-      splash.setProgress(100 * count / jarCount);
 
-      final JarEntry entry = entries.nextElement();
+      boolean completed = readEntries(jarfile, entries, 0, workers, count);
+      for (Future<Boolean> result : results)
+      {
+        completed &= result.get();
+      }
+      LOGGER.debug("Checked files: " + count.get());
+      return completed;
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      generalErrorDuringSecurityChecking("Check interrupted");
+      return false;
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("Cannot verify jar", e.getCause());
+      generalErrorDuringSecurityChecking("Error while checking jar");
+      return false;
+    } finally
+    {
+      if (pool != null)
+      {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Reads every entry whose index modulo <code>workers</code> is
+   * <code>worker</code>.
+   */
+  private boolean readEntries(final JarFile jarfile, final List<JarEntry> entries, final int worker,
+    final int workers, final AtomicInteger count)
+  {
+    final int jarCount = entries.size();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    for (int i = worker; i < jarCount; i += workers)
+    {
+      if (isSkipped() || problem)
+      {
+        return false;
+      }
+      int done = count.incrementAndGet();
+      // the progress bar has only 100 steps
+      if (done * 100L / jarCount != (done - 1) * 100L / jarCount)
+      {
+        setProgress((int) (done * 100L / jarCount));
+      }
+
+      // the entry of this jar file, with its own certificates
+      final JarEntry entry = jarfile.getJarEntry(entries.get(i).getName());
 
       // load the whole jar file entry
       InputStream is = null;
@@ -362,16 +510,15 @@ class SecurityCheck
         // correct signatures
         // and to be sure the certificates used for signed are also
         // loaded.
-        int val = 0;
-        while (val != -1)
+        while (is.read(buffer) != -1)
         {
-          val = is.read();
+          // verified while reading
         }
       } catch (Exception ioe)
       {
         LOGGER.error("Cannot verify " + entry, ioe);
         generalErrorDuringSecurityChecking("Error while checking jar entry " + entry.getName());
-        return;
+        return false;
       } finally {
         if (is!=null) {
           try
@@ -385,7 +532,7 @@ class SecurityCheck
       }
 
     }
-    LOGGER.debug("Checked files: " + count);
+    return true;
   }
 
   /**
@@ -397,7 +544,7 @@ class SecurityCheck
    */
   private void checkLibraryJar(final String pathEntry, final String filename, final String expectedHash)
   {
-    if (splash.skipSplash())
+    if (isSkipped())
     {
       return;
     }
@@ -443,7 +590,7 @@ class SecurityCheck
    * error. This error may happen during security checking and initializing of
    * the application.
    */
-  private void generalErrorDuringSecurityChecking(final String problem)
+  private synchronized void generalErrorDuringSecurityChecking(final String problem)
   {
     LOGGER.error("This LocalSigner installation has been altered. Please download the application again.");
     LOGGER.error("Cause: " + problem);
@@ -455,6 +602,22 @@ class SecurityCheck
     this.problem = true;
   }
 
+  /**
+   * @return true if the user skipped the check on the splash screen
+   */
+  private boolean isSkipped()
+  {
+    return splash != null && splash.skipSplash();
+  }
+
+  private void setProgress(final int percent)
+  {
+    if (splash != null)
+    {
+      splash.setProgress(percent);
+    }
+  }
+
   public boolean getProblem()
   {
     return problem;
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Makes sure only one interactive LocalSigner runs per user. The first
+ * instance listens on a loopback port and writes the port to a file in the
+ * user configuration folder. Further launches send their input and output file
+ * to this port and exit, the running instance opens the document in its
+ * window.
+ * <p>
+ * The port file also holds a random secret which has to be sent with every
+ * request, so other users of the same machine cannot open files in the window.
+ */
+class SingleInstance
+{
+  private static final Logger LOGGER = Logger.getLogger(SingleInstance.class);
+
+  static final String PORT_FILE = "instance.port";
+
+  private static final int CONNECT_TIMEOUT = 1000;
+
+  private static final int READ_TIMEOUT = 5000;
+
+  private static final String ANSWER_OK = "OK";
+
+  private static final String INPUT = "input=";
+
+  private static final String OUTPUT = "output=";
+
+  /**
+   * Called in the running instance for every forwarded launch.
+   */
+  interface Receiver
+  {
+    /**
+     * @param input
+     *          file to open, null to only bring the window to front
+     * @param output
+     *          file to save to, may be null
+     */
+    void open(String input, String output);
+  }
+
+  private final File portFile;
+
+  private ServerSocket serverSocket;
+
+  SingleInstance(final File portFile)
+  {
+    this.portFile = portFile;
+  }
+
+  /**
+   * Sends the input and output to the running instance.
+   *
+   * @param input
+   *          file to open, may be null
+   * @param output
+   *          file to save to, may be null
+   * @return true if a running instance accepted the files, false if this
+   *         launch has to start on its own
+   */
+  boolean forward(final String input, final String output)
+  {
+    if (!portFile.isFile())
+    {
+      return false;
+    }
+
+    try
+    {
+      List<String> lines = FileUtils.readLines(portFile, StandardCharsets.UTF_8);
+      if (lines.size() < 2 || !StringUtils.isNumeric(lines.get(0)))
+      {
+        return false;
+      }
+
+      Socket socket = new Socket();
+      try
+      {
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(lines.get(0))),
+            CONNECT_TIMEOUT);
+        socket.setSoTimeout(READ_TIMEOUT);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        writer.println(lines.get(1));
+        writer.println(INPUT + StringUtils.defaultString(absolute(input)));
+        writer.println(OUTPUT + StringUtils.defaultString(absolute(output)));
+        writer.flush();
+
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        boolean accepted = ANSWER_OK.equals(reader.readLine());
+        LOGGER.debug("forwarded " + input + " to running instance: " + accepted);
+        return accepted;
+      } finally
+      {
+        socket.close();
+      }
+    } catch (IOException e)
+    {
+      // stale port file, the other instance is gone
+      LOGGER.debug("No running instance: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Starts to accept forwarded launches. The receiver is called on a
+   * background thread.
+   *
+   * @param receiver
+   *          opens the forwarded documents
+   * @throws IOException
+   *           if the port or the port file cannot be created
+   */
+  void listen(final Receiver receiver) throws IOException
+  {
+    final ServerSocket server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+    serverSocket = server;
+    final String secret = createSecret();
+
+    writePortFile(portFile, server.getLocalPort(), secret);
+    portFile.deleteOnExit();
+
+    Thread thread = new Thread("LocalSigner single instance")
+    {
+      @Override
+      public void run()
+      {
+        while (!server.isClosed())
+        {
+          try
+          {
+            Socket socket = server.accept();
+            try
+            {
+              handle(socket, secret, receiver);
+            } finally
+            {
+              socket.close();
+            }
+          } catch (SocketException e)
+          {
+            // closed
+          } catch (IOException e)
+          {
+            LOGGER.warn("Cannot read forwarded launch", e);
+          }
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    LOGGER.debug("Listening for further launches on port " + server.getLocalPort());
+  }
+
+  /**
+   * Stops listening and removes the port file.
+   */
+  void close()
+  {
+    if (serverSocket != null)
+    {
+      try
+      {
+        serverSocket.close();
+      } catch (IOException e)
+      {
+        LOGGER.debug("Cannot close single instance port", e);
+      }
+      FileUtils.deleteQuietly(portFile);
+      serverSocket = null;
+    }
+  }
+
+  private static void handle(final Socket socket, final String secret, final Receiver receiver) throws IOException
+  {
+    socket.setSoTimeout(READ_TIMEOUT);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    if (!secret.equals(reader.readLine()))
+    {
+      LOGGER.warn("Forwarded launch with wrong secret ignored");
+      return;
+    }
+
+    String input = null;
+    String output = null;
+    String line;
+    while ((line = reader.readLine()) != null)
+    {
+      if (line.startsWith(INPUT))
+      {
+        input = StringUtils.trimToNull(line.substring(INPUT.length()));
+      } else if (line.startsWith(OUTPUT))
+      {
+        output = StringUtils.trimToNull(line.substring(OUTPUT.length()));
+        break;
+      }
+    }
+
+    receiver.open(input, output);
+
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    writer.println(ANSWER_OK);
+    writer.flush();
+  }
+
+  private static String absolute(final String path)
+  {
+    return path == null ? null : new File(path).getAbsolutePath();
+  }
+
+  /**
+   * Writes the port and the secret of a loopback service to a file only the
+   * owner may read. The permissions are set before the secret is written.
+   *
+   * @param portFile
+   *          file to write
+   * @param port
+   *          port of the service
+   * @param secret
+   *          secret the clients have to send
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  static void writePortFile(final File portFile, final int port, final String secret) throws IOException
+  {
+    FileUtils.deleteQuietly(portFile);
+    if (!portFile.createNewFile())
+    {
+      throw new IOException("Cannot create " + portFile);
+    }
+    portFile.setReadable(false, false);
+    portFile.setReadable(true, true);
+    portFile.setWritable(false, false);
+    portFile.setWritable(true, true);
+    FileUtils.writeLines(portFile, StandardCharsets.UTF_8.name(), Arrays.asList(String.valueOf(port), secret));
+  }
+
+  /**
+   * @return a random secret, hex encoded
+   */
+  static String createSecret()
+  {
+    byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes(bytes);
+    return Hex.encodeHexString(bytes);
+  }
+}
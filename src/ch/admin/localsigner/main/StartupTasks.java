@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the phases of the application startup. Phases which do not need the
+ * display are started in the background and overlap with the splash screen;
+ * the main thread waits for them where it needs their results. The duration of
+ * every phase is logged, so slow startups can be traced.
+ */
+final class StartupTasks
+{
+  private static final Logger LOGGER = Logger.getLogger(StartupTasks.class);
+
+  private final long started = System.nanoTime();
+
+  private long lastPhaseEnd = started;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory()
+  {
+    private final AtomicInteger number = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r)
+    {
+      Thread thread = new Thread(r, "LocalSigner startup " + number.incrementAndGet());
+      // never keep the application alive
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Starts a phase in the background.
+   *
+   * @param name
+   *          name of the phase, for the log
+   * @param phase
+   *          the work
+   * @return the running phase
+   */
+  Future<?> start(final String name, final Runnable phase)
+  {
+    return executor.submit(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        timed(name, phase);
+      }
+    });
+  }
+
+  /**
+   * Marks the end of a phase run on the calling thread, the phase started when
+   * the previous one ended.
+   *
+   * @param name
+   *          name of the phase, for the log
+   */
+  synchronized void phaseDone(final String name)
+  {
+    long now = System.nanoTime();
+    LOGGER.info("Startup phase '" + name + "' took " + (now - lastPhaseEnd) / 1000000L + " ms");
+    lastPhaseEnd = now;
+  }
+
+  private void timed(final String name, final Runnable phase)
+  {
+    long start = System.nanoTime();
+    try
+    {
+      phase.run();
+    } finally
+    {
+      LOGGER.info("Startup phase '" + name + "' took " + millis(start) + " ms");
+    }
+  }
+
+  /**
+   * Waits until a background phase is finished. A failed phase has been logged
+   * and is not fatal for the caller.
+   *
+   * @param phase
+   *          the phase, may be null if it has not been started
+   * @return true if the phase finished without error
+   */
+  boolean await(final Future<?> phase)
+  {
+    if (phase == null)
+    {
+      return true;
+    }
+    try
+    {
+      phase.get();
+      return true;
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("Startup phase failed", e.getCause());
+      return false;
+    }
+  }
+
+  /**
+   * Logs the total startup time. Phases still running are finished in the
+   * background.
+   */
+  void finished()
+  {
+    LOGGER.info("Startup took " + millis(started) + " ms");
+    executor.shutdown();
+  }
+
+  private static long millis(final long since)
+  {
+    return (System.nanoTime() - since) / 1000000L;
+  }
+}
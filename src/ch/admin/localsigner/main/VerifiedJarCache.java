@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.validation.SHAChecksum;
+
+/**
+ * Remembers the last successful integrity check of a jar (path, size,
+ * modification time and SHA-256). The record is protected with a HMAC whose
+ * random key is kept in a separate file readable by the user only, so an
+ * edited or copied record is not accepted.
+ * <p>
+ * A jar is only taken as verified if it still has the recorded size and time
+ * and its SHA-256 is the recorded one, i.e. it is byte by byte the jar that
+ * passed the full check.
+ * <p>
+ * Every process of the user can read the key and write a record, so the record
+ * alone does not prove anything against them. It is only used if the user can
+ * replace neither the jar nor its folder (installed by an administrator); a
+ * jar the user may write is always checked in full.
+ */
+class VerifiedJarCache
+{
+  private static final Logger LOGGER = Logger.getLogger(VerifiedJarCache.class);
+
+  static final String CACHE_FILE = "integrity.cache";
+
+  static final String KEY_FILE = "integrity.key";
+
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+
+  private static final int KEY_LENGTH = 32;
+
+  private static final String PATH = "path";
+
+  private static final String SIZE = "size";
+
+  private static final String MODIFIED = "modified";
+
+  private static final String SHA256 = "sha256";
+
+  private static final String MAC = "mac";
+
+  private final File cacheFile;
+
+  private final File keyFile;
+
+  VerifiedJarCache(final File folder)
+  {
+    this.cacheFile = new File(folder, CACHE_FILE);
+    this.keyFile = new File(folder, KEY_FILE);
+  }
+
+  /**
+   * @param jar
+   *          the jar to check
+   * @return true if the jar is unchanged since its last successful check
+   */
+  boolean isVerified(final File jar)
+  {
+    if (!isProtected(jar))
+    {
+      LOGGER.debug("Jar may be replaced by the user, integrity check cache not used");
+      return false;
+    }
+    if (!cacheFile.isFile() || !keyFile.isFile())
+    {
+      return false;
+    }
+
+    try
+    {
+      Properties record = new Properties();
+      InputStream in = new FileInputStream(cacheFile);
+      try
+      {
+        record.load(in);
+      } finally
+      {
+        in.close();
+      }
+
+      String mac = record.getProperty(MAC, "");
+      if (!MessageDigest.isEqual(Hex.decodeHex(mac.toCharArray()), mac(record)))
+      {
+        LOGGER.warn("Integrity check cache has been modified, ignored");
+        return false;
+      }
+
+      if (!jar.getAbsolutePath().equals(record.getProperty(PATH))
+          || !String.valueOf(jar.length()).equals(record.getProperty(SIZE))
+          || !String.valueOf(jar.lastModified()).equals(record.getProperty(MODIFIED)))
+      {
+        LOGGER.debug("Jar changed since last integrity check");
+        return false;
+      }
+
+      return SHAChecksum.getChecksum(jar.getAbsolutePath()).equals(record.getProperty(SHA256));
+    } catch (IOException | GeneralSecurityException | DecoderException e)
+    {
+      LOGGER.warn("Cannot read integrity check cache", e);
+      return false;
+    }
+  }
+
+  /**
+   * Records the successful check of the jar.
+   *
+   * @param jar
+   *          the checked jar
+   */
+  void store(final File jar)
+  {
+    if (!isProtected(jar))
+    {
+      return;
+    }
+    try
+    {
+      Properties record = new Properties();
+      record.setProperty(PATH, jar.getAbsolutePath());
+      record.setProperty(SIZE, String.valueOf(jar.length()));
+      record.setProperty(MODIFIED, String.valueOf(jar.lastModified()));
+      record.setProperty(SHA256, SHAChecksum.getChecksum(jar.getAbsolutePath()));
+      record.setProperty(MAC, Hex.encodeHexString(mac(record)));
+
+      OutputStream out = new FileOutputStream(cacheFile);
+      try
+      {
+        record.store(out, "Last successful integrity check");
+      } finally
+      {
+        out.close();
+      }
+      LOGGER.debug("Integrity check cached for " + jar);
+    } catch (IOException | GeneralSecurityException e)
+    {
+      LOGGER.warn("Cannot write integrity check cache", e);
+    }
+  }
+
+  /**
+   * @param jar
+   *          the jar
+   * @return true if the user can neither write the jar nor replace it in its
+   *         folder
+   */
+  static boolean isProtected(final File jar)
+  {
+    File folder = jar.getAbsoluteFile().getParentFile();
+    return !Files.isWritable(jar.toPath()) && folder != null && !Files.isWritable(folder.toPath());
+  }
+
+  private byte[] mac(final Properties record) throws IOException, GeneralSecurityException
+  {
+    Mac mac = Mac.getInstance(MAC_ALGORITHM);
+    mac.init(new SecretKeySpec(getKey(), MAC_ALGORITHM));
+    String data = record.getProperty(PATH) + '\n' + record.getProperty(SIZE) + '\n'
+        + record.getProperty(MODIFIED) + '\n' + record.getProperty(SHA256);
+    return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private byte[] getKey() throws IOException
+  {
+    if (keyFile.isFile())
+    {
+      return FileUtils.readFileToByteArray(keyFile);
+    }
+
+    byte[] key = new byte[KEY_LENGTH];
+    new SecureRandom().nextBytes(key);
+    // only the owner may read the key, set before it is written
+    if (!keyFile.createNewFile())
+    {
+      throw new IOException("Cannot create " + keyFile);
+    }
+    keyFile.setReadable(false, false);
+    keyFile.setReadable(true, true);
+    keyFile.setWritable(false, false);
+    keyFile.setWritable(true, true);
+    FileUtils.writeByteArrayToFile(keyFile, key);
+    return key;
+  }
+}
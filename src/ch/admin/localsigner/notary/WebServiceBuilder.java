@@ -18,6 +18,7 @@ package ch.admin.localsigner.notary;
 import ch.admin.bj.upreg.fn.client.core.webservice.FNWebserviceWrapper;
 import ch.admin.localsigner.gui.MainGUI;
 import ch.admin.localsigner.gui.Pkcs11Helper;
+import ch.admin.localsigner.gui.Pkcs11TokenManager;
 import ch.admin.localsigner.gui.common.InputDialog;
 import ch.admin.localsigner.gui.common.Message;
 import ch.admin.localsigner.main.LocalSigner;
@@ -104,7 +105,7 @@ public class WebServiceBuilder
     PKCS11Token token = null;
     try
     {
-      token = new Pkcs11Helper(mainShell).findCertPkcs11();
+      token = Pkcs11TokenManager.getInstance().getToken(mainShell);
     } catch (Pkcs11Helper.UserCanceledException cancel)
     {
       LOGGER.info("user cancelled reader choice");
@@ -15,19 +15,12 @@
  */
 package ch.admin.localsigner.notary.cantonal.seal.info.client;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.SSLSession;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -35,15 +28,12 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.log4j.Logger;
 import ch.admin.localsigner.config.ApplicationConfiguration;
 import ch.admin.localsigner.config.Config;
-import ch.admin.localsigner.config.resources.SecurityResources;
 import ch.admin.localsigner.main.LocalSigner;
+import ch.admin.localsigner.utils.HttpTransport;
 
 /**
  *
@@ -240,27 +230,12 @@ public class CantonalSealInfoWsClient
   }
 
   /**
-   * Creates a closeable http client with the httpTrustStore.jks (in
-   * LocalSigner.jar) as its trust store.
+   * Returns the shared http client with the httpTrustStore.jks (in
+   * LocalSigner.jar) as its trust store. It must not be closed.
    */
   protected CloseableHttpClient createHttpClient()
-      throws CertificateException, IOException, KeyManagementException, KeyStoreException, NoSuchAlgorithmException
   {
-    SSLConnectionSocketFactory factory = new SSLConnectionSocketFactory(SecurityResources.createSSLFactory(),
-        new HostnameVerifier()
-        { // no special hostname verification
-          @Override
-          public boolean verify(String hostname, SSLSession ssls)
-          {
-            return true;
-          };
-        });
-
-    HttpClientBuilder builder = HttpClients.custom();
-
-    CloseableHttpClient httpclient = builder.setSSLSocketFactory(factory).useSystemProperties().build();
-
-    return httpclient;
+    return HttpTransport.getClient();
   }
 
   /**
@@ -17,14 +17,11 @@ package ch.admin.localsigner.notary.update;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
 import javax.xml.bind.DatatypeConverter;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Event;
@@ -33,7 +30,7 @@ import ch.admin.localsigner.config.ZulabConfiguration;
 import ch.admin.localsigner.gui.MainGUI;
 import ch.admin.localsigner.gui.common.Message;
 import ch.admin.localsigner.main.LocalSigner;
-import ch.admin.localsigner.utils.OnlineServices;
+import ch.admin.localsigner.utils.HttpTransport;
 
 /**
  * This class checks online for updates of canton and domain list for
@@ -66,12 +63,7 @@ public class CantonAndDomainListUpdater implements Runnable
 
     try
     {
-      HttpURLConnection conn = new OnlineServices(LocalSigner.appConfig).getConfiguredSslConnection(url);
-
-      LOGGER.debug("Status code for canton and domain list update request: " + conn.getResponseCode());
-
-      InputStream updateXml = conn.getInputStream();
-      final byte[] xmlData = IOUtils.toByteArray(updateXml);
+      final byte[] xmlData = HttpTransport.get(url);
 
       // check if XML response is not empty and is the expected XML file
       if (!new String(xmlData).contains("<config version="))
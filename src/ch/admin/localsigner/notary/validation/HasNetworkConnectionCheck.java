@@ -18,6 +18,8 @@ package ch.admin.localsigner.notary.validation;
 import ch.admin.bj.upreg.fn.client.core.validation.Validatable;
 import ch.admin.localsigner.main.LocalSigner;
 import ch.admin.localsigner.utils.OnlineServices;
+import ch.admin.localsigner.utils.ServiceHealthMonitor;
+import ch.admin.localsigner.utils.ServiceHealthMonitor.State;
 
 public class HasNetworkConnectionCheck implements Validatable
 {
@@ -25,7 +27,18 @@ public class HasNetworkConnectionCheck implements Validatable
   @Override
   public boolean validate(byte[] pdfData)
   {
-    return new OnlineServices(LocalSigner.appConfig).isNotaryServiceUp();
+    ServiceHealthMonitor monitor = ServiceHealthMonitor.getInstance();
+    if (monitor.getState(ServiceHealthMonitor.NOTARY) == State.UP)
+    {
+      return true;
+    }
+    // the signature cannot go on without the service, so it is asked again
+    State state = monitor.check(ServiceHealthMonitor.NOTARY);
+    if (state == State.UNKNOWN)
+    {
+      return new OnlineServices(LocalSigner.appConfig).isNotaryServiceUp();
+    }
+    return state == State.UP;
   }
 
   @Override
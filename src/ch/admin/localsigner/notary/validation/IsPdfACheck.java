@@ -19,6 +19,7 @@ import java.io.IOException;
 import org.apache.log4j.Logger;
 import ch.admin.bj.upreg.fn.client.core.validation.Validatable;
 import ch.admin.localsigner.main.LocalSigner;
+import ch.admin.localsigner.validation.AnalysisCache;
 import ch.admin.localsigner.validation.PdfAnalyzer;
 
 public class IsPdfACheck implements Validatable
@@ -36,7 +37,7 @@ public class IsPdfACheck implements Validatable
   {
     try
     {
-      PdfAnalyzer analyzer = new PdfAnalyzer(bytes);
+      PdfAnalyzer analyzer = AnalysisCache.getInstance().get(bytes);
       analyzer.validatePdfA();
       return analyzer.getValidationResults().isSupportedPdfA() && !analyzer.getValidationResults().isError();
     } catch (IOException ioe)
@@ -16,10 +16,6 @@
 package ch.admin.localsigner.update;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.SWT;
 import ch.admin.localsigner.gui.GuiHelper;
@@ -27,6 +23,7 @@ import ch.admin.localsigner.gui.MainGUI;
 import ch.admin.localsigner.gui.common.Message;
 import ch.admin.localsigner.listener.LinkListener;
 import ch.admin.localsigner.main.LocalSigner;
+import ch.admin.localsigner.utils.HttpTransport;
 
 /**
  * This class checks online for updates of LocalSigner.
@@ -60,14 +57,8 @@ public class UpdateQuery implements Runnable
 
     try
     {
-      HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-      conn.setReadTimeout(10000);
-      conn.setConnectTimeout(10000);
-
-      int statusCode = conn.getResponseCode();
-      LOGGER.debug("Status code: " + statusCode);
-      InputStream updateXml = conn.getInputStream();
-      byte[] xmlData = IOUtils.toByteArray(updateXml);
+      // a public host, the CAs of the JVM are trusted
+      byte[] xmlData = HttpTransport.getWithDefaultTrust(url);
       LOGGER.info("Working Internet connection");
       connStatus = ConnectionStatus.AVAILABLE;
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.utils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.config.resources.SecurityResources;
+
+/**
+ * The HTTP transport shared by the clients of the online services (validator,
+ * notary and cantonal seal lists, update check).
+ * <p>
+ * The connections are pooled and kept alive, and all clients use the same TLS
+ * context with the internal trust store, so a connection or at least the TLS
+ * session of a service is reused instead of negotiated for every request. The
+ * proxy is taken from the proxy selector of the JVM on every request, so it
+ * follows the proxy configuration like every other connection.
+ * <p>
+ * Public hosts which are not in the internal trust store, like the update
+ * check, are read with a second pool that trusts the CAs of the JVM.
+ */
+public final class HttpTransport
+{
+  private static final Logger LOGGER = Logger.getLogger(HttpTransport.class);
+
+  static final int MAX_CONNECTIONS = 20;
+
+  static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+  static final int CONNECT_TIMEOUT = 10000;
+
+  static final int READ_TIMEOUT = 60000;
+
+  // idle connections are closed before the server or the proxy drops them
+  private static final int MAX_IDLE_SECONDS = 30;
+
+  private static CloseableHttpClient client;
+
+  private static CloseableHttpClient defaultTrustClient;
+
+  private static SSLContext sslContext;
+
+  private HttpTransport()
+  {
+    // hide constructor for utility class
+  }
+
+  /**
+   * @return the shared client with the internal trust store, must not be
+   *         closed by the caller
+   */
+  public static synchronized CloseableHttpClient getClient()
+  {
+    if (client == null)
+    {
+      client = createClient(new SSLConnectionSocketFactory(getSslContext(),
+          SSLConnectionSocketFactory.getDefaultHostnameVerifier()));
+      LOGGER.debug("HTTP transport created");
+    }
+    return client;
+  }
+
+  /**
+   * @return the shared client with the trusted CAs of the JVM, for public
+   *         hosts, must not be closed by the caller
+   */
+  public static synchronized CloseableHttpClient getDefaultTrustClient()
+  {
+    if (defaultTrustClient == null)
+    {
+      defaultTrustClient = createClient(SSLConnectionSocketFactory.getSystemSocketFactory());
+      LOGGER.debug("HTTP transport with default trust created");
+    }
+    return defaultTrustClient;
+  }
+
+  private static CloseableHttpClient createClient(final SSLConnectionSocketFactory ssl)
+  {
+    Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory()).register("https", ssl).build();
+
+    PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager(registry);
+    connections.setMaxTotal(MAX_CONNECTIONS);
+    connections.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+
+    RequestConfig timeouts = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT)
+        .setConnectionRequestTimeout(CONNECT_TIMEOUT).setSocketTimeout(READ_TIMEOUT).build();
+
+    return HttpClients.custom().setConnectionManager(connections).setDefaultRequestConfig(timeouts)
+        .evictExpiredConnections().evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS).useSystemProperties()
+        .setRoutePlanner(new SystemDefaultRoutePlanner(null)).build();
+  }
+
+  /**
+   * @return the TLS context of all online services, with the internal trust
+   *         store. Its TLS sessions are reused.
+   */
+  public static synchronized SSLContext getSslContext()
+  {
+    if (sslContext == null)
+    {
+      sslContext = SecurityResources.createHttpsSSLContext(null);
+    }
+    return sslContext;
+  }
+
+  /**
+   * Reads a resource of an online service with GET, trusting the internal
+   * trust store.
+   *
+   * @param url
+   *          the resource
+   * @return the content
+   * @throws IOException
+   *           if the resource cannot be read or the request failed
+   */
+  public static byte[] get(final String url) throws IOException
+  {
+    return get(getClient(), url);
+  }
+
+  /**
+   * Reads a resource of a public host with GET, trusting the CAs of the JVM.
+   *
+   * @param url
+   *          the resource
+   * @return the content
+   * @throws IOException
+   *           if the resource cannot be read or the request failed
+   */
+  public static byte[] getWithDefaultTrust(final String url) throws IOException
+  {
+    return get(getDefaultTrustClient(), url);
+  }
+
+  private static byte[] get(final CloseableHttpClient httpClient, final String url) throws IOException
+  {
+    CloseableHttpResponse response = httpClient.execute(new HttpGet(url));
+    try
+    {
+      int status = response.getStatusLine().getStatusCode();
+      LOGGER.debug("Status code " + status + " for " + url);
+      HttpEntity entity = response.getEntity();
+      if (status < 200 || status >= 300)
+      {
+        // consumed, so the connection can be reused
+        EntityUtils.consume(entity);
+        throw new IOException("Status " + status + " returned for GET by " + url);
+      }
+      return entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+    } finally
+    {
+      response.close();
+    }
+  }
+}
@@ -19,12 +19,11 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSocketFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.log4j.Logger;
 import ch.admin.localsigner.config.ApplicationConfiguration;
-import ch.admin.localsigner.config.resources.SecurityResources;
-import java.net.MalformedURLException;
 
 /**
  * Tests if online services are available.
@@ -50,16 +49,21 @@ public class OnlineServices
   }
 
   /**
-   * tests if the URL is reachable.
+   * tests if the URL is reachable, over the shared {@link HttpTransport}.
    */
   private boolean exists(String urlToCheck)
+  {
+    return exists(HttpTransport.getClient(), urlToCheck);
+  }
+
+  private boolean exists(CloseableHttpClient client, String urlToCheck)
   {
     try
     {
-      HttpURLConnection.setFollowRedirects(false);
-      HttpURLConnection con = getConfiguredSslConnection(urlToCheck);
-      con.setRequestMethod("HEAD");
-      con.connect();
+      HttpHead head = new HttpHead(urlToCheck);
+      head.setConfig(RequestConfig.custom().setConnectTimeout(DEFAULT_CONNECTION_TIMEOUT)
+          .setConnectionRequestTimeout(DEFAULT_CONNECTION_TIMEOUT).setSocketTimeout(DEFAULT_READ_TIMEOUT).build());
+      client.execute(head).close();
       LOGGER.debug("The connect was successful for the url: " + urlToCheck);
       return true;
     } catch (Exception e)
@@ -70,33 +74,11 @@ public class OnlineServices
   }
 
   /**
-   * Returns a connection to the given URL using the internal truststore. Uses a DEFAULT_READ_TIMEOUT and
-   * DEFAULT_CONNECTION_TIMEOUT as defined as class variables.
-   * @param url URL to connect to
-   * @return a configured HttpURLConnection
-   * @throws MalformedURLException
-   * @throws IOException
+   * The update check is read with the trusted CAs of the JVM, so is its probe.
    */
-  public HttpURLConnection getConfiguredSslConnection(String url)
-      throws MalformedURLException, IOException
-  {
-      HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
-      con.setInstanceFollowRedirects(FOLLOW_REDIRECT);
-
-      SSLSocketFactory sslSocketFactory = getSSLSocketFactory();
-      if (sslSocketFactory != null && con instanceof HttpsURLConnection)
-      {
-        ((HttpsURLConnection) con).setSSLSocketFactory(sslSocketFactory);
-      }
-      con.setReadTimeout(DEFAULT_READ_TIMEOUT);
-      con.setConnectTimeout(DEFAULT_CONNECTION_TIMEOUT);
-
-      return con;
-  }
-
   public boolean isUpdateCheckUp()
   {
-    return exists(config.getUpdateCheckUrl());
+    return exists(HttpTransport.getDefaultTrustClient(), config.getUpdateCheckUrl());
   }
 
   public boolean isOnlineValidatorUp()
@@ -109,20 +91,6 @@ public class OnlineServices
     return exists(config.getFunktionsnachweisUrl());
   }
 
-  /** may return null */
-  private SSLSocketFactory getSSLSocketFactory()
-  {
-    SSLSocketFactory sslSocketFactory = null;
-    try
-    {
-      sslSocketFactory = SecurityResources.createSSLFactory();
-    } catch (Exception ex)
-    {
-      LOGGER.warn("unable to load truststore", ex);
-    }
-    return sslSocketFactory;
-  }
-
   /**
    * BIT TSA does not respond to http GET or HEAD request with a good http code,
    * so we need to do a simple POST with dummy data and mime type set.
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.config.ApplicationConfiguration;
+import ch.admin.localsigner.config.TsaConfiguration;
+
+/**
+ * Probes the online services in the background and keeps their state, so the
+ * GUI reads it without waiting for the network.
+ * <p>
+ * A service that is up is probed again every {@link #CHECK_INTERVAL}
+ * milliseconds. A service that is down is probed again after
+ * {@link #RETRY_DELAY} milliseconds, doubled with every failure up to
+ * {@link #CHECK_INTERVAL}. The listeners are told every change of a state, in
+ * the thread of the monitor.
+ */
+public final class ServiceHealthMonitor
+{
+  private static final Logger LOGGER = Logger.getLogger(ServiceHealthMonitor.class);
+
+  public static final String VALIDATOR = "validator";
+
+  public static final String NOTARY = "notary";
+
+  public static final String UPDATE_CHECK = "updateCheck";
+
+  private static final String TSA_PREFIX = "tsa:";
+
+  static final long CHECK_INTERVAL = 5 * 60 * 1000L;
+
+  static final long RETRY_DELAY = 10 * 1000L;
+
+  // probes wait up to the timeouts, a slow service does not delay the others
+  private static final int WORKERS = 2;
+
+  private static final ServiceHealthMonitor INSTANCE = new ServiceHealthMonitor();
+
+  /**
+   * State of a service
+   */
+  public enum State
+  {
+    UNKNOWN, UP, DOWN
+  }
+
+  /**
+   * Told about the changed state of a service
+   */
+  public interface Listener
+  {
+    void stateChanged(String service, State state);
+  }
+
+  /**
+   * Probe of a service
+   */
+  abstract static class Probe
+  {
+    private final String service;
+
+    Probe(final String service)
+    {
+      this.service = service;
+    }
+
+    String getService()
+    {
+      return service;
+    }
+
+    abstract boolean isUp();
+  }
+
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(WORKERS, new ThreadFactory()
+  {
+    private final AtomicInteger number = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r)
+    {
+      Thread thread = new Thread(r, "LocalSigner service health " + number.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  private final Map<String, Probe> probes = new HashMap<String, Probe>();
+
+  private final Map<String, State> states = new HashMap<String, State>();
+
+  private final Map<String, Integer> failures = new HashMap<String, Integer>();
+
+  private final Map<String, ScheduledFuture<?>> scheduled = new HashMap<String, ScheduledFuture<?>>();
+
+  // configuration of the running probes
+  private ApplicationConfiguration config;
+
+  ServiceHealthMonitor()
+  {
+    // one instance for the application, others for the tests
+  }
+
+  public static ServiceHealthMonitor getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * @param url
+   *          URL of a time stamp authority
+   * @return name of the TSA as a service
+   */
+  public static String tsa(final String url)
+  {
+    return TSA_PREFIX + url;
+  }
+
+  /**
+   * Starts probing the services of the configuration, the services of an
+   * earlier configuration are dropped. Nothing is done if the configuration is
+   * already probed.
+   *
+   * @param config
+   *          the configuration with the URLs of the services
+   */
+  public synchronized void start(final ApplicationConfiguration config)
+  {
+    if (config == this.config)
+    {
+      return;
+    }
+    final OnlineServices services = new OnlineServices(config);
+    List<Probe> configured = new ArrayList<Probe>();
+    if (StringUtils.isNotBlank(config.getValidatorUrl()))
+    {
+      configured.add(new Probe(VALIDATOR)
+      {
+        @Override
+        boolean isUp()
+        {
+          return services.isOnlineValidatorUp();
+        }
+      });
+    }
+    if (config.isFunknachweisAktiv() && StringUtils.isNotBlank(config.getFunktionsnachweisUrl()))
+    {
+      configured.add(new Probe(NOTARY)
+      {
+        @Override
+        boolean isUp()
+        {
+          return services.isNotaryServiceUp();
+        }
+      });
+    }
+    if (StringUtils.isNotBlank(config.getUpdateCheckUrl()))
+    {
+      configured.add(new Probe(UPDATE_CHECK)
+      {
+        @Override
+        boolean isUp()
+        {
+          return services.isUpdateCheckUp();
+        }
+      });
+    }
+    for (final TsaConfiguration tsaConfig : config.getTSAConfig())
+    {
+      if (StringUtils.isNotBlank(tsaConfig.getUrl()))
+      {
+        configured.add(new Probe(tsa(tsaConfig.getUrl()))
+        {
+          @Override
+          boolean isUp()
+          {
+            return OnlineServices.isTSAReady(tsaConfig.getUrl());
+          }
+        });
+      }
+    }
+    start(configured);
+    this.config = config;
+  }
+
+  synchronized void start(final List<Probe> configured)
+  {
+    stop();
+    states.clear();
+    failures.clear();
+    for (Probe probe : configured)
+    {
+      probes.put(probe.getService(), probe);
+      schedule(probe, 0);
+    }
+  }
+
+  /**
+   * Stops probing, the last states are kept.
+   */
+  public synchronized void stop()
+  {
+    for (ScheduledFuture<?> future : scheduled.values())
+    {
+      future.cancel(false);
+    }
+    scheduled.clear();
+    // running probes are dropped
+    probes.clear();
+    config = null;
+  }
+
+  /**
+   * @param service
+   *          the service
+   * @return the last known state of the service, does not block
+   */
+  public synchronized State getState(final String service)
+  {
+    State state = states.get(service);
+    return state == null ? State.UNKNOWN : state;
+  }
+
+  /**
+   * Probes a service now, for the actions that cannot go on without it. Blocks
+   * until the service answered or timed out.
+   *
+   * @param service
+   *          the service
+   * @return the state of the service, UNKNOWN if it is not monitored
+   */
+  public State check(final String service)
+  {
+    Probe probe;
+    synchronized (this)
+    {
+      probe = probes.get(service);
+    }
+    if (probe == null)
+    {
+      return State.UNKNOWN;
+    }
+    return probe(probe);
+  }
+
+  public void addListener(final Listener listener)
+  {
+    listeners.add(listener);
+  }
+
+  public void removeListener(final Listener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @param failed
+   *          failed probes in a row
+   * @return milliseconds until the next probe
+   */
+  static long nextDelay(final int failed)
+  {
+    if (failed == 0)
+    {
+      return CHECK_INTERVAL;
+    }
+    // shifted at most until the interval is reached, no overflow
+    long delay = RETRY_DELAY;
+    for (int i = 1; i < failed && delay < CHECK_INTERVAL; i++)
+    {
+      delay *= 2;
+    }
+    return Math.min(delay, CHECK_INTERVAL);
+  }
+
+  private void schedule(final Probe probe, final long delay)
+  {
+    scheduled.put(probe.getService(), scheduler.schedule(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        probe(probe);
+      }
+    }, delay, TimeUnit.MILLISECONDS));
+  }
+
+  private State probe(final Probe probe)
+  {
+    State state;
+    try
+    {
+      state = probe.isUp() ? State.UP : State.DOWN;
+    } catch (RuntimeException e)
+    {
+      LOGGER.warn("Probe of " + probe.getService() + " failed", e);
+      state = State.DOWN;
+    }
+
+    State previous;
+    synchronized (this)
+    {
+      if (probes.get(probe.getService()) != probe)
+      {
+        // probe of an earlier configuration or stopped
+        return state;
+      }
+      previous = getState(probe.getService());
+      states.put(probe.getService(), state);
+      Integer failed = failures.get(probe.getService());
+      int count = state == State.UP ? 0 : (failed == null ? 0 : failed) + 1;
+      failures.put(probe.getService(), count);
+
+      // a probe on demand brings the next scheduled one forward or back
+      ScheduledFuture<?> next = scheduled.get(probe.getService());
+      if (next != null)
+      {
+        next.cancel(false);
+      }
+      schedule(probe, nextDelay(count));
+    }
+
+    if (previous != state)
+    {
+      LOGGER.info("Service " + probe.getService() + " is " + state);
+      for (Listener listener : listeners)
+      {
+        listener.stateChanged(probe.getService(), state);
+      }
+    }
+    return state;
+  }
+}
@@ -15,8 +15,8 @@
  */
 package ch.admin.localsigner.utils;
 
-import java.io.InputStream;
 import com.lowagie.text.pdf.PdfPKCS7;
+import ch.admin.localsigner.main.DocumentRange;
 
 /**
  * Helper class to hold content of a digital signature.
@@ -33,7 +33,7 @@ public class SignatureInfo
 
   private int revision;
 
-  private InputStream revisionData;
+  private DocumentRange revisionData;
 
   private boolean coveringWholeDocument;
 
@@ -67,12 +67,12 @@ public class SignatureInfo
     this.revision = revision;
   }
 
-  public InputStream getRevisionData()
+  public DocumentRange getRevisionData()
   {
     return revisionData;
   }
 
-  public void setRevisionData(InputStream revisionData)
+  public void setRevisionData(DocumentRange revisionData)
   {
     this.revisionData = revisionData;
   }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import ch.admin.localsigner.main.DocumentStore;
+
+/**
+ * Keeps the analyzers of the last documents by their SHA-256 checksum, so the
+ * same content is parsed, verified and validated (veraPDF) only once, no
+ * matter who asks for it (document check, viewer status, sign checks, notary
+ * checks).
+ * <p>
+ * The cache is bounded by the number of documents and their total size, the
+ * least recently used analyzers are dropped first and their readers closed. A
+ * document larger than the whole cache is analyzed but not kept. The stores
+ * stay owned by the callers; an analyzer whose store has been released is
+ * analyzed again.
+ */
+public final class AnalysisCache
+{
+  private static final Logger LOGGER = Logger.getLogger(AnalysisCache.class);
+
+  static final int MAX_ENTRIES = 8;
+
+  static final long MAX_BYTES = 128L * 1024 * 1024;
+
+  private static final AnalysisCache INSTANCE = new AnalysisCache(MAX_ENTRIES, MAX_BYTES);
+
+  private final int maxEntries;
+
+  private final long maxBytes;
+
+  // access ordered, eldest entry is the least recently used
+  private final LinkedHashMap<String, PdfAnalyzer> analyzers = new LinkedHashMap<String, PdfAnalyzer>(16, 0.75f,
+      true);
+
+  private long bytes;
+
+  AnalysisCache(final int maxEntries, final long maxBytes)
+  {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  public static AnalysisCache getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * @param document
+   *          the document, stays owned by the caller
+   * @return the analyzer of the content of the document
+   * @throws IOException
+   *           if the document is not a readable PDF
+   */
+  public PdfAnalyzer get(final DocumentStore document) throws IOException
+  {
+    String checksum = document.getChecksum();
+    synchronized (this)
+    {
+      PdfAnalyzer cached = analyzers.get(checksum);
+      if (cached != null && !cached.getDocument().isReleased())
+      {
+        LOGGER.debug("Analysis of " + checksum + " found in cache");
+        return cached;
+      }
+    }
+
+    // parse without holding the lock
+    PdfAnalyzer analyzer = new PdfAnalyzer(document);
+    if (document.size() > maxBytes)
+    {
+      LOGGER.debug("Analysis of " + checksum + " too large for the cache");
+      return analyzer;
+    }
+    synchronized (this)
+    {
+      PdfAnalyzer cached = analyzers.get(checksum);
+      if (cached != null && !cached.getDocument().isReleased())
+      {
+        // analyzed by another thread in the meantime
+        return cached;
+      }
+      put(checksum, analyzer);
+      return analyzer;
+    }
+  }
+
+  /**
+   * Looks up the analyzer of a content given as array, for callers which only
+   * get the content (notary checks). A content not in the cache is analyzed
+   * but not kept, the cache must not hold on to the caller's array.
+   *
+   * @param content
+   *          the document content
+   * @return the analyzer of the content
+   * @throws IOException
+   *           if the document is not a readable PDF
+   */
+  public PdfAnalyzer get(final byte[] content) throws IOException
+  {
+    DocumentStore document = DocumentStore.wrap(content);
+    String checksum = document.getChecksum();
+    synchronized (this)
+    {
+      PdfAnalyzer cached = analyzers.get(checksum);
+      if (cached != null && !cached.getDocument().isReleased())
+      {
+        LOGGER.debug("Analysis of " + checksum + " found in cache");
+        return cached;
+      }
+    }
+    return new PdfAnalyzer(document);
+  }
+
+  /**
+   * Drops all analyzers, e.g. when the configuration of the checks changed.
+   */
+  public synchronized void clear()
+  {
+    for (PdfAnalyzer analyzer : analyzers.values())
+    {
+      analyzer.close();
+    }
+    analyzers.clear();
+    bytes = 0;
+  }
+
+  synchronized int size()
+  {
+    return analyzers.size();
+  }
+
+  private void put(final String checksum, final PdfAnalyzer analyzer)
+  {
+    PdfAnalyzer previous = analyzers.put(checksum, analyzer);
+    if (previous != null)
+    {
+      bytes -= previous.getDocument().size();
+      previous.close();
+    }
+    bytes += analyzer.getDocument().size();
+
+    Iterator<Map.Entry<String, PdfAnalyzer>> eldest = analyzers.entrySet().iterator();
+    // the newest analyzer fits, it is never dropped
+    while ((analyzers.size() > maxEntries || bytes > maxBytes) && analyzers.size() > 1)
+    {
+      Map.Entry<String, PdfAnalyzer> entry = eldest.next();
+      LOGGER.debug("Analysis of " + entry.getKey() + " dropped from cache");
+      bytes -= entry.getValue().getDocument().size();
+      entry.getValue().close();
+      eldest.remove();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs PDF/A validations in the background, e.g. as soon as a document is
+ * opened. A validation nobody waits for any more is skipped. veraPDF
+ * cannot be interrupted, a cancelled validation which is already running is
+ * finished and its results are kept by the analyzer; the second thread makes
+ * sure the next document does not wait for it.
+ */
+final class BackgroundPdfAValidation
+{
+  private static final Logger LOGGER = Logger.getLogger(BackgroundPdfAValidation.class);
+
+  private static final int THREADS = 2;
+
+  private static final ExecutorService EXECUTOR;
+
+  static
+  {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+          private final AtomicInteger number = new AtomicInteger();
+
+          @Override
+          public Thread newThread(final Runnable r)
+          {
+            Thread thread = new Thread(r, "LocalSigner PDF/A validation " + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    EXECUTOR = executor;
+  }
+
+  private BackgroundPdfAValidation()
+  {
+    // hide constructor for utility class
+  }
+
+  /**
+   * @param analyzer
+   *          the document
+   * @return completed with the results of the document
+   */
+  static CompletableFuture<PdfAValidationResults> start(final PdfAnalyzer analyzer)
+  {
+    final CompletableFuture<PdfAValidationResults> validation = new CompletableFuture<PdfAValidationResults>();
+    EXECUTOR.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if (analyzer.skipBackgroundValidation(validation))
+        {
+          LOGGER.debug("PDF/A validation cancelled before it started");
+          return;
+        }
+        long start = System.currentTimeMillis();
+        try
+        {
+          validation.complete(analyzer.getValidationResults());
+          LOGGER.debug("PDF/A validation took " + (System.currentTimeMillis() - start) + " ms");
+        } catch (RuntimeException e)
+        {
+          LOGGER.error("PDF/A validation failed", e);
+          validation.completeExceptionally(e);
+        }
+      }
+    });
+    return validation;
+  }
+}
@@ -23,11 +23,7 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.verapdf.core.EncryptedPdfException;
 import org.verapdf.core.ModelParsingException;
 import org.verapdf.core.ValidationException;
-import org.verapdf.pdfa.Foundries;
 import org.verapdf.pdfa.PDFAParser;
-import org.verapdf.pdfa.PDFAValidator;
-import org.verapdf.pdfa.VeraGreenfieldFoundryProvider;
-import org.verapdf.pdfa.flavours.PDFAFlavour;
 import org.verapdf.pdfa.results.ValidationResult;
 
 /**
@@ -42,17 +38,28 @@ public class OfflinePdfValidator
 
   private PdfAValidationResults results = new PdfAValidationResults();
 
+  private boolean validated;
+
   private final byte[] fileBytes;
 
   public OfflinePdfValidator(final byte[] fileBytes) throws IOException
   {
     Security.addProvider(new BouncyCastleProvider());
 
-    VeraGreenfieldFoundryProvider.initialise();
+    initialiseFoundry();
 
     this.fileBytes = fileBytes;
   }
 
+  /**
+   * Loads the veraPDF foundry once, e.g. in the background at startup so the
+   * first validation does not have to wait for it.
+   */
+  public static void initialiseFoundry()
+  {
+    PdfAValidationEngine.getInstance();
+  }
+
   /**
    * Start the VeraPdf-Validation and set the validationResult, the
    * PdfA-Flavour, the error boolean and the supportedPdfA boolean in the
@@ -64,7 +71,8 @@ public class OfflinePdfValidator
   protected synchronized void validatePdfFile()
   {
 
-    try (PDFAParser parser = Foundries.defaultInstance().createParser(new ByteArrayInputStream(fileBytes)))
+    PdfAValidationEngine engine = PdfAValidationEngine.getInstance();
+    try (PDFAParser parser = engine.createParser(new ByteArrayInputStream(fileBytes)))
     {
       results.setParsedPdfAFlavour(parser.getFlavour());
       LOGGER.debug("Parser parsed PdfAFlavour: " + parser.getFlavour());
@@ -73,23 +81,7 @@ public class OfflinePdfValidator
         return;
       }
 
-      PDFAValidator validator = Foundries.defaultInstance().createFailFastValidator(parser.getFlavour(), 20);
-      ValidationResult vr = validator.validate(parser);
-      if (!vr.isCompliant())
-      {
-        if (vr.getPDFAFlavour() == PDFAFlavour.PDFA_2_A)
-        {
-          LOGGER.debug("We found a PDF/A-2a which does not validate, so we try to validate with PDF/A-2u");
-          validator = Foundries.defaultInstance().createFailFastValidator(PDFAFlavour.PDFA_2_U, 20);
-          vr = validator.validate(parser);
-        }
-        if (vr.getPDFAFlavour() == PDFAFlavour.PDFA_1_A)
-        {
-          LOGGER.debug("We found a PDF/A-1a which does not validate, so we try to validate with PDF/A-1b");
-          validator = Foundries.defaultInstance().createFailFastValidator(PDFAFlavour.PDFA_1_B, 20);
-          vr = validator.validate(parser);
-        }
-      }
+      ValidationResult vr = engine.validate(parser);
       results.setVeraPdfValidationResult(vr);
 
     } catch (ValidationException | ModelParsingException | EncryptedPdfException | IOException ex)
@@ -100,18 +92,18 @@ public class OfflinePdfValidator
   }
 
   /**
-   * Check if the VeraPdf-validationResult is Null, if the
-   * VeraPdf-validationResult is Null its start the file validation with
-   * VeraPDF.
+   * Validates the file with VeraPDF on the first call.
    *
    * @return the complete Validationresults (List VeraPdf-Validationresult,
    *         boolean isSupportedPdfA, boolean isError, PDFFlavour)
    */
   protected synchronized PdfAValidationResults getValidationResults()
   {
-    if (results.validationNeeded())
+    if (!validated)
     {
+      // unsupported and unreadable documents are not parsed again
       validatePdfFile();
+      validated = true;
     }
     return results;
   }
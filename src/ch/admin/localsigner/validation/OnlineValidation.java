@@ -17,9 +17,8 @@ package ch.admin.localsigner.validation;
 
 import static ch.admin.localsigner.validation.OnlineValidator.UPREG_FORMULAR_MANDANT;
 
-import ch.admin.localsigner.config.resources.SecurityResources;
 import ch.admin.localsigner.main.LocalSigner;
-import ch.admin.localsigner.utils.SignatureInfo;
+import ch.admin.localsigner.utils.HttpTransport;
 import ch.admin.suis.client.core.service.RestServiceClient;
 import ch.admin.suis.client.core.service.ServiceConfig;
 import ch.admin.suis.client.core.service.to.StreamRequest;
@@ -32,11 +31,21 @@ import javax.net.ssl.SSLContext;
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Checks a signature on the signature validator using the REST client.
@@ -50,6 +59,25 @@ public class OnlineValidation
 
   private final static Logger LOGGER = Logger.getLogger(OnlineValidation.class);
 
+  /**
+   * Signatures validated at the same time, each request uploads the document
+   */
+  static final int CONCURRENT_REQUESTS = 4;
+
+  private static final ExecutorService REQUESTS = Executors.newFixedThreadPool(CONCURRENT_REQUESTS,
+      new ThreadFactory()
+      {
+        private final AtomicInteger number = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r)
+        {
+          Thread thread = new Thread(r, "LocalSigner validator request " + number.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
   /**
    * Perform a discrete "document" validation with all signatures if possible.
    * There is no validator tenant accepting upreg formular signatures followed
@@ -75,7 +103,7 @@ public class OnlineValidation
 
     if (UPREG_FORMULAR_MANDANT.equals(mainMandant))
     {
-      allResults = validateSingleRequestSignatures(pdfAnalyzer.getFileContent(), pdfAnalyzer.getSignatures());
+      allResults = validateSingleRequestSignatures(pdfAnalyzer.getFileContent(), pdfAnalyzer.getSignatureNames());
 
     } else
     {
@@ -108,40 +136,100 @@ public class OnlineValidation
 
   }
 
+  /**
+   * Validates every signature with its own request, the first one against the
+   * upreg formular tenant and the others against the default tenant. The
+   * requests are sent in parallel, at most {@link #CONCURRENT_REQUESTS} at a
+   * time; the signature reports are in the order of the revisions.
+   *
+   * @param revisionPdfBytes
+   * @param signatureNames
+   *          names of the signatures by revision
+   * @return ValidationResponseV2 with the reports of all signatures
+   * @throws NoSuchAlgorithmException
+   * @throws IOException
+   */
   protected static ValidationResponseV2 validateSingleRequestSignatures(
-      byte[] revisionPdfBytes, Map<Integer, SignatureInfo> signatureEntries)
+      final byte[] revisionPdfBytes, Map<Integer, String> signatureNames)
       throws NoSuchAlgorithmException, IOException
   {
-    Iterator<Integer> orderedSignatureKeys = new TreeSet<Integer>(signatureEntries.keySet()).iterator();
-
-    RestServiceClient client = createValidationServiceClient();
-
-    SignatureInfo firstFormularInfoValue = signatureEntries.get(orderedSignatureKeys.next());
-    ValidationResponseV2 allResults = client.validateOneSignature(
-        revisionPdfBytes, UPREG_FORMULAR_MANDANT, false, firstFormularInfoValue.getName(),
-        "doc", null, null, "de", null);
+    Iterator<Integer> orderedSignatureKeys = new TreeSet<Integer>(signatureNames.keySet()).iterator();
 
+    // all requests share the same content, it is not copied
+    List<Future<ValidationResponseV2>> requests = new ArrayList<Future<ValidationResponseV2>>();
+    String mandant = UPREG_FORMULAR_MANDANT;
     while (orderedSignatureKeys.hasNext())
     {
-      SignatureInfo currentSignatureInfoValue = signatureEntries.get(orderedSignatureKeys.next());
-
-      String qualifiedMandant = LocalSigner.appConfig.getDefaultTenant();
-      checkNonEmptyMandant(qualifiedMandant);
-      ValidationResponseV2 tempResult = client.validateOneSignature(
-          revisionPdfBytes, qualifiedMandant, false, currentSignatureInfoValue.getName(),
-          "doc", null, null, "de", null);
+      final String name = signatureNames.get(orderedSignatureKeys.next());
+      final String requestMandant = mandant;
+      checkNonEmptyMandant(requestMandant);
+      requests.add(REQUESTS.submit(new Callable<ValidationResponseV2>()
+      {
+        @Override
+        public ValidationResponseV2 call() throws NoSuchAlgorithmException, IOException
+        {
+          RestServiceClient client = createValidationServiceClient();
+          return client.validateOneSignature(revisionPdfBytes, requestMandant, false, name,
+              "doc", null, null, "de", null);
+        }
+      }));
+      mandant = LocalSigner.appConfig.getDefaultTenant();
+    }
 
-      allResults.getFileReports().get(0).getSignatureReports().add(
-          tempResult.getFileReports().get(0).getSignatureReports().get(0)
-        );
+    try
+    {
+      ValidationResponseV2 allResults = getResponse(requests.get(0));
+      for (Future<ValidationResponseV2> request : requests.subList(1, requests.size()))
+      {
+        ValidationResponseV2 tempResult = getResponse(request);
+        allResults.getFileReports().get(0).getSignatureReports().add(
+            tempResult.getFileReports().get(0).getSignatureReports().get(0)
+          );
+      }
+      return allResults;
+    } finally
+    {
+      // e.g. after a failed request or when the validation is cancelled
+      for (Future<ValidationResponseV2> request : requests)
+      {
+        request.cancel(true);
+      }
     }
+  }
 
-    return allResults;
+  private static ValidationResponseV2 getResponse(final Future<ValidationResponseV2> request)
+      throws NoSuchAlgorithmException, IOException
+  {
+    try
+    {
+      return request.get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Online validation interrupted");
+    } catch (ExecutionException e)
+    {
+      Throwable cause = e.getCause();
+      if (cause instanceof NoSuchAlgorithmException)
+      {
+        throw (NoSuchAlgorithmException) cause;
+      }
+      if (cause instanceof IOException)
+      {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException)
+      {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Online validation failed", cause);
+    }
   }
 
   protected static RestServiceClient createValidationServiceClient()
   {
-    SSLContext httpsSSLContext = SecurityResources.createHttpsSSLContext(null);
+    // shared, the TLS sessions with the validator are reused
+    SSLContext httpsSSLContext = HttpTransport.getSslContext();
 
     String url = LocalSigner.appConfig.getValidatorUrl();
     ServiceConfig serviceConfig = new ServiceConfig(url);
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import ch.admin.suis.client.core.service.to.FileReport;
+import ch.admin.suis.client.core.service.to.ReportRevocation;
+import ch.admin.suis.client.core.service.to.RevocationState;
+import ch.admin.suis.client.core.service.to.SignatureReport;
+import ch.admin.suis.client.core.service.to.ValidationResponseV2;
+
+/**
+ * Keeps the responses of the signature validator by the SHA-256 checksum of
+ * the document, the tenant and the validator, so a document opened again
+ * shows its online validation right away.
+ * <p>
+ * A response is fresh for the configured time to live, counted from the
+ * oldest revocation check in it: a signature found not revoked may be revoked
+ * since. Responses with an unknown revocation state are not kept, the next
+ * validation may reach the revocation service.
+ */
+final class OnlineValidationCache
+{
+  private static final Logger LOGGER = Logger.getLogger(OnlineValidationCache.class);
+
+  static final int MAX_ENTRIES = 100;
+
+  private static final OnlineValidationCache INSTANCE = new OnlineValidationCache(MAX_ENTRIES);
+
+  private final Map<String, CachedResponse> entries;
+
+  OnlineValidationCache(final int maxEntries)
+  {
+    // access ordered, eldest entry is the least recently used
+    entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CachedResponse> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  static OnlineValidationCache getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * @param checksum
+   *          SHA-256 of the document
+   * @param tenant
+   *          main tenant of the validation
+   * @param validatorUrl
+   *          the validator
+   * @return key of the validation
+   */
+  static String key(final String checksum, final String tenant, final String validatorUrl)
+  {
+    return checksum + "|" + tenant + "|" + validatorUrl;
+  }
+
+  /**
+   * @param key
+   *          key of the validation
+   * @return the last response, fresh or not, null if there is none
+   */
+  synchronized CachedResponse get(final String key)
+  {
+    return entries.get(key);
+  }
+
+  /**
+   * Keeps a response if it can be shown again.
+   *
+   * @param key
+   *          key of the validation
+   * @param response
+   *          response of the validator
+   * @param timeToLive
+   *          milliseconds the response is fresh, nothing is kept if 0
+   * @return true if the response is kept
+   */
+  synchronized boolean put(final String key, final ValidationResponseV2 response, final long timeToLive)
+  {
+    long checked = getOldestRevocationCheck(response, System.currentTimeMillis());
+    if (timeToLive <= 0 || checked < 0)
+    {
+      entries.remove(key);
+      return false;
+    }
+    entries.put(key, new CachedResponse(response, checked + timeToLive));
+    LOGGER.debug("Online validation kept until " + new Date(checked + timeToLive));
+    return true;
+  }
+
+  /**
+   * @param response
+   *          response of the validator
+   * @param now
+   *          the current time
+   * @return time of the oldest check of a signature found not revoked, now if
+   *         there is none, -1 if the response must not be kept
+   */
+  static long getOldestRevocationCheck(final ValidationResponseV2 response, final long now)
+  {
+    if (response.getError() != null || response.getFileReports().isEmpty())
+    {
+      return -1;
+    }
+    long checked = now;
+    for (FileReport file : response.getFileReports())
+    {
+      for (SignatureReport signature : file.getSignatureReports())
+      {
+        ReportRevocation revocation = signature.getRevocationDetails();
+        if (revocation == null)
+        {
+          continue;
+        }
+        if (revocation.getState() == RevocationState.UNKNOWN)
+        {
+          return -1;
+        }
+        // a revoked certificate stays revoked
+        if (revocation.getState() == RevocationState.NOT_REVOKED && revocation.getDate() != null)
+        {
+          checked = Math.min(checked, revocation.getDate().getTime());
+        }
+      }
+    }
+    return checked;
+  }
+
+  /**
+   * A response of the validator
+   */
+  static final class CachedResponse
+  {
+    private final ValidationResponseV2 response;
+
+    private final long expires;
+
+    CachedResponse(final ValidationResponseV2 response, final long expires)
+    {
+      this.response = response;
+      this.expires = expires;
+    }
+
+    ValidationResponseV2 getResponse()
+    {
+      return response;
+    }
+
+    /**
+     * @return false if the response should be validated again
+     */
+    boolean isFresh()
+    {
+      return System.currentTimeMillis() < expires;
+    }
+  }
+}
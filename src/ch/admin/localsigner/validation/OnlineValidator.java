@@ -15,7 +15,15 @@
  */
 package ch.admin.localsigner.validation;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.widgets.TreeItem;
 import ch.admin.localsigner.gui.MainGUI;
@@ -28,12 +36,20 @@ import ch.admin.suis.client.core.service.to.ValidationResponseV2;
 
 /**
  * Checks a signature on the signature validator using the REST client. This validator is used by the SideBar.
+ * <p>
+ * The validation runs on its own executor, never on the UI thread, and the results are handed to the SideBar with
+ * asyncExec. It is cancelled when the SideBar shows another document or when the validator does not answer within
+ * the configured timeout.
+ * <p>
+ * The responses are kept in the {@link OnlineValidationCache}. A document validated before shows the kept response
+ * right away; if it is no longer fresh, the document is validated again in the background and the SideBar is
+ * updated if the validator changed its mind.
  *
  * @author Rafael Wampfler
  * @author $Author$
  * @version $Revision$
  */
-public class OnlineValidator extends Thread
+public class OnlineValidator implements Runnable
 {
 
   public static final String UPREG_FORMULAR_MANDANT = "upreg-formular";
@@ -42,6 +58,23 @@ public class OnlineValidator extends Thread
 
   private static final Logger LOGGER = Logger.getLogger(OnlineValidator.class);
 
+  private static final ThreadFactory THREADS = new ThreadFactory()
+  {
+    private final AtomicInteger number = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r)
+    {
+      Thread thread = new Thread(r, "LocalSigner online validation " + number.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(THREADS);
+
+  private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(THREADS);
+
   private final List<TreeItem> signatureItems;
 
   private final PdfAnalyzer analyzer;
@@ -52,6 +85,18 @@ public class OnlineValidator extends Thread
 
   private PleaseWaitDialog waitDialog;
 
+  private Future<?> task;
+
+  private volatile boolean cancelled;
+
+  private String mainTenant;
+
+  // null if the response cannot be kept
+  private String cacheKey;
+
+  // the response shown from the cache, validated again in the background
+  private ValidationResponseV2 shownFromCache;
+
   public OnlineValidator(MainGUI maingui, List<TreeItem> signatureItems, PdfAnalyzer analyzer,
       List<String> signatureMandants)
   {
@@ -61,29 +106,91 @@ public class OnlineValidator extends Thread
     this.maingui = maingui;
   }
 
-  @Override
-  public void run()
+  /**
+   * Starts the validation in the background. Called on the UI thread.
+   */
+  public void start()
   {
-    maingui.getMainshell().getDisplay().syncExec(new Runnable()
+    mainTenant = getMainTenant(signatureMandants);
+    cacheKey = getCacheKey();
+    OnlineValidationCache.CachedResponse cached = cacheKey == null ? null
+        : OnlineValidationCache.getInstance().get(cacheKey);
+    if (cached != null)
     {
+      LOGGER.debug("Online validation found in cache, fresh: " + cached.isFresh());
+      show(cached.getResponse());
+      if (cached.isFresh())
+      {
+        return;
+      }
+      shownFromCache = cached.getResponse();
+    }
+    else
+    {
+      waitDialog = new PleaseWaitDialog(maingui, LocalSigner
+          .i18n("validation.progressdialog.title"), LocalSigner
+          .i18n("validation.progressdialog.message"));
+    }
 
+    final int timeout = LocalSigner.appConfig.getValidatorTimeout();
+    synchronized (this)
+    {
+      task = EXECUTOR.submit(this);
+    }
+    TIMEOUTS.schedule(new Runnable()
+    {
       @Override
       public void run()
       {
-        waitDialog = new PleaseWaitDialog(maingui, LocalSigner
-            .i18n("validation.progressdialog.title"), LocalSigner
-            .i18n("validation.progressdialog.message"));
-        // "Die Online-Validierung der Signaturen läuft gerade und kann einige Zeit in Anspruch nehmen.");
+        if (!isDone())
+        {
+          LOGGER.warn("Online validation did not finish within " + timeout + " s, cancelled");
+          cancel();
+          if (shownFromCache == null)
+          {
+            Message.warning(maingui.getMainshell(), LocalSigner.i18n("validation.timeout"));
+          }
+        }
+      }
+    }, timeout, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Stops waiting for the validator, its results are not shown. Can be called
+   * on any thread.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+    synchronized (this)
+    {
+      if (task != null)
+      {
+        task.cancel(true);
       }
-    });
+    }
+    closeWaitDialog();
+  }
 
+  private synchronized boolean isDone()
+  {
+    return task == null || task.isDone();
+  }
+
+  @Override
+  public void run()
+  {
     try
     {
-      String mainTenant = getMainTenant(signatureMandants);
       long start = System.currentTimeMillis();
       final ValidationResponseV2 results = OnlineValidation.validateSignatures(
           analyzer, mainTenant);
       long duration = System.currentTimeMillis() - start;
+      if (cancelled)
+      {
+        LOGGER.debug("Online validation cancelled, results dropped");
+        return;
+      }
       if (results.getError() != null)
       {
         LOGGER.error("Validator error: " + results.getError());
@@ -91,42 +198,141 @@ public class OnlineValidator extends Thread
       LOGGER.info(results.isValid() + " (duration: " + duration
           + "ms, tenant: " + mainTenant + ")");
 
-      if (results.getFileReports().isEmpty()) {
-        // the validator has no such mandant
-        Message.error(maingui.getMainshell(), results.getError());
-        waitDialog.close();
-        return;
+      boolean kept = false;
+      if (cacheKey != null)
+      {
+        kept = OnlineValidationCache.getInstance().put(cacheKey, results,
+            TimeUnit.SECONDS.toMillis(LocalSigner.appConfig.getValidatorCacheTtl()));
       }
 
-      for (int signatureIndex = 0; signatureIndex < signatureItems.size(); signatureIndex++)
+      if (shownFromCache != null)
       {
-        final TreeItem currentItem = signatureItems.get(signatureIndex);
-        final String actualMandant = signatureMandants.get(signatureIndex);
-        final SignatureReport sigReport = results.getFileReports().get(0)
-            .getSignatureReports().get(signatureIndex);
-        for (ShortReport r : sigReport.getReports())
+        if (kept && hasChanged(shownFromCache, results))
         {
-          LOGGER.debug(r.getType() + ": " + r.getValid() + ", " + r.getMessage());
+          LOGGER.info("Online validation changed since it was kept, updating");
+          refreshSidebar();
         }
+        return;
+      }
 
-        maingui.getMainshell().getDisplay().asyncExec(new Runnable()
-        {
+      show(results);
+    } catch (Exception e)
+    {
+      if (!cancelled)
+      {
+        LOGGER.error("Cannot validate signature online with ", e);
+      }
+    } finally
+    {
+      closeWaitDialog();
+    }
+  }
+
+  /**
+   * Hands the results to the SideBar.
+   */
+  private void show(final ValidationResponseV2 results)
+  {
+    if (results.getFileReports().isEmpty()) {
+      // the validator has no such mandant
+      Message.error(maingui.getMainshell(), results.getError());
+      return;
+    }
+
+    for (int signatureIndex = 0; signatureIndex < signatureItems.size(); signatureIndex++)
+    {
+      final TreeItem currentItem = signatureItems.get(signatureIndex);
+      final String actualMandant = signatureMandants.get(signatureIndex);
+      final SignatureReport sigReport = results.getFileReports().get(0)
+          .getSignatureReports().get(signatureIndex);
+      for (ShortReport r : sigReport.getReports())
+      {
+        LOGGER.debug(r.getType() + ": " + r.getValid() + ", " + r.getMessage());
+      }
 
-          @Override
-          public void run()
+      maingui.getMainshell().getDisplay().asyncExec(new Runnable()
+      {
+
+        @Override
+        public void run()
+        {
+          if (!cancelled && !currentItem.isDisposed())
           {
             maingui.getSidebar().updateOnline(currentItem, sigReport, actualMandant);
-            waitDialog.close();
           }
+        }
 
-        });
+      });
+    }
+  }
+
+  private void refreshSidebar()
+  {
+    maingui.getMainshell().getDisplay().asyncExec(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        // the kept response is fresh now and shown by the new validator
+        if (!cancelled)
+        {
+          maingui.getSidebar().update(analyzer);
+        }
       }
-    } catch (Exception e)
+    });
+  }
+
+  private static boolean hasChanged(final ValidationResponseV2 shown, final ValidationResponseV2 results)
+  {
+    List<SignatureReport> before = shown.getFileReports().get(0).getSignatureReports();
+    List<SignatureReport> after = results.getFileReports().get(0).getSignatureReports();
+    if (before.size() != after.size())
+    {
+      return true;
+    }
+    for (int i = 0; i < before.size(); i++)
+    {
+      if (before.get(i).isValid() != after.get(i).isValid()
+          || before.get(i).isValidRevoc() != after.get(i).isValidRevoc())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String getCacheKey()
+  {
+    try
+    {
+      return OnlineValidationCache.key(analyzer.getDocument().getChecksum(), mainTenant,
+          LocalSigner.appConfig.getValidatorUrl());
+    } catch (IOException e)
     {
-      LOGGER.error("Cannot validate signature online with ", e);
+      LOGGER.warn("Cannot checksum document, online validation not kept", e);
+      return null;
     }
   }
 
+  private void closeWaitDialog()
+  {
+    if (maingui.getMainshell().isDisposed())
+    {
+      return;
+    }
+    maingui.getMainshell().getDisplay().asyncExec(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if (waitDialog != null)
+        {
+          waitDialog.close();
+        }
+      }
+    });
+  }
+
   public static String getMainTenant(List<String> signatureMandants)
   {
     if (!signatureMandants.isEmpty() && UPREG_FORMULAR_MANDANT.equals(signatureMandants.get(0)))
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.verapdf.pdfa.flavours.PDFAFlavour;
+import ch.admin.localsigner.main.LocalSigner;
+
+/**
+ * Keeps the PDF/A validation results on disk, by the SHA-256 checksum of the
+ * document and the version of the validation, so a document opened again
+ * shows its PDF/A status without being validated.
+ * <p>
+ * Every result is a small properties file. The cache is bounded by the number
+ * and the total size of the files; the modification time of a file is its last
+ * use and the least recently used results are deleted first.
+ */
+final class PdfAResultCache
+{
+  private static final Logger LOGGER = Logger.getLogger(PdfAResultCache.class);
+
+  /**
+   * Folder in the user configuration folder. Not in the system configuration
+   * cache, which is replaced whenever the shared configuration is copied.
+   */
+  static final String FOLDER = "cache-pdfa";
+
+  static final int MAX_ENTRIES = 1000;
+
+  static final long MAX_BYTES = 16L * 1024 * 1024;
+
+  private static final String SUFFIX = ".properties";
+
+  private static final String VERSION = "version";
+
+  private static final String PARSED_FLAVOUR = "parsedFlavour";
+
+  private static final String VALIDATED_FLAVOUR = "validatedFlavour";
+
+  private static final String VALIDATED_FLAVOUR_NAME = "validatedFlavourName";
+
+  private static final String COMPLIANT = "compliant";
+
+  private static final String PROFILE = "profile";
+
+  private static final String ASSERTION = "assertion.";
+
+  private static PdfAResultCache instance;
+
+  private final File folder;
+
+  private final String version;
+
+  private final int maxEntries;
+
+  private final long maxBytes;
+
+  PdfAResultCache(final File folder, final String version, final int maxEntries, final long maxBytes)
+  {
+    this.folder = folder;
+    this.version = version;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the cache of the user, null if there is no configuration
+   */
+  static synchronized PdfAResultCache getInstance()
+  {
+    if (instance == null && LocalSigner.appConfig != null)
+    {
+      instance = new PdfAResultCache(new File(LocalSigner.appConfig.getUserConfigFolder(), FOLDER),
+          PdfAValidationEngine.getVersion(), MAX_ENTRIES, MAX_BYTES);
+    }
+    return instance;
+  }
+
+  /**
+   * @param checksum
+   *          SHA-256 of the document
+   * @return the results of the document, null if it has not been validated
+   *         with this version
+   */
+  synchronized PdfAValidationResults get(final String checksum)
+  {
+    File file = getFile(checksum);
+    if (!file.isFile())
+    {
+      return null;
+    }
+
+    try
+    {
+      Properties record = new Properties();
+      InputStream in = new FileInputStream(file);
+      try
+      {
+        record.load(in);
+      } finally
+      {
+        in.close();
+      }
+
+      if (!version.equals(record.getProperty(VERSION)))
+      {
+        LOGGER.debug("PDF/A result of " + checksum + " from another validation version, dropped");
+        Files.deleteIfExists(file.toPath());
+        return null;
+      }
+
+      PdfAValidationResults results = new PdfAValidationResults();
+      results.setParsedPdfAFlavour(PDFAFlavour.valueOf(record.getProperty(PARSED_FLAVOUR)));
+      String validated = record.getProperty(VALIDATED_FLAVOUR);
+      if (validated != null)
+      {
+        List<String> messages = new ArrayList<String>();
+        for (int i = 0; record.containsKey(ASSERTION + i); i++)
+        {
+          messages.add(record.getProperty(ASSERTION + i));
+        }
+        results.setValidation(PDFAFlavour.valueOf(validated), record.getProperty(VALIDATED_FLAVOUR_NAME),
+            Boolean.parseBoolean(record.getProperty(COMPLIANT)), record.getProperty(PROFILE), messages);
+      }
+
+      // last use, for the eviction
+      file.setLastModified(System.currentTimeMillis());
+      LOGGER.debug("PDF/A result of " + checksum + " found in cache");
+      return results;
+    } catch (IOException | IllegalArgumentException | NullPointerException e)
+    {
+      LOGGER.warn("Cannot read PDF/A result " + file + ", dropped", e);
+      file.delete();
+      return null;
+    }
+  }
+
+  /**
+   * Stores the results of a document. Results of a failed validation are not
+   * stored, the next attempt may succeed.
+   *
+   * @param checksum
+   *          SHA-256 of the document
+   * @param results
+   *          the results
+   */
+  synchronized void put(final String checksum, final PdfAValidationResults results)
+  {
+    if (results.isError() || results.getParsedPdfAFlavour() == null)
+    {
+      return;
+    }
+
+    Properties record = new Properties();
+    record.setProperty(VERSION, version);
+    record.setProperty(PARSED_FLAVOUR, results.getParsedPdfAFlavour().name());
+    if (results.getValidatedPdfAFlavour() != null)
+    {
+      record.setProperty(VALIDATED_FLAVOUR, results.getValidatedPdfAFlavour().name());
+      record.setProperty(VALIDATED_FLAVOUR_NAME, results.getValidatedFlavourAsString());
+      record.setProperty(COMPLIANT, String.valueOf(results.isCompliant()));
+      if (results.getProfileDescription() != null)
+      {
+        record.setProperty(PROFILE, results.getProfileDescription());
+      }
+      List<String> messages = results.getAssertionMessages();
+      for (int i = 0; i < messages.size(); i++)
+      {
+        record.setProperty(ASSERTION + i, String.valueOf(messages.get(i)));
+      }
+    }
+
+    try
+    {
+      if (!folder.isDirectory() && !folder.mkdirs())
+      {
+        throw new IOException("Cannot create " + folder);
+      }
+      // written completely before it can be found
+      File tmp = File.createTempFile(checksum, ".tmp", folder);
+      boolean moved = false;
+      try
+      {
+        OutputStream out = new FileOutputStream(tmp);
+        try
+        {
+          record.store(out, "PDF/A validation result");
+        } finally
+        {
+          out.close();
+        }
+        Files.move(tmp.toPath(), getFile(checksum).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        moved = true;
+      } finally
+      {
+        if (!moved)
+        {
+          // not counted by evict(), would stay forever
+          FileUtils.deleteQuietly(tmp);
+        }
+      }
+    } catch (IOException e)
+    {
+      LOGGER.warn("Cannot store PDF/A result of " + checksum, e);
+      return;
+    }
+
+    evict();
+  }
+
+  private void evict()
+  {
+    File[] files = folder.listFiles(new FileFilter()
+    {
+      @Override
+      public boolean accept(final File file)
+      {
+        return file.isFile() && file.getName().endsWith(SUFFIX);
+      }
+    });
+    if (files == null)
+    {
+      return;
+    }
+
+    long bytes = 0;
+    for (File file : files)
+    {
+      bytes += file.length();
+    }
+    if (files.length <= maxEntries && bytes <= maxBytes)
+    {
+      return;
+    }
+
+    // least recently used first
+    Arrays.sort(files, new Comparator<File>()
+    {
+      @Override
+      public int compare(final File a, final File b)
+      {
+        return Long.compare(a.lastModified(), b.lastModified());
+      }
+    });
+    int count = files.length;
+    for (int i = 0; i < files.length - 1 && (count > maxEntries || bytes > maxBytes); i++)
+    {
+      long length = files[i].length();
+      if (files[i].delete())
+      {
+        count--;
+        bytes -= length;
+      }
+    }
+    LOGGER.debug("PDF/A result cache reduced to " + count + " entries");
+  }
+
+  private File getFile(final String checksum)
+  {
+    return new File(folder, checksum + SUFFIX);
+  }
+}
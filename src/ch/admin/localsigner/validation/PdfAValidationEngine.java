@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.log4j.Logger;
+import org.verapdf.core.EncryptedPdfException;
+import org.verapdf.core.ModelParsingException;
+import org.verapdf.core.ValidationException;
+import org.verapdf.pdfa.Foundries;
+import org.verapdf.pdfa.PDFAParser;
+import org.verapdf.pdfa.PDFAValidator;
+import org.verapdf.pdfa.VeraGreenfieldFoundryProvider;
+import org.verapdf.pdfa.flavours.PDFAFlavour;
+import org.verapdf.pdfa.results.ValidationResult;
+import ch.admin.localsigner.main.LocalSigner;
+
+/**
+ * The veraPDF engine shared by all validations. The foundry is initialised
+ * once and the validators are kept per flavour and reused; a validator is used
+ * by one validation at a time.
+ * <p>
+ * A document is parsed once, the fallback to the level b/u of a PDF/A-1a or
+ * PDF/A-2a validates the same parsed model again.
+ */
+final class PdfAValidationEngine
+{
+  private static final Logger LOGGER = Logger.getLogger(PdfAValidationEngine.class);
+
+  /**
+   * Number of failed checks after which a validation stops, if not configured
+   */
+  static final int DEFAULT_MAX_FAILURES = 20;
+
+  // validators kept per flavour, more are created when needed
+  private static final int MAX_IDLE_VALIDATORS = 4;
+
+  private static PdfAValidationEngine instance;
+
+  private final int maxFailures;
+
+  private final ConcurrentHashMap<PDFAFlavour, Queue<PDFAValidator>> validators =
+      new ConcurrentHashMap<PDFAFlavour, Queue<PDFAValidator>>();
+
+  PdfAValidationEngine(final int maxFailures)
+  {
+    this.maxFailures = maxFailures;
+  }
+
+  /**
+   * @return the engine, the foundry is initialised by the first call
+   */
+  static synchronized PdfAValidationEngine getInstance()
+  {
+    if (instance == null)
+    {
+      long start = System.currentTimeMillis();
+      VeraGreenfieldFoundryProvider.initialise();
+      int maxFailures = getConfiguredMaxFailures();
+      instance = new PdfAValidationEngine(maxFailures);
+      LOGGER.debug("veraPDF initialised in " + (System.currentTimeMillis() - start) + " ms, validation stops after "
+          + (maxFailures > 0 ? maxFailures + " failures" : "all checks"));
+    }
+    return instance;
+  }
+
+  private static int getConfiguredMaxFailures()
+  {
+    return LocalSigner.appConfig == null ? DEFAULT_MAX_FAILURES : LocalSigner.appConfig.getPdfAValidationMaxFailures();
+  }
+
+  /**
+   * Identifies the validation rules without initialising the foundry: the jar
+   * veraPDF is loaded from (any update changes its size or time) and the
+   * configured limit of failures.
+   *
+   * @return version of the validation, results of other versions are not
+   *         comparable
+   */
+  static String getVersion()
+  {
+    StringBuilder version = new StringBuilder();
+    String implementation = Foundries.class.getPackage() == null ? null
+        : Foundries.class.getPackage().getImplementationVersion();
+    version.append(implementation == null ? "veraPDF" : implementation);
+    try
+    {
+      CodeSource source = Foundries.class.getProtectionDomain().getCodeSource();
+      if (source != null && source.getLocation() != null)
+      {
+        File jar = new File(source.getLocation().toURI());
+        version.append('/').append(jar.getName()).append('/').append(jar.length()).append('/')
+            .append(jar.lastModified());
+      }
+    } catch (URISyntaxException | SecurityException e)
+    {
+      LOGGER.debug("Cannot locate veraPDF", e);
+    }
+    version.append("/maxFailures=").append(getConfiguredMaxFailures());
+    return version.toString();
+  }
+
+  /**
+   * @param pdf
+   *          the document, closed with the parser
+   * @return parser of the document, closed by the caller
+   * @throws ModelParsingException
+   *           if the document cannot be parsed
+   * @throws EncryptedPdfException
+   *           if the document is encrypted
+   */
+  PDFAParser createParser(final InputStream pdf) throws ModelParsingException, EncryptedPdfException
+  {
+    return Foundries.defaultInstance().createParser(pdf);
+  }
+
+  /**
+   * Validates the document against the flavour it claims. A PDF/A-1a or
+   * PDF/A-2a which is not compliant is validated against PDF/A-1b or PDF/A-2u.
+   *
+   * @param parser
+   *          parser of the document
+   * @return the result of the last validation
+   * @throws ValidationException
+   *           if the document cannot be validated
+   */
+  ValidationResult validate(final PDFAParser parser) throws ValidationException
+  {
+    ValidationResult vr = validate(parser, parser.getFlavour());
+    if (!vr.isCompliant())
+    {
+      if (vr.getPDFAFlavour() == PDFAFlavour.PDFA_2_A)
+      {
+        LOGGER.debug("We found a PDF/A-2a which does not validate, so we try to validate with PDF/A-2u");
+        vr = validate(parser, PDFAFlavour.PDFA_2_U);
+      }
+      if (vr.getPDFAFlavour() == PDFAFlavour.PDFA_1_A)
+      {
+        LOGGER.debug("We found a PDF/A-1a which does not validate, so we try to validate with PDF/A-1b");
+        vr = validate(parser, PDFAFlavour.PDFA_1_B);
+      }
+    }
+    return vr;
+  }
+
+  private ValidationResult validate(final PDFAParser parser, final PDFAFlavour flavour) throws ValidationException
+  {
+    Queue<PDFAValidator> idle = getIdle(flavour);
+    PDFAValidator validator = idle.poll();
+    if (validator == null)
+    {
+      validator = createValidator(flavour);
+    }
+    try
+    {
+      return validator.validate(parser);
+    } finally
+    {
+      if (idle.size() < MAX_IDLE_VALIDATORS)
+      {
+        idle.offer(validator);
+      }
+    }
+  }
+
+  private Queue<PDFAValidator> getIdle(final PDFAFlavour flavour)
+  {
+    Queue<PDFAValidator> idle = validators.get(flavour);
+    if (idle == null)
+    {
+      Queue<PDFAValidator> created = new ConcurrentLinkedQueue<PDFAValidator>();
+      idle = validators.putIfAbsent(flavour, created);
+      if (idle == null)
+      {
+        idle = created;
+      }
+    }
+    return idle;
+  }
+
+  private PDFAValidator createValidator(final PDFAFlavour flavour)
+  {
+    LOGGER.debug("Create validator for " + flavour);
+    if (maxFailures > 0)
+    {
+      return Foundries.defaultInstance().createFailFastValidator(flavour, maxFailures);
+    }
+    return Foundries.defaultInstance().createValidator(flavour, false);
+  }
+}
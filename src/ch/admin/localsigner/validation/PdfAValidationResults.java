@@ -15,12 +15,16 @@
  */
 package ch.admin.localsigner.validation;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.verapdf.pdfa.flavours.PDFAFlavour;
 import org.verapdf.pdfa.results.TestAssertion;
 import org.verapdf.pdfa.results.ValidationResult;
 
 /**
- * ValidationResults from the OfflinePdfValidator.validatePdfFile
+ * ValidationResults from the OfflinePdfValidator.validatePdfFile. The values
+ * shown to the user are taken from the veraPDF result when it is set, so
+ * results can also be restored from the {@link PdfAResultCache} without one.
  *
  * @author keller
  */
@@ -33,30 +37,35 @@ public class PdfAValidationResults
 
   private PDFAFlavour parsedPdfAFlavour;
 
+  private PDFAFlavour validatedPdfAFlavour;
+
+  private String validatedFlavourName;
+
+  private boolean compliant;
+
+  private String profileDescription;
+
+  private List<String> assertionMessages = new ArrayList<String>();
+
   /**
    * Get the VeraPdf validation result.
    *
-   * @return VeraPdf validation result
+   * @return VeraPdf validation result, null if the results have been restored
+   *         from the cache
    */
   ValidationResult getVeraPdfValidationResult()
   {
     return veraPdfValidationResult;
   }
 
-  boolean validationNeeded()
-  {
-    return veraPdfValidationResult == null;
-  }
-
   public boolean isCompliant()
   {
-    return getVeraPdfValidationResult().isCompliant();
+    return compliant;
   }
 
   public String getValidatedFlavourAsString()
   {
-    return getVeraPdfValidationResult().getPDFAFlavour().getPart().getName()
-        + getVeraPdfValidationResult().getPDFAFlavour().getLevel().getCode();
+    return validatedFlavourName;
   }
 
   /**
@@ -68,6 +77,46 @@ public class PdfAValidationResults
   void setVeraPdfValidationResult(ValidationResult veraPdfValidationResult)
   {
     this.veraPdfValidationResult = veraPdfValidationResult;
+
+    List<String> messages = new ArrayList<String>();
+    for (TestAssertion assertion : veraPdfValidationResult.getTestAssertions())
+    {
+      messages.add(assertion.getMessage());
+    }
+    PDFAFlavour flavour = veraPdfValidationResult.getPDFAFlavour();
+    setValidation(flavour, flavour.getPart().getName() + flavour.getLevel().getCode(),
+        veraPdfValidationResult.isCompliant(), veraPdfValidationResult.getProfileDetails().getDescription(), messages);
+  }
+
+  /**
+   * Sets the values of a validation, e.g. restored from the cache.
+   */
+  void setValidation(PDFAFlavour flavour, String flavourName, boolean isCompliant, String description,
+      List<String> messages)
+  {
+    this.validatedPdfAFlavour = flavour;
+    this.validatedFlavourName = flavourName;
+    this.compliant = isCompliant;
+    this.profileDescription = description;
+    this.assertionMessages = messages;
+  }
+
+  PDFAFlavour getParsedPdfAFlavour()
+  {
+    return parsedPdfAFlavour;
+  }
+
+  PDFAFlavour getValidatedPdfAFlavour()
+  {
+    return validatedPdfAFlavour;
+  }
+
+  /**
+   * @return messages of the failed checks
+   */
+  public List<String> getAssertionMessages()
+  {
+    return assertionMessages;
   }
 
   /**
@@ -125,8 +174,7 @@ public class PdfAValidationResults
    */
   boolean isNotAccessible()
   {
-    return getVeraPdfValidationResult().getPDFAFlavour() == PDFAFlavour.PDFA_1_B
-        || getVeraPdfValidationResult().getPDFAFlavour() == PDFAFlavour.PDFA_2_U;
+    return validatedPdfAFlavour == PDFAFlavour.PDFA_1_B || validatedPdfAFlavour == PDFAFlavour.PDFA_2_U;
   }
 
   boolean isNotAPdfA()
@@ -139,7 +187,7 @@ public class PdfAValidationResults
    */
   public String getProfileDescription()
   {
-    return getVeraPdfValidationResult().getProfileDetails().getDescription();
+    return profileDescription;
   }
 
   /**
@@ -148,10 +196,10 @@ public class PdfAValidationResults
   public String getTestedAssertions()
   {
     StringBuilder sb = new StringBuilder();
-    for (TestAssertion assertion : getVeraPdfValidationResult().getTestAssertions())
+    for (String message : assertionMessages)
     {
       sb.append("  - ");
-      sb.append(assertion.getMessage());
+      sb.append(message);
       sb.append(System.lineSeparator());
     }
 
@@ -17,23 +17,28 @@ package ch.admin.localsigner.validation;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import org.apache.commons.io.FileUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import com.lowagie.text.pdf.AcroFields;
 import com.lowagie.text.pdf.PRStream;
+import com.lowagie.text.pdf.PdfArray;
 import com.lowagie.text.pdf.PdfDictionary;
 import com.lowagie.text.pdf.PdfName;
-import com.lowagie.text.pdf.PdfPKCS7;
 import com.lowagie.text.pdf.PdfReader;
 import com.lowagie.text.pdf.PdfSignatureAppearance;
+import ch.admin.localsigner.main.DocumentRange;
+import ch.admin.localsigner.main.DocumentStore;
 import ch.admin.localsigner.utils.SignatureInfo;
 import ch.admin.suis.client.core.service.to.SignatureCoverageStatus;
 import ch.glue.ltvdetector.diff.DiffFinder;
@@ -42,6 +47,11 @@ import ch.glue.securitytools.pdf.PdfAttacher;
 
 /**
  * This class can check PDF files.
+ * <p>
+ * The analyzer is the model of one version of a document: every property
+ * (signatures, fields, attachments, trigger events, certification, coverage)
+ * is computed on first use and kept, so repeated checks of the same version do
+ * not parse or verify the document again.
  *
  * @author Rafael Wampfler
  * @author Roland Keller
@@ -53,29 +63,123 @@ public class PdfAnalyzer
 
   private static final Logger LOGGER = Logger.getLogger(PdfAnalyzer.class);
 
-  private byte[] fileBytes;
+  private DocumentStore document;
 
+  // reads the document on demand, only used while holding the analyzer lock,
+  // null if closed
   private PdfReader reader;
 
+  private int numberOfPages;
+
   private OfflinePdfValidator offlineValidator;
 
+  // guards the PDF/A results, validating does not block the other properties
+  private final Object validationLock = new Object();
+
+  private volatile PdfAValidationResults validationResults;
+
+  // validation in the background, restarted if it has been cancelled
+  private CompletableFuture<PdfAValidationResults> backgroundValidation;
+
+  // one stage per caller of the background validation, cancelled on their own
+  private final List<CompletableFuture<PdfAValidationResults>> validationWaiters =
+      new ArrayList<CompletableFuture<PdfAValidationResults>>();
+
+  // signature names by revision
+  private Map<Integer, String> signatureNames;
+
+  private final Object verificationLock = new Object();
+
+  // started on first use, completed when all signatures are verified
+  private CompletableFuture<Void> verification;
+
+  // verified signatures by revision, without revision data
+  private final Map<Integer, SignatureInfo> verified = new ConcurrentSkipListMap<Integer, SignatureInfo>();
+
+  private final List<SignatureListener> signatureListeners = new ArrayList<SignatureListener>();
+
+  private List<String> blankSignatures;
+
+  private List<String> acroFieldsNotSignature;
+
+  private Map<String, PRStream> attachments;
+
+  private Boolean triggerEvents;
+
+  private Integer certificationLevel;
+
+  private SignatureCoverageStatus coverageStatus;
+
+  /**
+   * Gets the signatures while they are verified in the background.
+   */
+  public interface SignatureListener
+  {
+    /**
+     * Called on a worker thread for every verified signature, in no
+     * particular order. Must return quickly and must not use the analyzer.
+     *
+     * @param signature
+     *          the signature, without revision data
+     */
+    void verified(SignatureInfo signature);
+
+    /**
+     * Called when all signatures are verified.
+     *
+     * @param signatures
+     *          the verified signatures by revision, without revision data
+     */
+    void finished(Map<Integer, SignatureInfo> signatures);
+  }
+
   public PdfAnalyzer(final byte[] fileBytes) throws IOException
   {
-    init(fileBytes);
+    init(DocumentStore.wrap(fileBytes));
   }
 
   public PdfAnalyzer(final String file) throws IOException
   {
-    byte[] fileByteArray = FileUtils.readFileToByteArray(new File(file));
-    init(fileByteArray);
+    init(DocumentStore.forFile(new File(file)));
+  }
+
+  /**
+   * Analyzes the given document. The store stays owned by the caller and must
+   * not be released while this analyzer is used.
+   *
+   * @param document
+   *          the document
+   * @throws IOException
+   *           if the document is not a readable PDF
+   */
+  public PdfAnalyzer(final DocumentStore document) throws IOException
+  {
+    init(document);
   }
 
-  private void init(byte[] fileBytes) throws IOException
+  private void init(DocumentStore document) throws IOException
   {
     Security.addProvider(new BouncyCastleProvider());
-    this.reader = new PdfReader(fileBytes);
-    this.fileBytes = fileBytes;
-    this.offlineValidator = new OfflinePdfValidator(fileBytes);
+    // the checks only need a few objects of the document
+    this.reader = document.openPartialReader();
+    // read before the analyzer is shared, needs no lock afterwards
+    this.numberOfPages = reader.getNumberOfPages();
+    this.document = document;
+  }
+
+  private synchronized OfflinePdfValidator getOfflineValidator()
+  {
+    if (offlineValidator == null)
+    {
+      try
+      {
+        offlineValidator = new OfflinePdfValidator(document.getBytes());
+      } catch (IOException e)
+      {
+        throw new IllegalStateException("Cannot read document for PDF/A validation", e);
+      }
+    }
+    return offlineValidator;
   }
 
   /**
@@ -83,17 +187,109 @@ public class PdfAnalyzer
    */
   public void validatePdfA()
   {
-    offlineValidator.getValidationResults();
+    getValidationResults();
+  }
+
+  /**
+   * Starts the validation with VeraPdf in the background, e.g. when the
+   * document is opened. Every caller gets its own future: cancelling it only
+   * stops waiting for it, the other callers still get the results. The
+   * validation is skipped if all callers cancelled before it started; a
+   * validation already running is finished and its results are kept.
+   *
+   * @return completed with the ValidationResults
+   */
+  public synchronized CompletableFuture<PdfAValidationResults> validatePdfAInBackground()
+  {
+    if (validationResults != null)
+    {
+      return CompletableFuture.completedFuture(validationResults);
+    }
+    if (backgroundValidation == null || backgroundValidation.isCancelled())
+    {
+      validationWaiters.clear();
+      backgroundValidation = BackgroundPdfAValidation.start(this);
+    }
+    CompletableFuture<PdfAValidationResults> waiter =
+        backgroundValidation.thenApply(Function.<PdfAValidationResults>identity());
+    validationWaiters.add(waiter);
+    return waiter;
+  }
+
+  /**
+   * Called before the background validation starts. It is cancelled if nobody
+   * waits for it any more.
+   *
+   * @param validation
+   *          the validation about to start
+   * @return true if the validation has to be skipped
+   */
+  synchronized boolean skipBackgroundValidation(final CompletableFuture<PdfAValidationResults> validation)
+  {
+    if (validation == backgroundValidation)
+    {
+      for (CompletableFuture<PdfAValidationResults> waiter : validationWaiters)
+      {
+        if (!waiter.isCancelled())
+        {
+          return false;
+        }
+      }
+    }
+    validation.cancel(false);
+    return true;
+  }
+
+  /**
+   * @return true if {@link #getValidationResults()} returns without waiting
+   */
+  public boolean isPdfAValidated()
+  {
+    return validationResults != null;
   }
 
   /**
-   * Get the ValidationResults from the VeraPdf validation.
+   * Get the ValidationResults from the VeraPdf validation. The results of a
+   * document validated before are taken from the {@link PdfAResultCache}.
    *
    * @return ValidationResults
    */
   public PdfAValidationResults getValidationResults()
   {
-    return offlineValidator.getValidationResults();
+    synchronized (validationLock)
+    {
+      if (validationResults == null)
+      {
+        PdfAResultCache cache = PdfAResultCache.getInstance();
+        String checksum = null;
+        if (cache != null)
+        {
+          try
+          {
+            checksum = document.getChecksum();
+            validationResults = cache.get(checksum);
+          } catch (IOException e)
+          {
+            LOGGER.warn("Cannot look up PDF/A result", e);
+          }
+        }
+
+        if (validationResults == null)
+        {
+          validationResults = getOfflineValidator().getValidationResults();
+          if (checksum != null)
+          {
+            cache.put(checksum, validationResults);
+          }
+          // the validator keeps a copy of the content
+          synchronized (this)
+          {
+            offlineValidator = null;
+          }
+        }
+      }
+      return validationResults;
+    }
   }
 
   public boolean isNotAccessible()
@@ -106,6 +302,36 @@ public class PdfAnalyzer
     return getValidationResults().isNotAPdfA();
   }
 
+  /**
+   * Closes the reader, e.g. when the analyzer is dropped from the
+   * {@link AnalysisCache}. The properties found so far are kept, the reader is
+   * opened again if another one is asked for.
+   */
+  public synchronized void close()
+  {
+    if (reader != null)
+    {
+      reader.close();
+      reader = null;
+    }
+    offlineValidator = null;
+  }
+
+  private PdfReader getReader()
+  {
+    if (reader == null)
+    {
+      try
+      {
+        reader = document.openPartialReader();
+      } catch (IOException e)
+      {
+        throw new IllegalStateException("Cannot read document", e);
+      }
+    }
+    return reader;
+  }
+
   /**
    * Get number of pages in document.
    *
@@ -113,9 +339,7 @@ public class PdfAnalyzer
    */
   public int getNumberOfPages()
   {
-
-    return reader.getNumberOfPages();
-
+    return numberOfPages;
   }
 
   /**
@@ -123,12 +347,21 @@ public class PdfAnalyzer
    *
    * @return list of attachments names
    */
-  public Map<String, PRStream> getAttachments()
+  public synchronized Map<String, PRStream> getAttachments()
+  {
+    if (attachments == null)
+    {
+      attachments = extractAttachments();
+    }
+    return new HashMap<String, PRStream>(attachments);
+  }
+
+  private Map<String, PRStream> extractAttachments()
   {
     try
     {
       PdfAttacher attacher = new PdfAttacher();
-      return attacher.extractAttachments(reader);
+      return attacher.extractAttachments(getReader());
     } catch (Exception e)
     {
       // may happen often
@@ -142,12 +375,21 @@ public class PdfAnalyzer
    *
    * @return true if events found
    */
-  public boolean hasTriggerEvents()
+  public synchronized boolean hasTriggerEvents()
+  {
+    if (triggerEvents == null)
+    {
+      triggerEvents = findTriggerEvents();
+    }
+    return triggerEvents;
+  }
+
+  private boolean findTriggerEvents()
   {
-    int pages = reader.getNumberOfPages();
-    for (int i = 1; i <= pages; ++i)
+    for (int i = 1; i <= numberOfPages; ++i)
     {
-      PdfDictionary pageDict = reader.getPageN(i);
+      // the page is not kept, only its dictionary is read
+      PdfDictionary pageDict = getReader().getPageNRelease(i);
       if (pageDict != null)
       {
         // search for AA dictionary entries (trigger events)
@@ -165,15 +407,24 @@ public class PdfAnalyzer
    *
    * @return list of signature fields
    */
-  public List<String> getAcroFieldsNotSignature()
+  public synchronized List<String> getAcroFieldsNotSignature()
+  {
+    if (acroFieldsNotSignature == null)
+    {
+      acroFieldsNotSignature = findAcroFieldsNotSignature();
+    }
+    return new ArrayList<String>(acroFieldsNotSignature);
+  }
+
+  private List<String> findAcroFieldsNotSignature()
   {
     List<String> fields = new ArrayList<String>();
     List<String> offendingTextFields = new ArrayList<String>();
     boolean letPass = false;
-    for (Object o : reader.getAcroFields().getFields().keySet())
+    for (Object o : getReader().getAcroFields().getFields().keySet())
     {
       String key = (String) o;
-      int type = reader.getAcroFields().getFieldType(key);
+      int type = getReader().getAcroFields().getFieldType(key);
       if (type != AcroFields.FIELD_TYPE_SIGNATURE)
       {
         if (checkForNonSignatureFormField(type))
@@ -210,43 +461,174 @@ public class PdfAnalyzer
   }
 
   /**
-   * Check if document has signatures.
+   * Check if document has signatures. The signatures are verified only once,
+   * the signed revisions are only read when they are used.
    *
    * @return list of signatures
    */
-  public Map<Integer, SignatureInfo> getSignatures()
+  public synchronized Map<Integer, SignatureInfo> getSignatures()
   {
     Map<Integer, SignatureInfo> map = new TreeMap<Integer, SignatureInfo>();
-    AcroFields af = reader.getAcroFields();
-    for (Object obj : af.getSignatureNames())
+    for (Map.Entry<Integer, SignatureInfo> entry : getVerifiedSignatures().entrySet())
     {
-      String name = (String) obj;
-      PdfPKCS7 pk = af.verifySignature(name);
+      SignatureInfo info = copy(entry.getValue());
+      info.setRevisionData(getRevision(info.getName()));
+      map.put(entry.getKey(), info);
+    }
+    return map;
+  }
 
-      int rev = af.getRevision(name);
-      SignatureInfo info = new SignatureInfo();
-      info.setName(name);
-      info.setPkcs7(pk);
-      info.setRevision(rev);
-      info.setCoveringWholeDocument(af.signatureCoversWholeDocument(name));
+  /**
+   * The revision signed by a signature ends with the last byte covered by the
+   * signature, so it is a range of the document and nothing has to be read to
+   * find it.
+   *
+   * @param name
+   *          name of the signature
+   * @return the revision signed by the signature, null if it cannot be found
+   */
+  public synchronized DocumentRange getRevision(final String name)
+  {
+    PdfDictionary signature = getReader().getAcroFields().getSignatureDictionary(name);
+    PdfArray byteRange = signature == null ? null : signature.getAsArray(PdfName.BYTERANGE);
+    if (byteRange == null || byteRange.size() < 2)
+    {
+      LOGGER.error("No byte range in signature " + name);
+      return null;
+    }
+    int last = byteRange.size() - 1;
+    long length = (long) byteRange.getAsNumber(last - 1).intValue() + byteRange.getAsNumber(last).intValue();
+    try
+    {
+      return document.range(length);
+    } catch (IOException e)
+    {
+      LOGGER.error("Cannot extract revision", e);
+      return null;
+    }
+  }
 
-      try
+  /**
+   * @return the names of the signatures by revision, without verifying them
+   */
+  public synchronized Map<Integer, String> getSignatureNames()
+  {
+    if (signatureNames == null)
+    {
+      Map<Integer, String> names = new TreeMap<Integer, String>();
+      AcroFields af = getReader().getAcroFields();
+      for (Object obj : af.getSignatureNames())
       {
-        InputStream revData = af.extractRevision(name);
-        info.setRevisionData(revData);
-      } catch (IOException e)
+        String name = (String) obj;
+        names.put(af.getRevision(name), name);
+      }
+      signatureNames = names;
+    }
+    return new TreeMap<Integer, String>(signatureNames);
+  }
+
+  /**
+   * Verifies the signatures in the background, several at a time. The listener
+   * gets the signatures already verified right away and the others as soon as
+   * they are verified.
+   *
+   * @param listener
+   *          gets the verified signatures
+   */
+  public void verifySignatures(final SignatureListener listener)
+  {
+    Map<Integer, String> names = getSignatureNames();
+    CompletableFuture<Void> running;
+    synchronized (verificationLock)
+    {
+      for (SignatureInfo info : verified.values())
+      {
+        listener.verified(copy(info));
+      }
+      signatureListeners.add(listener);
+      running = startVerification(names);
+    }
+
+    running.whenComplete(new BiConsumer<Void, Throwable>()
+    {
+      @Override
+      public void accept(final Void result, final Throwable error)
       {
-        LOGGER.error("Cannot extract revision", e);
+        synchronized (verificationLock)
+        {
+          signatureListeners.remove(listener);
+        }
+        listener.finished(copyVerified());
+      }
+    });
+  }
+
+  private CompletableFuture<Void> startVerification(final Map<Integer, String> names)
+  {
+    // the names are read before, never lock the analyzer within the verification lock
+    synchronized (verificationLock)
+    {
+      if (verification == null)
+      {
+        LOGGER.debug("Verifying " + names.size() + " signatures");
+        verification = SignatureVerifier.verify(document, names, new SignatureVerifier.Callback()
+        {
+          @Override
+          public void verified(final SignatureInfo signature)
+          {
+            synchronized (verificationLock)
+            {
+              verified.put(signature.getRevision(), signature);
+              for (SignatureListener listener : signatureListeners)
+              {
+                listener.verified(copy(signature));
+              }
+            }
+          }
+        });
       }
+      return verification;
+    }
+  }
+
+  private Map<Integer, SignatureInfo> getVerifiedSignatures()
+  {
+    try
+    {
+      startVerification(getSignatureNames()).get();
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e)
+    {
+      LOGGER.error("Cannot verify signatures", e.getCause());
+    }
+    return copyVerified();
+  }
 
-      map.put(rev, info);
+  private Map<Integer, SignatureInfo> copyVerified()
+  {
+    Map<Integer, SignatureInfo> map = new TreeMap<Integer, SignatureInfo>();
+    for (SignatureInfo info : verified.values())
+    {
+      map.put(info.getRevision(), copy(info));
     }
     return map;
   }
 
+  private static SignatureInfo copy(final SignatureInfo verifiedInfo)
+  {
+    SignatureInfo info = new SignatureInfo();
+    info.setName(verifiedInfo.getName());
+    info.setPkcs7(verifiedInfo.getPkcs7());
+    info.setRevision(verifiedInfo.getRevision());
+    info.setCoveringWholeDocument(verifiedInfo.isCoveringWholeDocument());
+    return info;
+  }
+
   public boolean isSigned()
   {
-    return !getSignatures().isEmpty();
+    return !getSignatureNames().isEmpty();
   }
 
   /**
@@ -254,9 +636,13 @@ public class PdfAnalyzer
    *
    * @return list of blank field
    */
-  public List<String> getBlankSignatures()
+  public synchronized List<String> getBlankSignatures()
   {
-    return reader.getAcroFields().getBlankSignatureNames();
+    if (blankSignatures == null)
+    {
+      blankSignatures = new ArrayList<String>(getReader().getAcroFields().getBlankSignatureNames());
+    }
+    return new ArrayList<String>(blankSignatures);
   }
 
   /**
@@ -264,9 +650,13 @@ public class PdfAnalyzer
    *
    * @return true if certified
    */
-  public boolean hasCertification()
+  public synchronized boolean hasCertification()
   {
-    return reader.getCertificationLevel() != PdfSignatureAppearance.NOT_CERTIFIED;
+    if (certificationLevel == null)
+    {
+      certificationLevel = getReader().getCertificationLevel();
+    }
+    return certificationLevel != PdfSignatureAppearance.NOT_CERTIFIED;
   }
 
   /**
@@ -277,23 +667,37 @@ public class PdfAnalyzer
    */
   byte[] getFileContent() throws IOException
   {
-    return fileBytes;
+    return document.getBytes();
   }
 
+  /**
+   * @return the analyzed document
+   */
+  public DocumentStore getDocument()
+  {
+    return document;
+  }
+
+  /**
+   * @return the coverage, null if the modifications cannot be checked
+   */
   private SignatureCoverageStatus oneSignatureCoversWholeDocument()
   {
-    Map<Integer, SignatureInfo> signatures = getSignatures();
-    for (SignatureInfo signature : signatures.values())
+    // the byte ranges are enough, no need to verify the signatures. Every
+    // signature covers its own revision, only the newest can cover the end
+    String newest = null;
+    for (String name : getSignatureNames().values())
     {
-      if (signature.isCoveringWholeDocument())
-      {
-        return SignatureCoverageStatus.COVERED;
-      }
+      newest = name;
+    }
+    if (newest != null && getReader().getAcroFields().signatureCoversWholeDocument(newest))
+    {
+      return SignatureCoverageStatus.COVERED;
     }
     DiffFinder diffFinder = new DiffFinder();
     try
     {
-      DiffResult diffResult = diffFinder.checkFile(fileBytes);
+      DiffResult diffResult = diffFinder.checkFile(document.getBytes());
       if (diffResult.areAllDifferencesAllowed())
       {
         return SignatureCoverageStatus.MODIFIED_ACCEPTABLE;
@@ -305,18 +709,58 @@ public class PdfAnalyzer
     {
       LOGGER.error("Error calling diffFinder.checkFile() ", e);
     }
-    return SignatureCoverageStatus.MODIFIED_INVALID;
+    return null;
+  }
+
+  /**
+   * The coverage of a content is taken from the
+   * {@link SignatureCoverageCache} if it has been checked before. A check that
+   * failed is not kept, it is tried again on the next call.
+   *
+   * @return the coverage of the document by its signatures, MODIFIED_INVALID
+   *         if the modifications cannot be checked
+   */
+  public synchronized SignatureCoverageStatus isSignedAndModified()
+  {
+    if (coverageStatus == null)
+    {
+      if (!isSigned())
+      {
+        coverageStatus = SignatureCoverageStatus.UNSIGNED;
+      } else
+      {
+        coverageStatus = getCoverage();
+      }
+    }
+    return coverageStatus == null ? SignatureCoverageStatus.MODIFIED_INVALID : coverageStatus;
   }
 
-  public SignatureCoverageStatus isSignedAndModified()
+  /**
+   * @return the coverage, null if the modifications cannot be checked
+   */
+  private SignatureCoverageStatus getCoverage()
   {
-    if (!isSigned())
+    SignatureCoverageCache cache = SignatureCoverageCache.getInstance();
+    String checksum = null;
+    try
     {
-      return SignatureCoverageStatus.UNSIGNED;
-    } else
+      checksum = document.getChecksum();
+      SignatureCoverageStatus cached = cache.get(checksum);
+      if (cached != null)
+      {
+        return cached;
+      }
+    } catch (IOException e)
+    {
+      LOGGER.warn("Cannot look up signature coverage", e);
+    }
+
+    SignatureCoverageStatus status = oneSignatureCoversWholeDocument();
+    if (status != null && checksum != null)
     {
-      return oneSignatureCoversWholeDocument();
+      cache.put(checksum, status);
     }
+    return status;
   }
 
 }
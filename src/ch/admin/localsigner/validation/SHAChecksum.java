@@ -15,97 +15,129 @@
  */
 package ch.admin.localsigner.validation;
 
-import org.apache.commons.io.FileUtils;
-
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * This class calculates the check sum of a file. The checksum uses SHA 256 as
- * hashing algorithm.
+ * hashing algorithm. The digest and the hex format are also used by callers
+ * hashing while they copy a document.
  * @author boris
  * @author $Author$
  * @version $Revision$
  */
 public final class SHAChecksum
 {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // one direct buffer per thread, reused for every file
+  private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>()
+  {
+    @Override
+    protected ByteBuffer initialValue()
+    {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
   private SHAChecksum()
   {
     // hide constructor for utility class
   }
 
   /**
-   * Calculate the hash of a file
-   * @param filaData byteArray of File to hash
-   * @return hash as byte[]
-   * @throws NoSuchAlgorithmException
-   * @throws Exception
+   * @return a new SHA-256 digest
    */
-  private static byte[] createChecksum(final byte[] filaData)
-          throws IOException, NoSuchAlgorithmException
+  public static MessageDigest newDigest()
   {
-    final MessageDigest complete = MessageDigest.getInstance("SHA-256");
-    complete.update(filaData);
-    return complete.digest();
+    try
+    {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e)
+    {
+      // every Java runtime has SHA-256
+      throw new IllegalStateException(e);
+    }
   }
 
   /**
-   * Calculate the hash of a file
-   * @param filaData
-   *          byteArray of File to hash
+   * Completes the digest.
+   * @param digest
+   *          digest of the content
    * @return hash as hex string
-   * @throws IOException
-   * @throws NoSuchAlgorithmException
    */
-  public static String getChecksum(final byte[] filaData)
-          throws NoSuchAlgorithmException, IOException
+  public static String toHex(final MessageDigest digest)
   {
-    byte[] b = createChecksum(filaData);
-
     final StringBuilder result = new StringBuilder();
-    for (byte aB : b) {
+    for (byte aB : digest.digest()) {
       result.append(Integer.toString((aB & 0xff) + 0x100, 16).substring(1));
     }
     return result.toString();
   }
 
-
   /**
    * Calculate the hash of a file
-   * @param filename
-   *          File to hash
+   * @param filaData
+   *          byteArray of File to hash
    * @return hash as hex string
-   * @throws IOException
-   * @throws NoSuchAlgorithmException
    */
-  public static String getChecksum(final String filename)
-          throws NoSuchAlgorithmException, IOException
+  public static String getChecksum(final byte[] filaData)
   {
-    byte[] b = createChecksum(filename);
+    final MessageDigest complete = newDigest();
+    complete.update(filaData);
+    return toHex(complete);
+  }
 
-    final StringBuilder result = new StringBuilder();
-    for (byte aB : b) {
-      result.append(Integer.toString((aB & 0xff) + 0x100, 16).substring(1));
+  /**
+   * Calculate the hash of a stream, it is not loaded into memory. The stream
+   * is read to the end and not closed.
+   * @param in
+   *          content to hash
+   * @return hash as hex string
+   * @throws IOException
+   */
+  public static String getChecksum(final InputStream in) throws IOException
+  {
+    final MessageDigest complete = newDigest();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1)
+    {
+      complete.update(buffer, 0, read);
     }
-    return result.toString();
+    return toHex(complete);
   }
 
   /**
    * Calculate the hash of a file
    * @param filename
    *          File to hash
-   * @return hash as byte[]
+   * @return hash as hex string
+   * @throws IOException
    * @throws NoSuchAlgorithmException
-   * @throws Exception
    */
-  private static byte[] createChecksum(final String filename)
-          throws IOException, NoSuchAlgorithmException
+  public static String getChecksum(final String filename)
+          throws NoSuchAlgorithmException, IOException
   {
-    final MessageDigest complete = MessageDigest.getInstance("SHA-256");
-    byte[] data = FileUtils.readFileToByteArray(new File(filename));
-    complete.update(data);
-    return complete.digest();
+    final MessageDigest complete = newDigest();
+    // stream the file, it is not loaded into memory
+    final ByteBuffer buffer = BUFFER.get();
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+    {
+      buffer.clear();
+      while (channel.read(buffer) != -1)
+      {
+        buffer.flip();
+        complete.update(buffer);
+        buffer.clear();
+      }
+    }
+    return toHex(complete);
   }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import ch.admin.suis.client.core.service.to.SignatureCoverageStatus;
+
+/**
+ * Keeps the signature coverage of the last documents by their SHA-256
+ * checksum. Finding the modifications after the last signature diffs the
+ * whole document, so it is done once per content, even when the analyzer of
+ * the document has been dropped from the {@link AnalysisCache}.
+ */
+final class SignatureCoverageCache
+{
+  private static final Logger LOGGER = Logger.getLogger(SignatureCoverageCache.class);
+
+  static final int MAX_ENTRIES = 1000;
+
+  private static final SignatureCoverageCache INSTANCE = new SignatureCoverageCache(MAX_ENTRIES);
+
+  private final Map<String, SignatureCoverageStatus> statuses;
+
+  SignatureCoverageCache(final int maxEntries)
+  {
+    // access ordered, eldest entry is the least recently used
+    statuses = new LinkedHashMap<String, SignatureCoverageStatus>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, SignatureCoverageStatus> eldest)
+      {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  static SignatureCoverageCache getInstance()
+  {
+    return INSTANCE;
+  }
+
+  /**
+   * @param checksum
+   *          SHA-256 of the document
+   * @return the coverage of the document, null if it is not known
+   */
+  synchronized SignatureCoverageStatus get(final String checksum)
+  {
+    SignatureCoverageStatus status = statuses.get(checksum);
+    if (status != null)
+    {
+      LOGGER.debug("Signature coverage of " + checksum + " found in cache");
+    }
+    return status;
+  }
+
+  /**
+   * @param checksum
+   *          SHA-256 of the document
+   * @param status
+   *          the coverage of the document
+   */
+  synchronized void put(final String checksum, final SignatureCoverageStatus status)
+  {
+    statuses.put(checksum, status);
+  }
+
+  synchronized int size()
+  {
+    return statuses.size();
+  }
+}
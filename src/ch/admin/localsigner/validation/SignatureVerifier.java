@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import com.lowagie.text.pdf.AcroFields;
+import com.lowagie.text.pdf.PdfReader;
+import ch.admin.localsigner.main.DocumentStore;
+import ch.admin.localsigner.utils.SignatureInfo;
+
+/**
+ * Verifies the signatures of a document on a bounded pool of worker threads.
+ * A {@link PdfReader} must not be shared between threads, so every worker
+ * opens its own reader of the document and verifies its share of the
+ * signatures with it.
+ */
+final class SignatureVerifier
+{
+  private static final Logger LOGGER = Logger.getLogger(SignatureVerifier.class);
+
+  static final int WORKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(WORKERS, new ThreadFactory()
+  {
+    private final AtomicInteger number = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r)
+    {
+      Thread thread = new Thread(r, "LocalSigner signature verification " + number.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Called by the workers for every verified signature
+   */
+  interface Callback
+  {
+    void verified(SignatureInfo signature);
+  }
+
+  private SignatureVerifier()
+  {
+    // hide constructor for utility class
+  }
+
+  /**
+   * Starts the verification.
+   *
+   * @param document
+   *          the document
+   * @param names
+   *          names of the signatures by revision
+   * @param callback
+   *          gets every signature as soon as it is verified
+   * @return completed when all signatures are verified
+   */
+  static CompletableFuture<Void> verify(final DocumentStore document, final Map<Integer, String> names,
+      final Callback callback)
+  {
+    int workers = Math.min(WORKERS, names.size());
+    List<List<String>> shares = new ArrayList<List<String>>();
+    for (int i = 0; i < workers; i++)
+    {
+      shares.add(new ArrayList<String>());
+    }
+    int i = 0;
+    for (String name : names.values())
+    {
+      shares.get(i++ % workers).add(name);
+    }
+
+    List<CompletableFuture<Void>> running = new ArrayList<CompletableFuture<Void>>();
+    for (final List<String> share : shares)
+    {
+      running.add(CompletableFuture.runAsync(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          verifyShare(document, share, callback);
+        }
+      }, EXECUTOR));
+    }
+    return CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[running.size()]));
+  }
+
+  private static void verifyShare(final DocumentStore document, final List<String> names, final Callback callback)
+  {
+    PdfReader reader;
+    try
+    {
+      reader = document.openReader();
+    } catch (IOException e)
+    {
+      throw new IllegalStateException("Cannot read document to verify signatures", e);
+    }
+
+    try
+    {
+      AcroFields af = reader.getAcroFields();
+      for (String name : names)
+      {
+        long start = System.currentTimeMillis();
+        SignatureInfo info = new SignatureInfo();
+        info.setName(name);
+        info.setPkcs7(af.verifySignature(name));
+        info.setRevision(af.getRevision(name));
+        info.setCoveringWholeDocument(af.signatureCoversWholeDocument(name));
+        LOGGER.debug("Signature " + name + " verified in " + (System.currentTimeMillis() - start) + " ms");
+        callback.verified(info);
+      }
+    } finally
+    {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSignatureAppearance;
+import com.lowagie.text.pdf.PdfStamper;
+import ch.admin.localsigner.config.ApplicationConfiguration;
+import ch.admin.localsigner.config.Config;
+import ch.admin.localsigner.gui.profile.Profile;
+
+public class BatchSignerTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCollectFromDirectory() throws IOException
+  {
+    folder.newFile("b.pdf");
+    folder.newFile("a.PDF");
+    folder.newFile("notes.txt");
+    folder.newFolder("sub.pdf");
+
+    List<File> files = BatchSigner.collectInputFiles(folder.getRoot());
+
+    assertEquals(2, files.size());
+    assertEquals("a.PDF", files.get(0).getName());
+    assertEquals("b.pdf", files.get(1).getName());
+  }
+
+  @Test
+  public void testCollectFromList() throws IOException
+  {
+    File list = folder.newFile("list.txt");
+    File absolute = new File(folder.getRoot(), "absolute.pdf");
+    FileUtils.writeStringToFile(list, "# documents\nrelative.pdf\n\n  " + absolute.getAbsolutePath() + "  \n",
+        StandardCharsets.UTF_8);
+
+    List<File> files = BatchSigner.collectInputFiles(list);
+
+    assertEquals(2, files.size());
+    assertEquals(new File(folder.getRoot(), "relative.pdf"), files.get(0));
+    assertEquals(absolute, files.get(1));
+  }
+
+  @Test
+  public void testSignaturePage()
+  {
+    assertEquals(1, DocumentSigner.getSignaturePage(0, 5));
+    assertEquals(5, DocumentSigner.getSignaturePage(1, 5));
+    assertEquals(4, DocumentSigner.getSignaturePage(2, 5));
+    assertEquals(1, DocumentSigner.getSignaturePage(2, 1));
+  }
+
+  @Test
+  public void testSignBatch() throws Exception
+  {
+    File input = folder.newFolder("input");
+    File output = folder.newFolder("output");
+    FileUtils.copyFile(new File("test/test.pdf"), new File(input, "first.pdf"));
+    FileUtils.copyFile(new File("test/test.pdf"), new File(input, "second.pdf"));
+
+    String home = System.getProperty("user.home");
+    ApplicationConfiguration config = LocalSigner.appConfig;
+    try
+    {
+      List<String> lines = runBatch(input, output);
+      assertEquals(3, lines.size());
+      assertTrue(lines.get(1), lines.get(1).contains(";SIGNED;"));
+      assertTrue(lines.get(2), lines.get(2).contains(";SIGNED;"));
+      for (String name : new String[] {"first", "second"})
+      {
+        PdfReader reader = new PdfReader(new File(output, name + LocalSigner.appConfig.getSignedDocExtension()
+            + ".pdf").getAbsolutePath());
+        try
+        {
+          assertEquals(1, reader.getAcroFields().getSignatureNames().size());
+        } finally
+        {
+          reader.close();
+        }
+      }
+    } finally
+    {
+      LocalSigner.appConfig = config;
+      System.setProperty("user.home", home);
+    }
+  }
+
+  @Test
+  public void testSameOutputFileFails() throws Exception
+  {
+    File first = new File(folder.newFolder("a"), "doc.pdf");
+    File second = new File(folder.newFolder("b"), "doc.pdf");
+    FileUtils.copyFile(new File("test/test.pdf"), first);
+    FileUtils.copyFile(new File("test/test.pdf"), second);
+    File list = folder.newFile("list.txt");
+    FileUtils.writeLines(list, Arrays.asList(first.getAbsolutePath(), second.getAbsolutePath()));
+
+    String home = System.getProperty("user.home");
+    ApplicationConfiguration config = LocalSigner.appConfig;
+    try
+    {
+      List<String> lines = runBatch(list, folder.newFolder("output"));
+      assertEquals(3, lines.size());
+      assertTrue(lines.get(1), lines.get(1).contains(";SIGNED;"));
+      assertTrue(lines.get(2), lines.get(2).contains(";FAILED;"));
+    } finally
+    {
+      LocalSigner.appConfig = config;
+      System.setProperty("user.home", home);
+    }
+  }
+
+  /**
+   * Signs the batch with a PKCS12 key store, the private key operation
+   * without time stamp and all other steps of the batch as they are.
+   *
+   * @return the lines of the report
+   */
+  private List<String> runBatch(final File batch, final File output) throws Exception
+  {
+    Security.addProvider(new BouncyCastleProvider());
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    final KeyPair keys = generator.generateKeyPair();
+    final Certificate[] chain = new Certificate[] {createCertificate(keys)};
+
+    System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+    LocalSigner.appConfig = new ApplicationConfiguration();
+    LocalSigner.appConfig.setValue(Config.PKCS12_FILE, createPkcs12(keys, chain).getAbsolutePath());
+    LocalSigner.appConfig.setValue(Config.PKCS12_PASSWORD, "secret");
+
+    File profile = folder.newFile("profile.properties");
+    FileUtils.writeStringToFile(profile, Profile.TYPE_OF_SIGNATURE + "=signature\n" + Profile.VISIBLE_SIGNATURE
+        + "=false\n", StandardCharsets.UTF_8);
+    File report = new File(output, "report.csv");
+
+    LocalSignerCommandLine cli = new LocalSignerCommandLine();
+    cli.parseCli(new String[] {"-b", batch.getAbsolutePath(), "-s", profile.getAbsolutePath(), "-o",
+        output.getAbsolutePath(), "-e", report.getAbsolutePath()});
+
+    int failed = new BatchSigner(cli)
+    {
+      @Override
+      byte[] signDocument(final DocumentSigner signer, final SignatureParameters sigParams) throws Exception
+      {
+        PdfReader reader = new PdfReader(sigParams.getInputFile());
+        ByteArrayOutputStream signed = new ByteArrayOutputStream();
+        PdfStamper stamper = PdfStamper.createSignature(reader, signed, '\0');
+        stamper.getSignatureAppearance().setCrypto(keys.getPrivate(), chain, null,
+            PdfSignatureAppearance.SELF_SIGNED);
+        stamper.close();
+        return signed.toByteArray();
+      }
+    }.run();
+
+    List<String> lines = FileUtils.readLines(report, StandardCharsets.UTF_8);
+    int expected = 0;
+    for (String line : lines)
+    {
+      if (line.contains(";FAILED;"))
+      {
+        expected++;
+      }
+    }
+    assertEquals(lines.toString(), expected, failed);
+    return lines;
+  }
+
+  private static X509Certificate createCertificate(final KeyPair keys) throws Exception
+  {
+    X500Name name = new X500Name("CN=Batch Test");
+    Date now = new Date();
+    X509v3CertificateBuilder builder = new X509v3CertificateBuilder(name, BigInteger.valueOf(now.getTime()),
+        new Date(now.getTime() - 60000), new Date(now.getTime() + 3600000), name,
+        SubjectPublicKeyInfo.getInstance(keys.getPublic().getEncoded()));
+    return new JcaX509CertificateConverter().getCertificate(
+        builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keys.getPrivate())));
+  }
+
+  private File createPkcs12(final KeyPair keys, final Certificate[] chain) throws Exception
+  {
+    KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+    ks.load(null, null);
+    ks.setKeyEntry("batch", keys.getPrivate(), "secret".toCharArray(), chain);
+    File file = folder.newFile("batch.p12");
+    OutputStream out = new FileOutputStream(file);
+    try
+    {
+      ks.store(out, "secret".toCharArray());
+    } finally
+    {
+      out.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchValidatorTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCollectFromTree() throws IOException
+  {
+    folder.newFile("b.pdf");
+    folder.newFile("notes.txt");
+    folder.newFolder("a");
+    folder.newFile("a/c.PDF");
+    folder.newFolder("a", "d");
+    folder.newFile("a/d/e.pdf");
+
+    List<File> files = BatchValidator.collectInputFiles(folder.getRoot());
+
+    assertEquals(Arrays.asList(new File(folder.getRoot(), "a/c.PDF"), new File(folder.getRoot(), "a/d/e.pdf"),
+        new File(folder.getRoot(), "b.pdf")), files);
+  }
+
+  @Test
+  public void testCsvReport() throws IOException
+  {
+    BatchValidator.ValidationResult result = new BatchValidator.ValidationResult(folder.newFile("a;b.pdf"));
+    File report = new File(folder.getRoot(), "report.csv");
+
+    BatchValidator.writeReport(Arrays.asList(result), report);
+
+    List<String> lines = FileUtils.readLines(report, StandardCharsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).startsWith("input;size;"));
+    assertEquals(10, lines.get(1).split(";", -1).length);
+  }
+
+  @Test
+  public void testJsonReport() throws IOException
+  {
+    BatchValidator.ValidationResult result = new BatchValidator.ValidationResult(folder.newFile("a.pdf"));
+    File report = new File(folder.getRoot(), "report.JSON");
+
+    BatchValidator.writeReport(Arrays.asList(result), report);
+
+    String json = FileUtils.readFileToString(report, StandardCharsets.UTF_8);
+    assertTrue(json.trim().startsWith("["));
+    assertTrue(json.contains("\"failedRules\" : [ ]"));
+    assertTrue(json.contains("\"claimedFlavour\" : null"));
+  }
+}
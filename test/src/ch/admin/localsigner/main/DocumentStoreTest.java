@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import com.lowagie.text.pdf.PdfReader;
+import ch.admin.localsigner.validation.SHAChecksum;
+
+public class DocumentStoreTest
+{
+  private static final String PDF = "test/forms/alltypes_signature_enabled_acrofields.pdf";
+
+  @Test
+  public void testSmallDocumentStaysInMemory() throws IOException
+  {
+    byte[] data = new byte[] {1, 2, 3};
+    DocumentStore store = DocumentStore.of(data);
+
+    assertTrue(store.isInMemory());
+    assertSame(data, store.getBytes());
+  }
+
+  @Test
+  public void testLargeDocumentIsWrittenToFile() throws IOException
+  {
+    byte[] data = new byte[DocumentStore.MEMORY_LIMIT + 1];
+    data[data.length - 1] = 7;
+
+    DocumentStore store = DocumentStore.read(new ByteArrayInputStream(data), data.length);
+
+    assertFalse(store.isInMemory());
+    assertEquals(data.length, store.size());
+    assertArrayEquals(data, store.getBytes());
+
+    store.release();
+  }
+
+  @Test(expected = IOException.class)
+  public void testReleasedDocumentIsGone() throws IOException
+  {
+    DocumentStore store = DocumentStore.of(new byte[DocumentStore.MEMORY_LIMIT + 1]);
+    store.release();
+
+    store.openStream();
+  }
+
+  @Test
+  public void testChecksumComputedWhileReading() throws Exception
+  {
+    byte[] small = "%PDF-1.4 small".getBytes(StandardCharsets.US_ASCII);
+    byte[] large = new byte[DocumentStore.MEMORY_LIMIT + 1];
+    large[0] = 1;
+
+    DocumentStore smallStore = DocumentStore.read(new ByteArrayInputStream(small), small.length);
+    DocumentStore largeStore = DocumentStore.of(large.clone());
+
+    assertEquals(SHAChecksum.getChecksum(small), smallStore.getChecksum());
+    assertEquals(SHAChecksum.getChecksum(large), largeStore.getChecksum());
+    largeStore.release();
+  }
+
+  @Test
+  public void testMatches() throws IOException
+  {
+    byte[] data = "%PDF-1.4 content".getBytes(StandardCharsets.US_ASCII);
+    DocumentStore store = DocumentStore.of(data);
+
+    assertTrue(store.isUnchanged());
+    assertTrue(store.matches(data));
+    assertTrue(store.matches(data.clone()));
+    assertFalse(store.matches("%PDF-1.4 other".getBytes(StandardCharsets.US_ASCII)));
+    assertFalse(store.matches(null));
+  }
+
+  @Test
+  public void testVerifyHashesCurrentContent() throws IOException
+  {
+    byte[] data = "%PDF-1.4 content".getBytes(StandardCharsets.US_ASCII);
+    DocumentStore store = DocumentStore.of(data);
+    store.getChecksum();
+
+    assertTrue(store.verify());
+    data[data.length - 1] = 'X';
+    assertFalse(store.verify());
+    assertFalse(store.matches(data));
+  }
+
+  @Test
+  public void testReaderOfFile() throws IOException
+  {
+    File pdf = new File(PDF);
+    DocumentStore fromFile = DocumentStore.forFile(pdf);
+    DocumentStore inMemory = DocumentStore.wrap(FileUtils.readFileToByteArray(pdf));
+
+    PdfReader fileReader = fromFile.openReader();
+    PdfReader memoryReader = inMemory.openReader();
+    try
+    {
+      assertEquals(memoryReader.getNumberOfPages(), fileReader.getNumberOfPages());
+      assertEquals(memoryReader.getAcroFields().getFields().keySet(),
+          fileReader.getAcroFields().getFields().keySet());
+    } finally
+    {
+      fileReader.close();
+      memoryReader.close();
+    }
+
+    // not owned, the file is kept
+    fromFile.release();
+    assertTrue(pdf.isFile());
+  }
+
+  @Test
+  public void testPartialReaderOfMemory() throws IOException
+  {
+    DocumentStore inMemory = DocumentStore.wrap(FileUtils.readFileToByteArray(new File(PDF)));
+
+    PdfReader fullReader = inMemory.openReader();
+    PdfReader partialReader = inMemory.openPartialReader();
+    try
+    {
+      assertEquals(fullReader.getNumberOfPages(), partialReader.getNumberOfPages());
+      assertEquals(fullReader.getAcroFields().getFields().keySet(),
+          partialReader.getAcroFields().getFields().keySet());
+      assertEquals(fullReader.getCertificationLevel(), partialReader.getCertificationLevel());
+    } finally
+    {
+      fullReader.close();
+      partialReader.close();
+    }
+  }
+
+  @Test
+  public void testRangeCopiedFromFileAndMemory() throws IOException
+  {
+    byte[] data = new byte[DocumentStore.MEMORY_LIMIT + 10];
+    data[5] = 5;
+    data[DocumentStore.MEMORY_LIMIT] = 9;
+    byte[] expected = Arrays.copyOf(data, DocumentStore.MEMORY_LIMIT + 1);
+
+    DocumentStore inFile = DocumentStore.of(data.clone());
+    DocumentStore inMemory = DocumentStore.wrap(data);
+    File target = File.createTempFile("range", ".pdf");
+    try
+    {
+      inFile.range(expected.length).copyTo(target);
+      assertArrayEquals(expected, FileUtils.readFileToByteArray(target));
+
+      inMemory.range(expected.length).copyTo(target);
+      assertArrayEquals(expected, FileUtils.readFileToByteArray(target));
+
+      InputStream in = inFile.range(expected.length).openStream();
+      try
+      {
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+      } finally
+      {
+        in.close();
+      }
+    } finally
+    {
+      target.delete();
+      inFile.release();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testRangeOutsideOfDocument() throws IOException
+  {
+    DocumentStore.wrap(new byte[] {1, 2, 3}).range(4);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Minimal client of the {@link LocalSignerDaemon}, as a document management
+ * system would use it. Measures the time of every job.
+ */
+public class LocalSignerDaemonClient
+{
+  private final int port;
+
+  private final String secret;
+
+  private int lastStatus;
+
+  private long lastDuration;
+
+  /**
+   * @param port
+   *          port of the service
+   * @param secret
+   *          secret from the port file of the service
+   */
+  public LocalSignerDaemonClient(final int port, final String secret)
+  {
+    this.port = port;
+    this.secret = secret;
+  }
+
+  public Map<String, String> status() throws IOException
+  {
+    return call("GET", "/status", new String[0]);
+  }
+
+  public Map<String, String> sign(final String input, final String output, final String profile) throws IOException
+  {
+    return call("POST", "/sign", new String[] {"input", input, "output", output, "profile", profile});
+  }
+
+  public Map<String, String> validate(final String input) throws IOException
+  {
+    return call("POST", "/validate", new String[] {"input", input});
+  }
+
+  public Map<String, String> convert(final String input, final String output) throws IOException
+  {
+    return call("POST", "/convert", new String[] {"input", input, "output", output});
+  }
+
+  /**
+   * @param method
+   *          HTTP method
+   * @param path
+   *          job
+   * @param params
+   *          pairs of name and value, null values are left out
+   * @return the answer as key/value
+   */
+  public Map<String, String> call(final String method, final String path, final String[] params) throws IOException
+  {
+    StringBuilder query = new StringBuilder();
+    for (int i = 0; i + 1 < params.length; i += 2)
+    {
+      if (params[i + 1] != null)
+      {
+        query.append(query.length() == 0 ? '?' : '&').append(params[i]).append('=')
+            .append(URLEncoder.encode(params[i + 1], StandardCharsets.UTF_8.name()));
+      }
+    }
+
+    long start = System.nanoTime();
+    HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path + query)
+        .openConnection();
+    connection.setRequestMethod(method);
+    if (secret != null)
+    {
+      connection.setRequestProperty(LocalSignerDaemon.SECRET_HEADER, secret);
+    }
+    try
+    {
+      lastStatus = connection.getResponseCode();
+      InputStream is = lastStatus < 400 ? connection.getInputStream() : connection.getErrorStream();
+      Map<String, String> answer = new LinkedHashMap<String, String>();
+      if (is != null)
+      {
+        for (String line : IOUtils.readLines(is, StandardCharsets.UTF_8))
+        {
+          int index = line.indexOf('=');
+          if (index > 0)
+          {
+            answer.put(line.substring(0, index), line.substring(index + 1));
+          }
+        }
+        is.close();
+      }
+      return answer;
+    } finally
+    {
+      connection.disconnect();
+      lastDuration = (System.nanoTime() - start) / 1000000;
+    }
+  }
+
+  public int getLastStatus()
+  {
+    return lastStatus;
+  }
+
+  /**
+   * @return round trip time of the last job in milliseconds
+   */
+  public long getLastDuration()
+  {
+    return lastDuration;
+  }
+}
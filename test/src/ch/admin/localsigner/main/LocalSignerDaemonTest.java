@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalSignerDaemonTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File portFile;
+
+  private LocalSignerDaemon daemon;
+
+  private LocalSignerDaemonClient client;
+
+  @Before
+  public void start() throws IOException
+  {
+    portFile = new File(folder.getRoot(), LocalSignerDaemon.PORT_FILE);
+    daemon = new LocalSignerDaemon(new DocumentSigner(null), null, portFile);
+    daemon.start(0);
+    client = new LocalSignerDaemonClient(daemon.getPort(), daemon.getSecret());
+  }
+
+  @After
+  public void stop()
+  {
+    daemon.stop();
+  }
+
+  @Test
+  public void testStatus() throws IOException
+  {
+    Map<String, String> answer = client.status();
+
+    assertEquals(LocalSignerDaemon.HTTP_OK, client.getLastStatus());
+    assertEquals("RUNNING", answer.get("status"));
+  }
+
+  @Test
+  public void testPortFile() throws IOException
+  {
+    List<String> lines = FileUtils.readLines(portFile, StandardCharsets.UTF_8);
+
+    assertEquals(Arrays.asList(String.valueOf(daemon.getPort()), daemon.getSecret()), lines);
+
+    daemon.stop();
+    assertFalse(portFile.exists());
+  }
+
+  @Test
+  public void testWithoutSecret() throws IOException
+  {
+    LocalSignerDaemonClient other = new LocalSignerDaemonClient(daemon.getPort(), null);
+    other.status();
+    assertEquals(LocalSignerDaemon.HTTP_FORBIDDEN, other.getLastStatus());
+
+    other = new LocalSignerDaemonClient(daemon.getPort(), "wrong");
+    other.sign("test/test.pdf", "out.pdf", null);
+    assertEquals(LocalSignerDaemon.HTTP_FORBIDDEN, other.getLastStatus());
+  }
+
+  @Test
+  public void testFromWebPage() throws IOException
+  {
+    assertEquals(LocalSignerDaemon.HTTP_OK, rawStatus("127.0.0.1:" + daemon.getPort(), null));
+    assertEquals(LocalSignerDaemon.HTTP_OK, rawStatus("localhost", null));
+    assertEquals(LocalSignerDaemon.HTTP_FORBIDDEN, rawStatus("localhost", "http://example.com"));
+    // DNS rebinding, the name of the page resolves to 127.0.0.1
+    assertEquals(LocalSignerDaemon.HTTP_FORBIDDEN, rawStatus("evil.example.com:" + daemon.getPort(), null));
+  }
+
+  @Test
+  public void testWrongJobs() throws IOException
+  {
+    client.call("POST", "/unknown", new String[0]);
+    assertEquals(LocalSignerDaemon.HTTP_NOT_FOUND, client.getLastStatus());
+
+    client.call("GET", "/sign", new String[0]);
+    assertEquals(LocalSignerDaemon.HTTP_METHOD_NOT_ALLOWED, client.getLastStatus());
+  }
+
+  @Test
+  public void testMissingParameters() throws IOException
+  {
+    client.sign("does-not-exist.pdf", null, null);
+    assertEquals(LocalSignerDaemon.HTTP_BAD_REQUEST, client.getLastStatus());
+
+    client.validate(null);
+    assertEquals(LocalSignerDaemon.HTTP_BAD_REQUEST, client.getLastStatus());
+
+    client.convert("test/test.pdf", null);
+    assertEquals(LocalSignerDaemon.HTTP_BAD_REQUEST, client.getLastStatus());
+  }
+
+  @Test
+  public void testParseQuery() throws IOException
+  {
+    Map<String, String> params = LocalSignerDaemon.parseQuery("input=C%3A%5Cdir+x%5Ca.pdf&empty=&broken");
+
+    assertEquals("C:\\dir x\\a.pdf", params.get("input"));
+    assertEquals("", params.get("empty"));
+    assertEquals(2, params.size());
+  }
+
+  /**
+   * Sends the status request with the given headers, HttpURLConnection does
+   * not allow to set the host or the origin.
+   *
+   * @return the HTTP status
+   */
+  private int rawStatus(final String host, final String origin) throws IOException
+  {
+    Socket socket = new Socket("127.0.0.1", daemon.getPort());
+    try
+    {
+      StringBuilder request = new StringBuilder("GET /status HTTP/1.1\r\nHost: ").append(host)
+          .append("\r\n" + LocalSignerDaemon.SECRET_HEADER + ": ").append(daemon.getSecret())
+          .append("\r\nConnection: close\r\n");
+      if (origin != null)
+      {
+        request.append("Origin: ").append(origin).append("\r\n");
+      }
+      request.append("\r\n");
+      OutputStream os = socket.getOutputStream();
+      os.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+      os.flush();
+      InputStream is = socket.getInputStream();
+      String statusLine = IOUtils.readLines(is, StandardCharsets.US_ASCII).get(0);
+      assertTrue(statusLine, statusLine.startsWith("HTTP/1.1 "));
+      return Integer.parseInt(statusLine.substring(9, 12));
+    } finally
+    {
+      socket.close();
+    }
+  }
+}
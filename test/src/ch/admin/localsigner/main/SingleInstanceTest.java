@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SingleInstanceTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testForwardToRunningInstance() throws IOException
+  {
+    File portFile = new File(folder.getRoot(), SingleInstance.PORT_FILE);
+    final List<String> opened = new ArrayList<String>();
+    SingleInstance running = new SingleInstance(portFile);
+    running.listen(new SingleInstance.Receiver()
+    {
+      @Override
+      public void open(String input, String output)
+      {
+        opened.add(input);
+        opened.add(output);
+      }
+    });
+
+    try
+    {
+      assertTrue(new SingleInstance(portFile).forward("test/test.pdf", null));
+      assertEquals(new File("test/test.pdf").getAbsolutePath(), opened.get(0));
+      assertNull(opened.get(1));
+    } finally
+    {
+      running.close();
+    }
+    assertFalse(portFile.exists());
+  }
+
+  @Test
+  public void testOnlyLaunchesWithFilesAreForwarded() throws Exception
+  {
+    LocalSignerCommandLine files = new LocalSignerCommandLine();
+    files.parseCli(new String[] {"-i", "in.pdf", "-o", "out.pdf", "-n"});
+    LocalSignerCommandLine withProfile = new LocalSignerCommandLine();
+    withProfile.parseCli(new String[] {"-i", "in.pdf", "-s", "profile.xml"});
+
+    assertTrue(files.isOnlyFiles());
+    assertFalse(withProfile.isOnlyFiles());
+  }
+
+  @Test
+  public void testNoRunningInstance() throws IOException
+  {
+    File portFile = new File(folder.getRoot(), SingleInstance.PORT_FILE);
+    assertFalse(new SingleInstance(portFile).forward("test/test.pdf", null));
+
+    // stale file of a crashed instance
+    FileUtils.writeStringToFile(portFile, "1\nsecret\n", "UTF-8");
+    assertFalse(new SingleInstance(portFile).forward("test/test.pdf", null));
+  }
+
+  @Test
+  public void testWrongSecretIsIgnored() throws IOException
+  {
+    File portFile = new File(folder.getRoot(), SingleInstance.PORT_FILE);
+    final List<String> opened = new ArrayList<String>();
+    SingleInstance running = new SingleInstance(portFile);
+    running.listen(new SingleInstance.Receiver()
+    {
+      @Override
+      public void open(String input, String output)
+      {
+        opened.add(input);
+      }
+    });
+
+    try
+    {
+      String port = FileUtils.readLines(portFile, "UTF-8").get(0);
+      File forged = folder.newFile("forged.port");
+      FileUtils.writeStringToFile(forged, port + "\nwrong\n", "UTF-8");
+
+      assertFalse(new SingleInstance(forged).forward("test/test.pdf", null));
+      assertTrue(opened.isEmpty());
+    } finally
+    {
+      running.close();
+    }
+  }
+}
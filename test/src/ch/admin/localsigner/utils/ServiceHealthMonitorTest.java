@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+import ch.admin.localsigner.utils.ServiceHealthMonitor.State;
+
+public class ServiceHealthMonitorTest
+{
+  private final ServiceHealthMonitor monitor = new ServiceHealthMonitor();
+
+  @After
+  public void tearDown()
+  {
+    monitor.stop();
+  }
+
+  @Test
+  public void testBackoff()
+  {
+    assertEquals(ServiceHealthMonitor.CHECK_INTERVAL, ServiceHealthMonitor.nextDelay(0));
+    assertEquals(ServiceHealthMonitor.RETRY_DELAY, ServiceHealthMonitor.nextDelay(1));
+    assertEquals(2 * ServiceHealthMonitor.RETRY_DELAY, ServiceHealthMonitor.nextDelay(2));
+    assertEquals(ServiceHealthMonitor.CHECK_INTERVAL, ServiceHealthMonitor.nextDelay(100));
+  }
+
+  @Test
+  public void testChangesTold() throws InterruptedException
+  {
+    final AtomicBoolean up = new AtomicBoolean(true);
+    final BlockingQueue<State> changes = new LinkedBlockingQueue<State>();
+    monitor.addListener(new ServiceHealthMonitor.Listener()
+    {
+      @Override
+      public void stateChanged(final String service, final State state)
+      {
+        changes.add(state);
+      }
+    });
+    monitor.start(Collections.<ServiceHealthMonitor.Probe> singletonList(
+        new ServiceHealthMonitor.Probe(ServiceHealthMonitor.VALIDATOR)
+        {
+          @Override
+          boolean isUp()
+          {
+            return up.get();
+          }
+        }));
+
+    // first probe in the background
+    assertEquals(State.UP, changes.poll(10, TimeUnit.SECONDS));
+    assertEquals(State.UP, monitor.getState(ServiceHealthMonitor.VALIDATOR));
+
+    up.set(false);
+    assertEquals(State.DOWN, monitor.check(ServiceHealthMonitor.VALIDATOR));
+    assertEquals(State.DOWN, changes.poll());
+
+    // unchanged
+    assertEquals(State.DOWN, monitor.check(ServiceHealthMonitor.VALIDATOR));
+    assertNull(changes.poll());
+  }
+
+  @Test
+  public void testUnmonitoredService()
+  {
+    assertEquals(State.UNKNOWN, monitor.getState(ServiceHealthMonitor.NOTARY));
+    assertEquals(State.UNKNOWN, monitor.check(ServiceHealthMonitor.NOTARY));
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import ch.admin.localsigner.main.DocumentStore;
+
+public class AnalysisCacheTest
+{
+  private static final String SIGNATURE_PDF = "test/forms/alltypes_signature_enabled_acrofields.pdf";
+
+  private static final String NO_SIGNATURE_PDF = "test/forms/alltypes_nosignature_enabled_acrofields.pdf";
+
+  @Test
+  public void testSameContentAnalyzedOnce() throws IOException
+  {
+    AnalysisCache cache = new AnalysisCache(AnalysisCache.MAX_ENTRIES, AnalysisCache.MAX_BYTES);
+    byte[] content = FileUtils.readFileToByteArray(new File(SIGNATURE_PDF));
+
+    PdfAnalyzer fromFile = cache.get(DocumentStore.forFile(new File(SIGNATURE_PDF)));
+
+    assertSame(fromFile, cache.get(content));
+    assertSame(fromFile, cache.get(DocumentStore.wrap(content.clone())));
+  }
+
+  @Test
+  public void testArrayNotKept() throws IOException
+  {
+    AnalysisCache cache = new AnalysisCache(AnalysisCache.MAX_ENTRIES, AnalysisCache.MAX_BYTES);
+    byte[] content = FileUtils.readFileToByteArray(new File(SIGNATURE_PDF));
+
+    PdfAnalyzer analyzer = cache.get(content);
+
+    assertEquals(0, cache.size());
+    assertNotSame(analyzer, cache.get(content));
+  }
+
+  @Test
+  public void testLargeDocumentNotKept() throws IOException
+  {
+    File file = new File(SIGNATURE_PDF);
+    AnalysisCache cache = new AnalysisCache(AnalysisCache.MAX_ENTRIES, file.length() - 1);
+
+    cache.get(DocumentStore.forFile(file));
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDropped() throws IOException
+  {
+    AnalysisCache cache = new AnalysisCache(1, AnalysisCache.MAX_BYTES);
+    DocumentStore first = DocumentStore.forFile(new File(SIGNATURE_PDF));
+    DocumentStore second = DocumentStore.forFile(new File(NO_SIGNATURE_PDF));
+
+    PdfAnalyzer analyzer = cache.get(first);
+    cache.get(second);
+
+    assertEquals(1, cache.size());
+    assertNotSame(analyzer, cache.get(first));
+    // closed when dropped, still usable by whoever holds it
+    assertEquals(0, analyzer.getAcroFieldsNotSignature().size());
+  }
+
+  @Test
+  public void testReleasedDocumentAnalyzedAgain() throws IOException
+  {
+    AnalysisCache cache = new AnalysisCache(AnalysisCache.MAX_ENTRIES, AnalysisCache.MAX_BYTES);
+    byte[] content = FileUtils.readFileToByteArray(new File(SIGNATURE_PDF));
+    DocumentStore store = DocumentStore.of(content);
+
+    PdfAnalyzer analyzer = cache.get(store);
+    store.release();
+
+    PdfAnalyzer again = cache.get(DocumentStore.of(content.clone()));
+    assertNotSame(analyzer, again);
+    assertSame(again, cache.get(content));
+  }
+}
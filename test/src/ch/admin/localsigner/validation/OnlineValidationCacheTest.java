@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import ch.admin.suis.client.core.service.to.FileReport;
+import ch.admin.suis.client.core.service.to.ReportRevocation;
+import ch.admin.suis.client.core.service.to.RevocationState;
+import ch.admin.suis.client.core.service.to.SignatureReport;
+import ch.admin.suis.client.core.service.to.ValidationResponseV2;
+
+public class OnlineValidationCacheTest
+{
+  private static final long NOW = 1000000L;
+
+  @Test
+  public void testFreshResponseRestored()
+  {
+    OnlineValidationCache cache = new OnlineValidationCache(OnlineValidationCache.MAX_ENTRIES);
+    ValidationResponseV2 response = response(RevocationState.NOT_REVOKED, new Date());
+    String key = OnlineValidationCache.key("abc", "FullQualified", "https://validator");
+
+    assertTrue(cache.put(key, response, 60000));
+
+    assertSame(response, cache.get(key).getResponse());
+    assertTrue(cache.get(key).isFresh());
+    assertNull(cache.get(OnlineValidationCache.key("abc", "upreg-fn", "https://validator")));
+  }
+
+  @Test
+  public void testAgeCountedFromRevocationCheck()
+  {
+    ValidationResponseV2 notRevoked = response(RevocationState.NOT_REVOKED, new Date(NOW - 5000));
+    ValidationResponseV2 revoked = response(RevocationState.REVOKED, new Date(NOW - 5000));
+
+    assertEquals(NOW - 5000, OnlineValidationCache.getOldestRevocationCheck(notRevoked, NOW));
+    // revoked stays revoked
+    assertEquals(NOW, OnlineValidationCache.getOldestRevocationCheck(revoked, NOW));
+  }
+
+  @Test
+  public void testOldRevocationCheckNotFresh()
+  {
+    OnlineValidationCache cache = new OnlineValidationCache(OnlineValidationCache.MAX_ENTRIES);
+    String key = OnlineValidationCache.key("abc", "FullQualified", "https://validator");
+
+    cache.put(key, response(RevocationState.NOT_REVOKED, new Date(System.currentTimeMillis() - 120000)), 60000);
+
+    assertFalse(cache.get(key).isFresh());
+  }
+
+  @Test
+  public void testUnknownRevocationNotKept()
+  {
+    OnlineValidationCache cache = new OnlineValidationCache(OnlineValidationCache.MAX_ENTRIES);
+    String key = OnlineValidationCache.key("abc", "FullQualified", "https://validator");
+    cache.put(key, response(RevocationState.NOT_REVOKED, new Date()), 60000);
+
+    assertFalse(cache.put(key, response(RevocationState.UNKNOWN, new Date()), 60000));
+
+    assertNull(cache.get(key));
+  }
+
+  private static ValidationResponseV2 response(final RevocationState state, final Date date)
+  {
+    ReportRevocation revocation = new ReportRevocation();
+    revocation.setState(state);
+    revocation.setDate(date);
+    SignatureReport signature = new SignatureReport();
+    signature.setRevocationDetails(revocation);
+    List<SignatureReport> signatures = new ArrayList<SignatureReport>();
+    signatures.add(signature);
+    FileReport file = new FileReport();
+    file.setSignatureReports(signatures);
+    ValidationResponseV2 response = new ValidationResponseV2();
+    response.setFileReports(Collections.singletonList(file));
+    return response;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.verapdf.pdfa.flavours.PDFAFlavour;
+
+public class PdfAResultCacheTest
+{
+  private File folder;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    folder = Files.createTempDirectory("pdfa-cache").toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException
+  {
+    FileUtils.deleteDirectory(folder);
+  }
+
+  @Test
+  public void testResultsRestored()
+  {
+    PdfAResultCache cache = new PdfAResultCache(folder, "1", PdfAResultCache.MAX_ENTRIES, PdfAResultCache.MAX_BYTES);
+    cache.put("abc", validated(PDFAFlavour.PDFA_1_A, PDFAFlavour.PDFA_1_B, "PDF/A-1b"));
+
+    PdfAValidationResults restored = cache.get("abc");
+
+    assertNotNull(restored);
+    assertTrue(restored.isSupportedPdfA());
+    assertFalse(restored.isError());
+    assertTrue(restored.isCompliant());
+    assertTrue(restored.isNotAccessible());
+    assertEquals("PDF/A-1b", restored.getValidatedFlavourAsString());
+    assertEquals("profile", restored.getProfileDescription());
+    assertEquals(Arrays.asList("first", "second"), restored.getAssertionMessages());
+  }
+
+  @Test
+  public void testOtherVersionIgnored()
+  {
+    new PdfAResultCache(folder, "1", PdfAResultCache.MAX_ENTRIES, PdfAResultCache.MAX_BYTES).put("abc",
+        validated(PDFAFlavour.PDFA_2_A, PDFAFlavour.PDFA_2_A, "PDF/A-2a"));
+
+    assertNull(new PdfAResultCache(folder, "2", PdfAResultCache.MAX_ENTRIES, PdfAResultCache.MAX_BYTES).get("abc"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDeleted()
+  {
+    PdfAResultCache cache = new PdfAResultCache(folder, "1", 2, PdfAResultCache.MAX_BYTES);
+    cache.put("first", validated(PDFAFlavour.PDFA_2_A, PDFAFlavour.PDFA_2_A, "PDF/A-2a"));
+    cache.put("second", validated(PDFAFlavour.PDFA_2_A, PDFAFlavour.PDFA_2_A, "PDF/A-2a"));
+    new File(folder, "first.properties").setLastModified(System.currentTimeMillis() - 60000);
+    new File(folder, "second.properties").setLastModified(System.currentTimeMillis() - 30000);
+
+    // used again, the second is now the least recently used
+    assertNotNull(cache.get("first"));
+    cache.put("third", validated(PDFAFlavour.PDFA_2_A, PDFAFlavour.PDFA_2_A, "PDF/A-2a"));
+
+    assertNotNull(cache.get("first"));
+    assertNull(cache.get("second"));
+    assertNotNull(cache.get("third"));
+  }
+
+  @Test
+  public void testFailedValidationNotStored()
+  {
+    PdfAResultCache cache = new PdfAResultCache(folder, "1", PdfAResultCache.MAX_ENTRIES, PdfAResultCache.MAX_BYTES);
+    PdfAValidationResults failed = new PdfAValidationResults();
+    failed.setParsedPdfAFlavour(PDFAFlavour.PDFA_2_A);
+    failed.markAsInvalid();
+
+    cache.put("abc", failed);
+
+    assertNull(cache.get("abc"));
+  }
+
+  @Test
+  public void testNoTemporaryFileLeftIfStoringFails() throws IOException
+  {
+    PdfAResultCache cache = new PdfAResultCache(folder, "1", PdfAResultCache.MAX_ENTRIES, PdfAResultCache.MAX_BYTES);
+    // the record cannot replace a folder which is not empty
+    File blocked = new File(folder, "abc.properties");
+    FileUtils.touch(new File(blocked, "content"));
+
+    cache.put("abc", validated(PDFAFlavour.PDFA_1_A, PDFAFlavour.PDFA_1_B, "PDF/A-1b"));
+
+    assertEquals(Arrays.asList(blocked), Arrays.asList(folder.listFiles()));
+  }
+
+  private static PdfAValidationResults validated(final PDFAFlavour parsed, final PDFAFlavour validated,
+      final String name)
+  {
+    PdfAValidationResults results = new PdfAValidationResults();
+    results.setParsedPdfAFlavour(parsed);
+    results.setValidation(validated, name, true, "profile", Arrays.asList("first", "second"));
+    return results;
+  }
+}
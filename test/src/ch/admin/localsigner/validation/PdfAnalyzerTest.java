@@ -17,6 +17,7 @@ package ch.admin.localsigner.validation;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Future;
 import junit.framework.TestCase;
 
 /**
@@ -70,4 +71,27 @@ public class PdfAnalyzerTest extends TestCase
         "Es wurden nicht 7 Felder zurückgegeben, obwohl das Formular nicht LS-enabled ist und ein Signaturfeld enthalten ist.",
         7, acroFields.size());
   }
+
+  public void test5PropertiesComputedOnce() throws IOException
+  {
+    PdfAnalyzer analyzer = new PdfAnalyzer("test/forms/alltypes_signature_notenabled_acrofields.pdf");
+    List<String> fields = analyzer.getAcroFieldsNotSignature();
+    fields.clear();
+
+    assertEquals("Die Felder des Dokuments wurden verändert.", 7, analyzer.getAcroFieldsNotSignature().size());
+    assertEquals(analyzer.getBlankSignatures(), analyzer.getBlankSignatures());
+    assertEquals(analyzer.getSignatures().keySet(), analyzer.getSignatures().keySet());
+    assertEquals(analyzer.isSigned(), !analyzer.getSignatures().isEmpty());
+  }
+
+  public void test6CancelOnlyStopsOwnWait() throws IOException
+  {
+    PdfAnalyzer analyzer = new PdfAnalyzer("test/forms/alltypes_signature_notenabled_acrofields.pdf");
+    Future<PdfAValidationResults> first = analyzer.validatePdfAInBackground();
+    Future<PdfAValidationResults> second = analyzer.validatePdfAInBackground();
+    first.cancel(true);
+
+    assertTrue(first.isCancelled());
+    assertFalse("Die Prüfung der anderen Aufrufer wurde abgebrochen.", second.isCancelled());
+  }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 The Federal Authorities of the Swiss Confederation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ch.admin.localsigner.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import ch.admin.suis.client.core.service.to.SignatureCoverageStatus;
+
+public class SignatureCoverageCacheTest
+{
+  @Test
+  public void testStatusRestored()
+  {
+    SignatureCoverageCache cache = new SignatureCoverageCache(SignatureCoverageCache.MAX_ENTRIES);
+    cache.put("abc", SignatureCoverageStatus.MODIFIED_ACCEPTABLE);
+
+    assertEquals(SignatureCoverageStatus.MODIFIED_ACCEPTABLE, cache.get("abc"));
+    assertNull(cache.get("def"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDropped()
+  {
+    SignatureCoverageCache cache = new SignatureCoverageCache(2);
+    cache.put("first", SignatureCoverageStatus.COVERED);
+    cache.put("second", SignatureCoverageStatus.MODIFIED_INVALID);
+
+    // used again, the second is now the least recently used
+    cache.get("first");
+    cache.put("third", SignatureCoverageStatus.COVERED);
+
+    assertEquals(2, cache.size());
+    assertEquals(SignatureCoverageStatus.COVERED, cache.get("first"));
+    assertNull(cache.get("second"));
+  }
+}